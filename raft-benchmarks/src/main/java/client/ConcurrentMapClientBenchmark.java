@@ -1,5 +1,6 @@
 package client;
 
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -21,6 +22,7 @@ import org.openjdk.jmh.runner.options.VerboseMode;
 
 import java.util.Locale;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
@@ -45,6 +47,8 @@ public abstract class ConcurrentMapClientBenchmark {
 
   static final int MAX_CLIENTS = 1;
   private static final int MAX_KEY_SPACE = 100000;
+  private static final int HOT_KEYS = 16;
+  private static final String FREE = "free";
 
   private final Random random = new Random();
   private final ConcurrentMap<Long, String>[] clients = new ConcurrentMap[MAX_CLIENTS];
@@ -100,6 +104,65 @@ public abstract class ConcurrentMapClientBenchmark {
     return clients[i].get(key);
   }
 
+  /*
+   * Contended updates: 100 threads take turns claiming one of a few hot keys and releasing it again, like a lease. The atomic variant
+   * uses the server-side conditional commands, one log entry each. The emulated variant is the read-then-put sequence that clients had to
+   * use without them: it needs more round trips, it must read back to find out whether its claim has won, and it still is not safe,
+   * because a claim can be overwritten after the check. The won and lost claims are reported as secondary results.
+   */
+
+  @AuxCounters
+  @State(Scope.Thread)
+  public static class Owner {
+    final String id = UUID.randomUUID().toString();
+    public long won;
+    public long lost;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      won = 0;
+      lost = 0;
+    }
+
+    boolean count(boolean claimed) {
+      if (claimed) {
+        won++;
+      }
+      else {
+        lost++;
+      }
+      return claimed;
+    }
+  }
+
+  @Benchmark
+  @Group("contended_atomic")
+  @GroupThreads(100)
+  public boolean claimAtomic(Owner owner) {
+    long key = keySpace[random.nextInt(HOT_KEYS)];
+    if (clients[0].putIfAbsent(key, owner.id) != null) {
+      return owner.count(false);
+    }
+    return owner.count(clients[0].remove(key, owner.id));
+  }
+
+  @Benchmark
+  @Group("contended_emulated")
+  @GroupThreads(100)
+  public boolean claimEmulated(Owner owner) {
+    long key = keySpace[random.nextInt(HOT_KEYS)];
+    String current = clients[0].get(key);
+    if (current != null && !current.equals(FREE)) {
+      return owner.count(false);
+    }
+    clients[0].put(key, owner.id);
+    if (!owner.id.equals(clients[0].get(key))) {
+      return owner.count(false); // lost the race
+    }
+    clients[0].put(key, FREE);
+    return owner.count(true);
+  }
+
   public static void main(String[] args) throws RunnerException {
     Locale.setDefault(Locale.ENGLISH);
     Options opt = new OptionsBuilder().verbosity(VerboseMode.EXTRA)
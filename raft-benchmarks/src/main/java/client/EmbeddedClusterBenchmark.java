@@ -0,0 +1,145 @@
+package client;
+
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import io.atomix.copycat.server.storage.StorageLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+import serialization.MapSerialization;
+import server.LocalCluster;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark that needs no servers started by hand. Each trial starts its own cluster in the benchmark JVM, on localhost ports from
+ * 7001, fills it with {@code keyCount} entries, runs a mix of gets and puts against it, and shuts it down again, deleting its storage.
+ * The servers and the client share the CPUs of one machine, so the results are comparable with each other and over time, but not with
+ * those of a cluster on separate machines.
+ * <p>
+ * The parameters:
+ * <ul>
+ * <li>clusterSize: the number of servers
+ * <li>storageLevel: the Copycat storage level of the servers' logs. MAPPED needs a Java 8 runtime, because Catalyst 1.1 unmaps its buffers
+ * through an internal API that later Java versions have removed.
+ * <li>valueSize: the size in bytes of the values
+ * <li>keyCount: the number of distinct keys
+ * <li>distribution: how the keys are chosen, UNIFORM or ZIPFIAN (see {@link ZipfianGenerator})
+ * <li>readRatio: the fraction of operations that are gets, the rest are puts
+ * </ul>
+ * The defaults run every cluster size with MEMORY and DISK storage and both distributions. Choose others with {@code -p}, e. g.
+ * <pre>
+ * java -jar target/benchmarks.jar EmbeddedClusterBenchmark -p clusterSize=3 -p storageLevel=MEMORY -p readRatio=0,0.5,0.9
+ * </pre>
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.Throughput })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@Threads(32)
+public class EmbeddedClusterBenchmark {
+
+  private static final int BASE_PORT = 7001;
+  private static final int PRELOAD_BATCH = 1000; // keeps a putAll entry well below Copycat's maximum entry size
+
+  public enum Distribution {
+    UNIFORM, ZIPFIAN
+  }
+
+  @Param({ "1", "3", "5" })
+  public int clusterSize;
+
+  @Param({ "MEMORY", "DISK" })
+  public StorageLevel storageLevel;
+
+  @Param({ "128" })
+  public int valueSize;
+
+  @Param({ "10000" })
+  public int keyCount;
+
+  @Param({ "UNIFORM", "ZIPFIAN" })
+  public Distribution distribution;
+
+  @Param({ "0.5" })
+  public double readRatio;
+
+  private LocalCluster cluster;
+  private CopycatClient copycatClient;
+  private ConcurrentMapClient<Long, byte[]> client;
+  private ZipfianGenerator zipfian;
+  private byte[] value;
+
+  @Setup(Level.Trial)
+  public void startCluster() {
+    cluster = LocalCluster.builder().withSize(clusterSize).withAddress("localhost", BASE_PORT).withStorageLevel(storageLevel).build();
+    cluster.start().join();
+    copycatClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(2).build()).build();
+    copycatClient.serializer().resolve(new MapSerialization());
+    copycatClient.connect(cluster.addresses()).join();
+    client = new ConcurrentMapClient<>(copycatClient);
+
+    value = new byte[valueSize];
+    ThreadLocalRandom.current().nextBytes(value);
+    zipfian = distribution == Distribution.ZIPFIAN ? new ZipfianGenerator(keyCount) : null;
+    Map<Long, byte[]> batch = new HashMap<>();
+    for (long key = 0; key < keyCount; key++) {
+      batch.put(key, value);
+      if (batch.size() == PRELOAD_BATCH || key == keyCount - 1) {
+        client.putAll(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stopCluster() {
+    copycatClient.close().join();
+    cluster.stop().join();
+  }
+
+  private long nextKey() {
+    return zipfian != null ? zipfian.next() : ThreadLocalRandom.current().nextInt(keyCount);
+  }
+
+  @Benchmark
+  public Object operation() {
+    long key = nextKey();
+    if (ThreadLocalRandom.current().nextDouble() < readRatio) {
+      return client.get(key);
+    }
+    return client.put(key, value);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().verbosity(VerboseMode.EXTRA)
+        .include(".*" + EmbeddedClusterBenchmark.class.getSimpleName() + ".*").build();
+
+    new Runner(opt).run();
+  }
+}
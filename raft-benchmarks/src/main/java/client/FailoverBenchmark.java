@@ -0,0 +1,351 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.Query.ConsistencyLevel;
+import io.atomix.copycat.client.CopycatClient;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import serialization.MapSerialization;
+import server.StartServer;
+import util.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Measures what clients see when the leader of a cluster dies and comes back. The benchmark starts a cluster of {@link StartServer}
+ * processes, runs a steady open-loop mix of gets and puts against it (see {@link OpenLoopBenchmark}), kills the leader process at a
+ * scheduled time, and restarts it later with {@code --join}, on its old storage. It prints for every 100 ms of the run the completed
+ * operations, the failed operations and the latencies, measured from the intended send times, and then a summary:
+ * <ul>
+ * <li>baseline: throughput and p99 latency before the kill
+ * <li>new leader: time from the kill until another server logs its transition to leader
+ * <li>longest gap: the longest time after the kill in which no operation completed
+ * <li>recovered: time from the kill until the p99 latency has stayed within twice the baseline for a whole second
+ * <li>rejoined: time from the restart until the restarted server has joined the cluster
+ * <li>caught up: time from the restart until the restarted server answers a sequential read at the index of a session registered after
+ * it has joined, i. e. until it has recovered its snapshot, replayed its log and received the entries it missed
+ * </ul>
+ * Command line options:
+ * <ul>
+ * <li>--cluster-size (number of server processes, default 3)
+ * <li>--rate (target operations per second, default 1000)
+ * <li>--duration (seconds, default 30)
+ * <li>--warmup (seconds of load before the measured run, default 5)
+ * <li>--kill-at (seconds after the start of the load, default 10)
+ * <li>--restart-at (seconds after the start of the load, default 20)
+ * <li>--read-ratio (fraction of gets, the rest are puts, default 0.5)
+ * <li>--keys (number of distinct keys, default 10000)
+ * <li>--value-size (bytes per value, default 128)
+ * <li>--server-args (further options for every {@code StartServer}, e. g. "--election-timeout 300 --max-entries-per-segment 10000")
+ * </ul>
+ * The servers listen on localhost ports from 7001, and store their logs in a temporary directory, which is deleted at the end. They
+ * are started with the class path and JVM options of this process.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+public class FailoverBenchmark {
+
+  private static final int BASE_PORT = 7001;
+  private static final long BUCKET_MILLIS = 100;
+  private static final int RECOVERY_BUCKETS = 10; // buckets within the baseline latency that count as recovered
+
+  /*
+   * A server process. Its output is read by a daemon thread, which notes when the server is ready, when it has caught up with the
+   * cluster and when it becomes leader or stops being leader.
+   */
+  static final class ServerProcess {
+    final Address address;
+    final Process process;
+    final CompletableFuture<Long> ready = new CompletableFuture<>();
+    final CompletableFuture<String> caughtUp = new CompletableFuture<>(); // the startup times that the server prints
+    volatile long leaderSince = -1;
+
+    ServerProcess(Address address, List<String> arguments, File directory) throws IOException {
+      this(address, Collections.emptyList(), arguments, directory);
+    }
+
+    /**
+     * @param jvmArguments options for the JVM of the server, in addition to those of this process
+     */
+    ServerProcess(Address address, List<String> jvmArguments, List<String> arguments, File directory) throws IOException {
+      this.address = address;
+      List<String> command = new ArrayList<>();
+      command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+      command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+          .filter(argument -> !argument.startsWith("-agentlib") && !argument.startsWith("-javaagent")).collect(Collectors.toList()));
+      command.addAll(jvmArguments);
+      command.add("-cp");
+      command.add(Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+          .map(entry -> new File(entry).getAbsolutePath()).collect(Collectors.joining(File.pathSeparator))); // they run elsewhere
+      command.add(StartServer.class.getName());
+      command.add("--address");
+      command.add(address.host() + ":" + address.port());
+      command.addAll(arguments);
+      this.process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+      Thread reader = new Thread(this::read, "output-" + address.port());
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    private void read() {
+      String line = null;
+      String last = null;
+      try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        while ((line = output.readLine()) != null) {
+          last = line;
+          long now = System.nanoTime();
+          if (line.contains("bootstrapped") || line.contains("joined cluster")) {
+            ready.complete(now);
+          }
+          else if (line.contains("caught up, startup: ")) {
+            caughtUp.complete(line.substring(line.indexOf("startup: ") + "startup: ".length()));
+          }
+          else if (line.contains("Transitioning to LEADER")) {
+            leaderSince = now;
+          }
+          else if (line.contains("Transitioning to")) {
+            leaderSince = -1;
+          }
+        }
+      }
+      catch (IOException e) {
+        // the process has died
+      }
+      ready.completeExceptionally(new IllegalStateException("server " + address + " has terminated, last output: " + last));
+      caughtUp.completeExceptionally(new IllegalStateException("server " + address + " has terminated, last output: " + last));
+    }
+
+    boolean isLeader() {
+      return leaderSince >= 0;
+    }
+
+    void kill() throws InterruptedException {
+      process.destroyForcibly().waitFor();
+      leaderSince = -1;
+    }
+  }
+
+  /*
+   * The operations that completed in one interval of 100 ms. Operations are counted by their completion time.
+   */
+  private static final class Bucket {
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private long errors;
+
+    synchronized void record(long nanos) {
+      latencies.record(nanos);
+    }
+
+    synchronized void fail() {
+      errors++;
+    }
+
+    synchronized long count() {
+      return latencies.count();
+    }
+
+    synchronized long p99() {
+      return latencies.valueAtPercentile(99);
+    }
+
+    synchronized String line(long millis) {
+      return String.format("%7.1f %7d %s", millis / 1000.0, errors, latencies.summary());
+    }
+  }
+
+  private static String millis(long nanos) {
+    return nanos < 0 ? "n/a" : TimeUnit.NANOSECONDS.toMillis(nanos) + " ms";
+  }
+
+  public static void main(String[] args) throws Exception {
+    Locale.setDefault(Locale.ENGLISH);
+    OptionParser parser = new OptionParser();
+    OptionSpec<Integer> clusterSizeOption = parser.accepts("cluster-size").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+    OptionSpec<Integer> rateOption = parser.accepts("rate").withRequiredArg().ofType(Integer.class).defaultsTo(1000);
+    OptionSpec<Integer> durationOption = parser.accepts("duration").withRequiredArg().ofType(Integer.class).defaultsTo(30);
+    OptionSpec<Integer> warmupOption = parser.accepts("warmup").withRequiredArg().ofType(Integer.class).defaultsTo(5);
+    OptionSpec<Integer> killAtOption = parser.accepts("kill-at").withRequiredArg().ofType(Integer.class).defaultsTo(10);
+    OptionSpec<Integer> restartAtOption = parser.accepts("restart-at").withRequiredArg().ofType(Integer.class).defaultsTo(20);
+    OptionSpec<Double> readRatioOption = parser.accepts("read-ratio").withRequiredArg().ofType(Double.class).defaultsTo(0.5);
+    OptionSpec<Integer> keysOption = parser.accepts("keys").withRequiredArg().ofType(Integer.class).defaultsTo(10000);
+    OptionSpec<Integer> valueSizeOption = parser.accepts("value-size").withRequiredArg().ofType(Integer.class).defaultsTo(128);
+    OptionSpec<String> serverArgsOption = parser.accepts("server-args").withRequiredArg().defaultsTo("");
+    OptionSet options = parser.parse(args);
+
+    int clusterSize = options.valueOf(clusterSizeOption);
+    int rate = options.valueOf(rateOption);
+    int duration = options.valueOf(durationOption);
+    int killAt = options.valueOf(killAtOption);
+    int restartAt = options.valueOf(restartAtOption);
+    if (clusterSize < 3) {
+      throw new IllegalArgumentException("cluster-size must be at least 3, so that the cluster survives the loss of its leader");
+    }
+    if (rate < 1 || killAt < 1 || restartAt <= killAt || duration <= restartAt) {
+      throw new IllegalArgumentException("rate must be positive and 0 < kill-at < restart-at < duration");
+    }
+    List<String> serverArgs = new ArrayList<>();
+    for (String argument : options.valueOf(serverArgsOption).trim().split("\\s+")) {
+      if (!argument.isEmpty()) {
+        serverArgs.add(argument);
+      }
+    }
+
+    Path directory = Files.createTempDirectory("raft-failover");
+    List<Address> addresses = new ArrayList<>(clusterSize);
+    for (int i = 0; i < clusterSize; i++) {
+      addresses.add(new Address("localhost", BASE_PORT + i));
+    }
+    List<String> bootstrapArgs = new ArrayList<>(serverArgs);
+    bootstrapArgs.add("--members");
+    bootstrapArgs.add(addresses.stream().map(address -> address.host() + ":" + address.port()).collect(Collectors.joining(",")));
+    List<ServerProcess> servers = new CopyOnWriteArrayList<>();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> servers.forEach(server -> server.process.destroyForcibly())));
+    for (Address address : addresses) {
+      servers.add(new ServerProcess(address, bootstrapArgs, directory.toFile()));
+    }
+    for (ServerProcess server : servers) {
+      server.ready.join();
+    }
+
+    CopycatClient copycatClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(2).build()).build();
+    copycatClient.serializer().resolve(new MapSerialization());
+    copycatClient.connect(addresses).join();
+    AsyncMapClient<Long, byte[]> client = new AsyncMapClient<>(copycatClient);
+    int keyCount = options.valueOf(keysOption);
+    double readRatio = options.valueOf(readRatioOption);
+    byte[] value = new byte[options.valueOf(valueSizeOption)];
+    ThreadLocalRandom.current().nextBytes(value);
+    OpenLoopBenchmark.preload(client, keyCount, value);
+    LongFunction<CompletableFuture<byte[]>> send = key -> ThreadLocalRandom.current().nextDouble() < readRatio ? client.get(key)
+        : client.put(key, value);
+    if (options.valueOf(warmupOption) > 0) {
+      System.out.println("Warming up at " + rate + " ops/s");
+      OpenLoopBenchmark.schedule(rate, options.valueOf(warmupOption),
+          intended -> send.apply(ThreadLocalRandom.current().nextInt(keyCount)));
+    }
+
+    // the drain at the end of the run may take longer than the run itself
+    Bucket[] buckets = new Bucket[(int) (TimeUnit.SECONDS.toMillis(duration) * 2 / BUCKET_MILLIS)];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new Bucket();
+    }
+    long start = System.nanoTime();
+    long[] events = new long[4]; // killed, new leader, rejoined, caught up; nanos after start
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    ScheduledFuture<?> kill = scheduler.schedule(() -> {
+      ServerProcess leader = servers.stream().filter(ServerProcess::isLeader).findFirst().orElseThrow(IllegalStateException::new);
+      System.out.println("Killing leader " + leader.address);
+      leader.kill();
+      events[0] = System.nanoTime() - start;
+      while (servers.stream().noneMatch(ServerProcess::isLeader)) {
+        Thread.sleep(1);
+      }
+      events[1] = servers.stream().filter(ServerProcess::isLeader).findFirst().get().leaderSince - start;
+      return leader;
+    }, killAt, TimeUnit.SECONDS);
+    ScheduledFuture<?> restart = scheduler.schedule(() -> {
+      ServerProcess killed = servers.stream().filter(server -> !server.process.isAlive()).findFirst()
+          .orElseThrow(IllegalStateException::new);
+      Address live = servers.stream().filter(ServerProcess::isLeader).findFirst().get().address;
+      List<String> joinArgs = new ArrayList<>(serverArgs);
+      joinArgs.add("--join");
+      joinArgs.add(live.host() + ":" + live.port());
+      System.out.println("Restarting " + killed.address);
+      long restarted = System.nanoTime();
+      ServerProcess server = new ServerProcess(killed.address, joinArgs, directory.toFile());
+      servers.set(servers.indexOf(killed), server);
+      events[2] = server.ready.join() - restarted;
+
+      CopycatClient probe = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(1).build()).build();
+      probe.serializer().resolve(new MapSerialization());
+      probe.connect(Collections.singleton(killed.address)).join();
+      new AsyncMapClient<Long, byte[]>(probe).get(0L, ConsistencyLevel.SEQUENTIAL).join();
+      events[3] = System.nanoTime() - restarted;
+      probe.close().join();
+      return null;
+    }, restartAt, TimeUnit.SECONDS);
+
+    System.out.println("Running at " + rate + " ops/s for " + duration + " s");
+    OpenLoopBenchmark.schedule(rate, duration,
+        intended -> send.apply(ThreadLocalRandom.current().nextInt(keyCount)).whenComplete((_v, error) -> {
+          long now = System.nanoTime();
+          Bucket bucket = buckets[(int) Math.min(TimeUnit.NANOSECONDS.toMillis(now - start) / BUCKET_MILLIS, buckets.length - 1)];
+          if (error != null) {
+            bucket.fail();
+          }
+          else {
+            bucket.record(now - intended);
+          }
+        }));
+    scheduler.shutdown();
+    kill.get();
+    restart.get();
+
+    int last = buckets.length - 1;
+    while (last > 0 && buckets[last].count() == 0) {
+      last--;
+    }
+    System.out.println(String.format("%7s %7s %s", "second", "errors", LatencyHistogram.summaryHeader()));
+    for (int i = 0; i <= last; i++) {
+      System.out.println(buckets[i].line(i * BUCKET_MILLIS));
+    }
+
+    int killed = (int) (TimeUnit.NANOSECONDS.toMillis(events[0]) / BUCKET_MILLIS);
+    LatencyHistogram baseline = new LatencyHistogram();
+    for (int i = 0; i < killed; i++) {
+      synchronized (buckets[i]) {
+        baseline.add(buckets[i].latencies);
+      }
+    }
+    long baselineP99 = baseline.valueAtPercentile(99);
+    int gap = 0;
+    int longestGap = 0;
+    int recovered = -1;
+    int within = 0;
+    for (int i = killed; i <= last; i++) {
+      gap = buckets[i].count() == 0 ? gap + 1 : 0;
+      longestGap = Math.max(longestGap, gap);
+      within = buckets[i].count() > 0 && buckets[i].p99() <= 2 * baselineP99 ? within + 1 : 0;
+      if (within == RECOVERY_BUCKETS && recovered < 0) {
+        recovered = i - RECOVERY_BUCKETS + 1;
+      }
+    }
+    long bucketNanos = TimeUnit.MILLISECONDS.toNanos(BUCKET_MILLIS);
+    System.out.println(String.format("baseline:    %.0f ops/s, p99 %.3f ms", baseline.count() * 1000.0 / (killed * BUCKET_MILLIS),
+        LatencyHistogram.millis(baselineP99)));
+    System.out.println("new leader:  " + millis(events[1] - events[0]));
+    System.out.println("longest gap: " + millis(longestGap * bucketNanos));
+    System.out.println("recovered:   " + millis(recovered < 0 ? -1 : Math.max(0, recovered * bucketNanos - events[0])));
+    System.out.println("rejoined:    " + millis(events[2]));
+    System.out.println("caught up:   " + millis(events[3]));
+
+    copycatClient.close().join();
+    for (ServerProcess server : servers) {
+      server.kill();
+    }
+    FileUtils.deleteDirectory(directory);
+    System.exit(0);
+  }
+}
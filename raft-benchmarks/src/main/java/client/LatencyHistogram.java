@@ -0,0 +1,99 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of latencies in nanoseconds, in the layout of HdrHistogram: each power of two is divided into 64 linear sub-buckets, so
+ * every recorded value is reported to within 1/64 (about 1.6 %) of its true value, from one nanosecond up to {@code Long.MAX_VALUE}, in
+ * 30 KB of counts. Percentiles report the highest value of the bucket they fall into, so they never understate a latency.
+ * <p>
+ * The histogram is not thread-safe.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long max;
+
+  /*
+   * Values below 128 have their own buckets. Above that, a value is shifted right until it has 7 significant bits, so the top half of
+   * the sub-buckets, 64 to 127, is used for each shift.
+   */
+  private static int indexOf(long value) {
+    int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+    return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+  }
+
+  private static long highestValueAt(int index) {
+    int shift = Math.max(0, index / SUB_BUCKET_HALF - 1);
+    long subBucket = index - shift * SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      throw new IllegalArgumentException("latency must not be negative");
+    }
+    counts[indexOf(nanos)]++;
+    count++;
+    max = Math.max(max, nanos);
+  }
+
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    max = Math.max(max, other.max);
+  }
+
+  public long count() {
+    return count;
+  }
+
+  /**
+   * @return the exact maximum in nanoseconds
+   */
+  public long max() {
+    return max;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the latency in nanoseconds below which the given percentage of the recorded latencies lie, or 0 if nothing was recorded
+   */
+  public long valueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS && count > 0; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValueAt(i), max);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return count, p50, p99, p99.9 and max in milliseconds
+   */
+  public String summary() {
+    return String.format("%8d %9.3f %9.3f %9.3f %9.3f", count, millis(valueAtPercentile(50)), millis(valueAtPercentile(99)),
+        millis(valueAtPercentile(99.9)), millis(max));
+  }
+
+  public static String summaryHeader() {
+    return String.format("%8s %9s %9s %9s %9s", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+  }
+
+  static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
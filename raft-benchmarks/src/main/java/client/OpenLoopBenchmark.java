@@ -0,0 +1,319 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import io.atomix.copycat.server.storage.StorageLevel;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import serialization.MapSerialization;
+import server.LocalCluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * An open-loop load generator. The JMH benchmarks are closed loops: a thread sends its next request only when the previous one has
+ * returned, so when the cluster stalls, the threads stop sending, and the stall shows up as a single slow request instead of all the
+ * requests that should have been sent in the meantime (coordinated omission). This generator sends requests on a fixed schedule instead,
+ * at the target rate, whatever the response times. The latency of a request is measured from the time at which it was scheduled to be
+ * sent, not from the time at which it was actually sent, so a generator that falls behind its schedule still reports the delay.
+ * <p>
+ * The in-flight cap of the {@link AsyncMapClient} is left at its default. When the cluster cannot keep up, the generator blocks on the
+ * cap and falls behind its schedule, which shows up in the latencies as it should. Without the cap, a Copycat 1.1 leader that receives
+ * thousands of commands of one session ahead of their predecessors sequences them recursively and overflows its stack.
+ * <p>
+ * Latencies are recorded per operation type in {@link LatencyHistogram}s, and reported as p50, p99, p99.9 and max for every second of
+ * the run and for the whole run. In sweep mode, the run is repeated at rising target rates, and the summary of each rate is printed,
+ * which shows where the latency curve bends upward (the knee). The rate at which the p99 first exceeds twice that of the lowest rate is
+ * reported as the knee.
+ * <p>
+ * Command line options:
+ * <ul>
+ * <li>--rate (target operations per second, default 1000)
+ * <li>--sweep (from,to,step: run at the rates from, from + step, ... to, instead of at a single rate)
+ * <li>--duration (seconds per rate, default 30)
+ * <li>--warmup (seconds at the first rate before recording, default 5)
+ * <li>--read-ratio (fraction of gets, the rest are puts, default 0.5)
+ * <li>--keys (number of distinct keys, default 10000)
+ * <li>--value-size (bytes per value, default 128)
+ * <li>--zipfian (choose keys with a Zipfian instead of a uniform distribution)
+ * <li>--connect (host:port,host:port,... an existing cluster, otherwise a {@code LocalCluster} is started on localhost ports from 7001)
+ * <li>--cluster-size (servers of the local cluster, default 3)
+ * <li>--storage (storage level of the local cluster, default MEMORY)
+ * </ul>
+ * For example, {@code java -cp target/benchmarks.jar client.OpenLoopBenchmark --sweep 500,5000,500 --duration 10}.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+public class OpenLoopBenchmark {
+
+  private static final int BASE_PORT = 7001;
+  private static final int PRELOAD_BATCH = 1000;
+  private static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+  private final AsyncMapClient<Long, byte[]> client;
+  private final LongSupplier keys;
+  private final double readRatio;
+  private final byte[] value;
+  private final Recorder gets = new Recorder();
+  private final Recorder puts = new Recorder();
+  private final AtomicLong failures = new AtomicLong();
+
+  OpenLoopBenchmark(AsyncMapClient<Long, byte[]> client, LongSupplier keys, double readRatio, byte[] value) {
+    this.client = client;
+    this.keys = keys;
+    this.readRatio = readRatio;
+    this.value = value;
+  }
+
+  /*
+   * Every operation reports its latency into the interval histogram of its type and into the histogram of the whole run. The reporter
+   * swaps the interval histograms once per second.
+   */
+  private static final class Recorder {
+    private LatencyHistogram interval = new LatencyHistogram();
+    private LatencyHistogram total = new LatencyHistogram();
+
+    synchronized void record(long nanos) {
+      interval.record(nanos);
+      total.record(nanos);
+    }
+
+    synchronized LatencyHistogram interval() {
+      LatencyHistogram result = interval;
+      interval = new LatencyHistogram();
+      return result;
+    }
+
+    synchronized LatencyHistogram reset() {
+      LatencyHistogram result = total;
+      interval = new LatencyHistogram();
+      total = new LatencyHistogram();
+      return result;
+    }
+  }
+
+  /**
+   * Sends operations at the given rate for the given time, and waits for the outstanding ones.
+   * @param report print the latencies of each second
+   * @return the histograms of the gets and the puts
+   */
+  LatencyHistogram[] run(int rate, int seconds, boolean report) {
+    gets.reset();
+    puts.reset();
+    failures.set(0);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    if (report) {
+      System.out.println(String.format("%6s %4s %s", "second", "op", LatencyHistogram.summaryHeader()));
+      AtomicLong second = new AtomicLong();
+      reporter.scheduleAtFixedRate(() -> {
+        long s = second.incrementAndGet();
+        System.out.println(String.format("%6d %4s %s", s, "get", gets.interval().summary()));
+        System.out.println(String.format("%6d %4s %s", s, "put", puts.interval().summary()));
+      }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    schedule(rate, seconds, this::send);
+    reporter.shutdownNow();
+    try {
+      reporter.awaitTermination(1, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (failures.get() > 0) {
+      System.out.println(failures.get() + " operations failed");
+    }
+    return new LatencyHistogram[] { gets.reset(), puts.reset() };
+  }
+
+  /**
+   * Calls {@code send} with the intended send time of each operation, on schedule, and waits for the operations that are still
+   * outstanding at the end.
+   * @param send sends an operation and returns its future
+   */
+  static void schedule(int rate, int seconds, LongFunction<CompletableFuture<?>> send) {
+    long operations = (long) rate * seconds;
+    List<CompletableFuture<?>> pending = new ArrayList<>();
+    long start = System.nanoTime();
+    for (long i = 0; i < operations; i++) {
+      long intended = start + i * TimeUnit.SECONDS.toNanos(1) / rate;
+      long wait;
+      while ((wait = intended - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      pending.add(send.apply(intended));
+      if (i % rate == 0) { // drop the references to completed operations once per second
+        pending.removeIf(CompletableFuture::isDone);
+      }
+    }
+    CompletableFuture<Void> drained = CompletableFuture.allOf(pending.toArray(new CompletableFuture[pending.size()]));
+    try {
+      drained.get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    catch (Exception e) {
+      System.out.println("Operations still outstanding after " + DRAIN_TIMEOUT_SECONDS + " s: " + e);
+    }
+  }
+
+  private CompletableFuture<?> send(long intended) {
+    long key = keys.getAsLong();
+    boolean read = ThreadLocalRandom.current().nextDouble() < readRatio;
+    Recorder recorder = read ? gets : puts;
+    CompletableFuture<byte[]> future = read ? client.get(key) : client.put(key, value);
+    return future.whenComplete((_v, error) -> {
+      if (error != null) {
+        failures.incrementAndGet();
+      }
+      else {
+        recorder.record(System.nanoTime() - intended);
+      }
+    });
+  }
+
+  private static void printSummary(String label, LatencyHistogram[] histograms) {
+    System.out.println(String.format("%10s %4s %s", label, "get", histograms[0].summary()));
+    System.out.println(String.format("%10s %4s %s", label, "put", histograms[1].summary()));
+  }
+
+  private static LatencyHistogram all(LatencyHistogram[] histograms) {
+    LatencyHistogram all = new LatencyHistogram();
+    for (LatencyHistogram histogram : histograms) {
+      all.add(histogram);
+    }
+    return all;
+  }
+
+  /**
+   * Puts the keys from 0 to {@code keyCount - 1}, in batches.
+   */
+  static void preload(AsyncMapClient<Long, byte[]> client, int keyCount, byte[] value) {
+    Map<Long, byte[]> batch = new HashMap<>();
+    for (long key = 0; key < keyCount; key++) {
+      batch.put(key, value);
+      if (batch.size() == PRELOAD_BATCH || key == keyCount - 1) {
+        client.putAll(batch).join();
+        batch.clear();
+      }
+    }
+  }
+
+  static Address address(String hostAndPort) {
+    String[] part = hostAndPort.split(":");
+    return new Address(part[0], Integer.parseInt(part[1]));
+  }
+
+  public static void main(String[] args) {
+    Locale.setDefault(Locale.ENGLISH);
+    OptionParser parser = new OptionParser();
+    OptionSpec<Integer> rateOption = parser.accepts("rate").withRequiredArg().ofType(Integer.class).defaultsTo(1000);
+    OptionSpec<Integer> sweepOption = parser.accepts("sweep").withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',');
+    OptionSpec<Integer> durationOption = parser.accepts("duration").withRequiredArg().ofType(Integer.class).defaultsTo(30);
+    OptionSpec<Integer> warmupOption = parser.accepts("warmup").withRequiredArg().ofType(Integer.class).defaultsTo(5);
+    OptionSpec<Double> readRatioOption = parser.accepts("read-ratio").withRequiredArg().ofType(Double.class).defaultsTo(0.5);
+    OptionSpec<Integer> keysOption = parser.accepts("keys").withRequiredArg().ofType(Integer.class).defaultsTo(10000);
+    OptionSpec<Integer> valueSizeOption = parser.accepts("value-size").withRequiredArg().ofType(Integer.class).defaultsTo(128);
+    parser.accepts("zipfian");
+    OptionSpec<String> connectOption = parser.accepts("connect").withRequiredArg().withValuesSeparatedBy(',');
+    OptionSpec<Integer> clusterSizeOption = parser.accepts("cluster-size").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+    OptionSpec<StorageLevel> storageOption = parser.accepts("storage").withRequiredArg().ofType(StorageLevel.class)
+        .defaultsTo(StorageLevel.MEMORY);
+    OptionSet options = parser.parse(args);
+
+    List<Integer> rates = new ArrayList<>();
+    if (options.has(sweepOption)) {
+      List<Integer> sweep = options.valuesOf(sweepOption);
+      if (sweep.size() != 3 || sweep.get(0) < 1 || sweep.get(2) < 1) {
+        throw new IllegalArgumentException("sweep must be from,to,step with positive from and step");
+      }
+      for (int rate = sweep.get(0); rate <= sweep.get(1); rate += sweep.get(2)) {
+        rates.add(rate);
+      }
+    }
+    else {
+      rates.add(options.valueOf(rateOption));
+    }
+    if (rates.isEmpty() || rates.get(0) < 1) {
+      throw new IllegalArgumentException("rate must be positive");
+    }
+    int keyCount = options.valueOf(keysOption);
+    if (keyCount < 1) {
+      throw new IllegalArgumentException("keys must be positive");
+    }
+
+    LocalCluster cluster = null;
+    List<Address> addresses = new ArrayList<>();
+    if (options.has(connectOption)) {
+      for (String hostAndPort : options.valuesOf(connectOption)) {
+        addresses.add(address(hostAndPort));
+      }
+    }
+    else {
+      cluster = LocalCluster.builder().withSize(options.valueOf(clusterSizeOption)).withAddress("localhost", BASE_PORT)
+          .withStorageLevel(options.valueOf(storageOption)).build();
+      cluster.start().join();
+      addresses.addAll(cluster.addresses());
+    }
+    CopycatClient copycatClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(2).build()).build();
+    copycatClient.serializer().resolve(new MapSerialization());
+    copycatClient.connect(addresses).join();
+    AsyncMapClient<Long, byte[]> client = new AsyncMapClient<>(copycatClient);
+
+    byte[] value = new byte[options.valueOf(valueSizeOption)];
+    ThreadLocalRandom.current().nextBytes(value);
+    preload(client, keyCount, value);
+    ZipfianGenerator zipfian = new ZipfianGenerator(keyCount);
+    LongSupplier keys = options.has("zipfian") ? zipfian::next : () -> ThreadLocalRandom.current().nextInt(keyCount);
+    OpenLoopBenchmark benchmark = new OpenLoopBenchmark(client, keys, options.valueOf(readRatioOption), value);
+
+    int duration = options.valueOf(durationOption);
+    if (options.valueOf(warmupOption) > 0) {
+      System.out.println("Warming up at " + rates.get(0) + " ops/s");
+      benchmark.run(rates.get(0), options.valueOf(warmupOption), false);
+    }
+    if (rates.size() == 1) {
+      System.out.println("Running at " + rates.get(0) + " ops/s");
+      LatencyHistogram[] histograms = benchmark.run(rates.get(0), duration, true);
+      System.out.println(String.format("%10s %4s %s", "total", "op", LatencyHistogram.summaryHeader()));
+      printSummary("total", histograms);
+    }
+    else {
+      System.out.println(String.format("%10s %4s %s", "ops/s", "op", LatencyHistogram.summaryHeader()));
+      Integer knee = null;
+      long baseline = 0;
+      for (int rate : rates) {
+        LatencyHistogram[] histograms = benchmark.run(rate, duration, false);
+        printSummary(Integer.toString(rate), histograms);
+        long p99 = all(histograms).valueAtPercentile(99);
+        if (rate == rates.get(0)) {
+          baseline = p99;
+        }
+        else if (knee == null && p99 > 2 * baseline) {
+          knee = rate;
+        }
+      }
+      System.out.println(knee == null ? "No knee up to " + rates.get(rates.size() - 1) + " ops/s"
+          : "Knee at " + knee + " ops/s: p99 more than twice that at " + rates.get(0) + " ops/s");
+    }
+
+    copycatClient.close().join();
+    if (cluster != null) {
+      cluster.stop().join();
+    }
+    System.exit(0);
+  }
+}
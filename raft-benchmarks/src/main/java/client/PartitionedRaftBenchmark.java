@@ -0,0 +1,46 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import org.openjdk.jmh.annotations.Param;
+import serialization.MapSerialization;
+import util.Partitions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Runs the {@link ConcurrentMapClientBenchmark} workloads against a partitioned cluster, through a {@link PartitionedMapClient}. The
+ * servers must have been started with the same number of partitions, e. g. for three servers on one machine:
+ * <pre>
+ * StartServer --address localhost:5001 --members localhost:5001,localhost:5002,localhost:5003 --partitions 4
+ * </pre>
+ * and likewise for 5002 and 5003. Then run {@code java -jar target/benchmarks.jar PartitionedRaftBenchmark -p partitions=4}.
+ */
+public class PartitionedRaftBenchmark extends ConcurrentMapClientBenchmark {
+
+  private static final List<Address> SERVERS = asList(new Address("localhost", 5001), new Address("localhost", 5002),
+      new Address("localhost", 5003));
+
+  @Param({ "1" })
+  public int partitions;
+
+  @Override
+  void createSpecificClient(ConcurrentMap<Long, String>[] clients) {
+    for (int i = 0; i < MAX_CLIENTS; i++) {
+      List<ConcurrentMapClient<Long, String>> shards = new ArrayList<>(partitions);
+      for (int partition = 0; partition < partitions; partition++) {
+        CopycatClient copycatClient = CopycatClient.builder()
+            .withTransport(NettyTransport.builder().withThreads(2).build()).build();
+        copycatClient.serializer().resolve(new MapSerialization());
+        copycatClient.connect(Partitions.addresses(SERVERS, partition)).join();
+        shards.add(new ConcurrentMapClient<>(copycatClient));
+      }
+      clients[i] = new PartitionedMapClient<>(shards);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import org.openjdk.jmh.annotations.Param;
+import serialization.MapSerialization;
+
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Runs the {@link ConcurrentMapClientBenchmark} workloads through a {@link PooledMapClient}, once per pool size. With a single session,
+ * all benchmark threads share the ordering of one session, as with the {@link RaftBenchmark}.
+ */
+public class PooledRaftBenchmark extends ConcurrentMapClientBenchmark {
+
+  @Param({ "1", "2", "4", "8", "16", "32" })
+  public int sessions;
+
+  @Override
+  void createSpecificClient(ConcurrentMap<Long, String>[] clients) {
+    for (int i = 0; i < MAX_CLIENTS; i++) {
+      clients[i] = new PooledMapClient<>(sessions, () -> {
+        CopycatClient copycatClient = CopycatClient.builder()
+            .withTransport(NettyTransport.builder().withThreads(2).build()).build();
+        copycatClient.serializer().resolve(new MapSerialization());
+        return copycatClient;
+      }, asList(new Address("localhost", 5001), new Address("localhost", 5002), new Address("localhost", 5003)));
+    }
+  }
+}
@@ -3,8 +3,7 @@ package client;
 import io.atomix.catalyst.transport.Address;
 import io.atomix.catalyst.transport.netty.NettyTransport;
 import io.atomix.copycat.client.CopycatClient;
-import statemachine.GetQuery;
-import statemachine.PutCommand;
+import serialization.MapSerialization;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
@@ -22,8 +21,7 @@ public class RaftBenchmark extends ConcurrentMapClientBenchmark {
       CopycatClient copycatClient = CopycatClient.builder()
           .withTransport(NettyTransport.builder().withThreads(2).build()).build();
 
-      copycatClient.serializer().register(PutCommand.class);
-      copycatClient.serializer().register(GetQuery.class);
+      copycatClient.serializer().resolve(new MapSerialization());
 
       CompletableFuture<CopycatClient> future = copycatClient
           .connect(asList(new Address("localhost", 5001),
@@ -31,7 +29,11 @@ public class RaftBenchmark extends ConcurrentMapClientBenchmark {
               new Address("localhost", 5003)));
       future.join(); // block
 
-      clients[i] = new ConcurrentMapClient<>(copycatClient);
+      clients[i] = createMapClient(copycatClient);
     }
   }
-}
\ No newline at end of file
+
+  ConcurrentMapClient<Long, String> createMapClient(CopycatClient copycatClient) {
+    return new ConcurrentMapClient<>(copycatClient);
+  }
+}
@@ -0,0 +1,25 @@
+package client;
+
+import io.atomix.copycat.Query.ConsistencyLevel;
+import io.atomix.copycat.client.CopycatClient;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Runs the {@link ConcurrentMapClientBenchmark} workloads once per read consistency level. Sample time mode reports the latency
+ * distribution of gets alongside the throughput. With {@code SEQUENTIAL} consistency, a follower can answer a get without asking
+ * the leader.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+public class RaftConsistencyBenchmark extends RaftBenchmark {
+
+  @Param({ "LINEARIZABLE", "LINEARIZABLE_LEASE", "SEQUENTIAL" })
+  public String consistency;
+
+  @Override
+  ConcurrentMapClient<Long, String> createMapClient(CopycatClient copycatClient) {
+    return AsyncMapClient.<Long, String> builder(copycatClient)
+        .withReadConsistency(ConsistencyLevel.valueOf(consistency)).buildBlocking();
+  }
+}
@@ -0,0 +1,35 @@
+package client;
+
+import io.atomix.copycat.client.CopycatClient;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the {@link ConcurrentMapClientBenchmark} workloads with micro-batching enabled, and prints the batch statistics at the end
+ * of each trial.
+ */
+public class RaftMicroBatchingBenchmark extends RaftBenchmark {
+
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private final List<ConcurrentMapClient<Long, String>> mapClients = new ArrayList<>();
+
+  @Override
+  ConcurrentMapClient<Long, String> createMapClient(CopycatClient copycatClient) {
+    ConcurrentMapClient<Long, String> mapClient = AsyncMapClient.<Long, String> builder(copycatClient)
+        .withMicroBatching(MAX_BATCH_SIZE).buildBlocking();
+    mapClients.add(mapClient);
+    return mapClient;
+  }
+
+  @TearDown(Level.Trial)
+  public void printStatistics() {
+    for (ConcurrentMapClient<Long, String> mapClient : mapClients) {
+      System.out.println("put batches: " + mapClient.putBatchStatistics());
+      System.out.println("get batches: " + mapClient.getBatchStatistics());
+    }
+  }
+}
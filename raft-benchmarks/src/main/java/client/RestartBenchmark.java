@@ -0,0 +1,179 @@
+package client;
+
+import client.FailoverBenchmark.ServerProcess;
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import serialization.MapSerialization;
+import server.StartServer;
+import util.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how long a server takes to restart on the storage of a large map. For every map size, the benchmark starts a single-node
+ * {@link StartServer} process, loads the map, waits until Copycat has taken a snapshot, and kills the process. It then restarts the
+ * server on its old storage several times, once for every install parallelism, and prints the time from the start of the process until
+ * the server has caught up, together with the startup times that the server reports: opening the storage, joining, installing the
+ * snapshot and replaying the log tail behind it. At the end, it prints a table with the median install and restart times for every map
+ * size and parallelism.
+ * <p>
+ * The install parallelism is the parallelism of the common fork/join pool of the server, in which the blocks of the snapshot are
+ * decoded. 1 decodes them one after the other on the state machine thread.
+ * <p>
+ * Command line options:
+ * <ul>
+ * <li>--entries (comma-separated map sizes, default "1000000,10000000")
+ * <li>--value-size (bytes per value, default 100)
+ * <li>--restarts (restarts per parallelism, default 3)
+ * <li>--parallelism (comma-separated install parallelisms, default 1 and the number of processors)
+ * <li>--snapshot-timeout (seconds to wait for the snapshot after loading, default 300)
+ * <li>--server-args (further options for {@code StartServer}, e. g. "--off-heap --compress-snapshots")
+ * </ul>
+ * The server listens on localhost port 7101 and stores its log in a temporary directory, which is deleted at the end. It is started
+ * with the class path and JVM options of this process, so for large maps, give this process a large enough heap.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+public class RestartBenchmark {
+
+  private static final Address ADDRESS = new Address("localhost", 7101);
+  private static final Pattern INSTALL = Pattern.compile("snapshot of (\\d+) entries \\((\\d+) KB\\) installed from (\\d+) to (\\d+) ms");
+  private static final Pattern REPLAY = Pattern.compile("log tail replayed in (-?\\d+) ms");
+
+  private static List<String> split(String arguments) {
+    List<String> list = new ArrayList<>();
+    for (String argument : arguments.trim().split("\\s+")) {
+      if (!argument.isEmpty()) {
+        list.add(argument);
+      }
+    }
+    return list;
+  }
+
+  private static void load(int entries, byte[] value) {
+    CopycatClient copycatClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(2).build()).build();
+    copycatClient.serializer().resolve(new MapSerialization());
+    copycatClient.connect(Collections.singleton(ADDRESS)).join();
+    long start = System.nanoTime();
+    OpenLoopBenchmark.preload(new AsyncMapClient<>(copycatClient), entries, value);
+    System.out.println("Loaded " + entries + " entries in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    copycatClient.close().join();
+  }
+
+  /*
+   * Copycat takes a snapshot some time after the log has rolled over to a new segment, and keeps it in the storage directory of the
+   * server.
+   */
+  private static boolean awaitSnapshot(File storage, int timeoutSeconds) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    while (System.nanoTime() < deadline) {
+      File[] snapshots = storage.listFiles((dir, name) -> name.endsWith(".snapshot"));
+      if (snapshots != null && snapshots.length > 0) {
+        Thread.sleep(1000); // let Copycat finish writing it
+        return true;
+      }
+      Thread.sleep(100);
+    }
+    return false;
+  }
+
+  private static String field(Pattern pattern, String startup, int group) {
+    Matcher matcher = pattern.matcher(startup);
+    return matcher.find() ? matcher.group(group) : "n/a";
+  }
+
+  private static long install(String startup) {
+    Matcher matcher = INSTALL.matcher(startup);
+    return matcher.find() ? Long.parseLong(matcher.group(4)) - Long.parseLong(matcher.group(3)) : -1;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Locale.setDefault(Locale.ENGLISH);
+    OptionParser parser = new OptionParser();
+    OptionSpec<Integer> entriesOption = parser.accepts("entries").withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',')
+        .defaultsTo(1_000_000, 10_000_000);
+    OptionSpec<Integer> valueSizeOption = parser.accepts("value-size").withRequiredArg().ofType(Integer.class).defaultsTo(100);
+    OptionSpec<Integer> restartsOption = parser.accepts("restarts").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+    OptionSpec<Integer> parallelismOption = parser.accepts("parallelism").withRequiredArg().ofType(Integer.class)
+        .withValuesSeparatedBy(',');
+    OptionSpec<Integer> snapshotTimeoutOption = parser.accepts("snapshot-timeout").withRequiredArg().ofType(Integer.class)
+        .defaultsTo(300);
+    OptionSpec<String> serverArgsOption = parser.accepts("server-args").withRequiredArg().defaultsTo("");
+    OptionSet options = parser.parse(args);
+
+    int processors = Runtime.getRuntime().availableProcessors();
+    List<Integer> parallelisms = options.has(parallelismOption) ? options.valuesOf(parallelismOption)
+        : processors > 1 ? Arrays.asList(1, processors) : Collections.singletonList(1);
+    int restarts = options.valueOf(restartsOption);
+    if (restarts < 1 || parallelisms.stream().anyMatch(parallelism -> parallelism < 1)) {
+      throw new IllegalArgumentException("restarts and parallelism must be positive");
+    }
+    List<String> serverArgs = split(options.valueOf(serverArgsOption));
+    byte[] value = new byte[options.valueOf(valueSizeOption)];
+    ThreadLocalRandom.current().nextBytes(value);
+
+    Path directory = Files.createTempDirectory("raft-restart");
+    File storage = directory.resolve(ADDRESS.host() + "_" + ADDRESS.port() + "_logs").toFile();
+    ServerProcess[] server = new ServerProcess[1];
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      if (server[0] != null) {
+        server[0].process.destroyForcibly();
+      }
+    }));
+    List<String> results = new ArrayList<>();
+    for (int entries : options.valuesOf(entriesOption)) {
+      List<String> cleanArgs = new ArrayList<>(serverArgs);
+      cleanArgs.add("--clean");
+      server[0] = new ServerProcess(ADDRESS, cleanArgs, directory.toFile());
+      server[0].ready.join();
+      load(entries, value);
+      if (!awaitSnapshot(storage, options.valueOf(snapshotTimeoutOption))) {
+        System.out.println("No snapshot after " + options.valueOf(snapshotTimeoutOption) + " s, restarts will replay the whole log");
+      }
+      server[0].kill();
+
+      for (int parallelism : parallelisms) {
+        List<String> jvmArgs = Collections.singletonList("-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + parallelism);
+        long[] totals = new long[restarts];
+        long[] installs = new long[restarts];
+        for (int i = 0; i < restarts; i++) {
+          long start = System.nanoTime();
+          server[0] = new ServerProcess(ADDRESS, jvmArgs, serverArgs, directory.toFile());
+          String startup = server[0].caughtUp.join();
+          totals[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          installs[i] = install(startup);
+          System.out.println(String.format("%d entries, parallelism %d, restart %d: caught up after %d ms; %s", entries, parallelism,
+              i + 1, totals[i], startup));
+          server[0].kill();
+        }
+        Arrays.sort(totals);
+        Arrays.sort(installs);
+        String startup = server[0].caughtUp.join();
+        results.add(String.format("%10d %11d %10s %10s %12d %12d %10s", entries, parallelism, field(INSTALL, startup, 1),
+            field(INSTALL, startup, 2), installs[restarts / 2], totals[restarts / 2], field(REPLAY, startup, 1)));
+      }
+      FileUtils.deleteDirectory(storage.toPath());
+    }
+
+    System.out.println(String.format("%10s %11s %10s %10s %12s %12s %10s", "entries", "parallelism", "installed", "KB",
+        "install ms", "restart ms", "replay ms"));
+    results.forEach(System.out::println);
+    FileUtils.deleteDirectory(directory);
+    System.exit(0);
+  }
+}
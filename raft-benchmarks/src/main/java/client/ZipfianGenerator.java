@@ -0,0 +1,60 @@
+package client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws indexes from {@code [0, items)} with a Zipfian distribution, so that a few indexes are much more popular than the rest: index 0
+ * is the most popular, index 1 the next, and so on. This is the algorithm of Gray et al., "Quickly Generating Billion-Record Synthetic
+ * Databases", as used by YCSB. The constant 0.99 is YCSB's default, with which about half the draws hit the most popular 1 % of 10000
+ * items.
+ * <p>
+ * The generator is immutable and may be shared by threads.
+ */
+public class ZipfianGenerator {
+
+  public static final double DEFAULT_THETA = 0.99;
+
+  private final long items;
+  private final double theta;
+  private final double zetan;
+  private final double alpha;
+  private final double eta;
+
+  public ZipfianGenerator(long items) {
+    this(items, DEFAULT_THETA);
+  }
+
+  public ZipfianGenerator(long items, double theta) {
+    if (items < 1) {
+      throw new IllegalArgumentException("items must be positive");
+    }
+    if (theta <= 0 || theta >= 1) {
+      throw new IllegalArgumentException("theta must be between 0 and 1");
+    }
+    this.items = items;
+    this.theta = theta;
+    this.zetan = zeta(items, theta);
+    this.alpha = 1 / (1 - theta);
+    this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+  }
+
+  private static double zeta(long n, double theta) {
+    double sum = 0;
+    for (long i = 1; i <= n; i++) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+
+  public long next() {
+    double u = ThreadLocalRandom.current().nextDouble();
+    double uz = u * zetan;
+    if (uz < 1) {
+      return 0;
+    }
+    if (uz < 1 + Math.pow(0.5, theta)) {
+      return Math.min(1, items - 1);
+    }
+    return Math.min((long) (items * Math.pow(eta * u - eta + 1, alpha)), items - 1);
+  }
+}
@@ -0,0 +1,150 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import statemachine.CompressedValue;
+import statemachine.PutCommand;
+
+/**
+ * Measures what compression costs and saves for JSON documents of several sizes, without a cluster:
+ * <ul>
+ * <li>{@code put} is the client-side work of a put: compressing the value, if the mode says so, and serializing the command as Copycat
+ * does before it is sent, appended to the log and replicated.
+ * <li>{@code get} is the client-side work of reading a value from a response: deserializing it and, for a compressed value,
+ * decompressing it.
+ * <li>{@code snapshot} writes a snapshot of {@value #DOCUMENTS} documents in {@link SnapshotFormat}.
+ * </ul>
+ * The modes are {@code none}, {@code values} (the client compresses values, as with {@code AsyncMapClient.Builder.withCompression})
+ * and {@code blocks} (values are not compressed, but the server compresses the blocks of its snapshots). Once per trial, the setup
+ * prints the sizes that matter for disk, replication and heap: the bytes of a put command, which are written to the log of every
+ * replica and sent to every follower, the bytes of the value held by the state machine, and the bytes per entry of a snapshot.
+ * <p>
+ * The documents are generated from a small vocabulary with random numbers, so they compress about as well as typical JSON.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class CompressionBenchmark {
+
+  static final int DOCUMENTS = 256;
+  static final int THRESHOLD = 1024;
+
+  private static final String[] NAMES = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel" };
+  private static final String[] STATES = { "ACTIVE", "SUSPENDED", "PENDING", "CLOSED" };
+
+  @Param({ "2048", "10240", "51200" })
+  public int valueSize;
+
+  @Param({ "none", "values", "blocks" })
+  public String mode;
+
+  private Serializer serializer;
+  private String[] documents;
+  private Buffer[] responses; // each value as a get returns it
+  private Map<String, Object> map; // as the state machine holds it
+  private Buffer buffer;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    serializer = new Serializer();
+    serializer.resolve(new MapSerialization());
+    Random random = new Random(42);
+    documents = new String[DOCUMENTS];
+    responses = new Buffer[DOCUMENTS];
+    map = new HashMap<>();
+    long valueBytes = 0;
+    for (int i = 0; i < DOCUMENTS; i++) {
+      documents[i] = document(random, valueSize);
+      Object stored = stored(documents[i]);
+      map.put("key" + i, stored);
+      responses[i] = serializer.writeObject(stored).flip();
+      valueBytes += stored instanceof CompressedValue ? ((CompressedValue) stored).data().length
+          : documents[i].getBytes(StandardCharsets.UTF_8).length;
+    }
+    buffer = HeapBuffer.allocate(1024 * 1024, Integer.MAX_VALUE - 8);
+    long commandBytes = 0;
+    for (int i = 0; i < DOCUMENTS; i++) {
+      commandBytes += put().position();
+    }
+    long snapshotBytes = snapshot().position();
+    System.out.println();
+    System.out.println(mode + ": " + commandBytes / DOCUMENTS + " bytes per put command, " + valueBytes / DOCUMENTS
+        + " bytes per stored value, " + snapshotBytes / DOCUMENTS + " snapshot bytes per entry");
+  }
+
+  private Object stored(String document) {
+    return "values".equals(mode) ? CompressedValue.compress(document, THRESHOLD) : document;
+  }
+
+  static String document(Random random, int size) {
+    StringBuilder json = new StringBuilder(size + 256).append("{\"items\":[");
+    for (int id = 0; json.length() < size; id++) {
+      String name = NAMES[random.nextInt(NAMES.length)];
+      json.append(id == 0 ? "" : ",").append("{\"id\":").append(random.nextInt(1_000_000)).append(",\"name\":\"").append(name)
+          .append("\",\"email\":\"").append(name).append(random.nextInt(1000)).append("@example.com\",\"state\":\"")
+          .append(STATES[random.nextInt(STATES.length)]).append("\",\"balance\":").append(random.nextInt(100_000) / 100.0)
+          .append(",\"updated\":\"2016-0").append(1 + random.nextInt(9)).append("-1").append(random.nextInt(10))
+          .append("T12:").append(10 + random.nextInt(50)).append(":00Z\",\"verified\":").append(random.nextBoolean()).append("}");
+    }
+    return json.append("]}").toString();
+  }
+
+  @Benchmark
+  public Buffer put() {
+    String document = documents[next++ & (DOCUMENTS - 1)];
+    buffer.clear();
+    return serializer.writeObject(new PutCommand<>("key", stored(document)), buffer);
+  }
+
+  @Benchmark
+  public Object get() {
+    Buffer response = responses[next++ & (DOCUMENTS - 1)];
+    response.rewind();
+    return CompressedValue.decompress(serializer.readObject(response));
+  }
+
+  @Benchmark
+  public Buffer snapshot() {
+    buffer.clear();
+    SnapshotFormat.writeEntries(map, buffer, serializer, "blocks".equals(mode));
+    return buffer;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + CompressionBenchmark.class.getSimpleName() + ".*").build();
+
+    new Runner(opt).run();
+  }
+}
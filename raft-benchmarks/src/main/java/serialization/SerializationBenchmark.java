@@ -0,0 +1,107 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import statemachine.GetQuery;
+import statemachine.PutCommand;
+
+/**
+ * Compares encoding size and encode/decode cost of map operations between Java serialization (the classes merely registered
+ * with the Catalyst serializer) and the binary serializers registered by {@link MapSerialization}. The entry sizes are printed
+ * once per trial. No cluster is needed to run this benchmark.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class SerializationBenchmark {
+
+  @Param({ "java", "binary" })
+  public String serialization;
+
+  @Param({ "string", "bytes" })
+  public String valueType;
+
+  private Serializer serializer;
+  private PutCommand<Long, Object> put;
+  private GetQuery<Object> get;
+  private final Buffer buffer = HeapBuffer.allocate(1024);
+  private Buffer encodedPut;
+  private Buffer encodedGet;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    serializer = new Serializer();
+    if ("java".equals(serialization)) {
+      serializer.register(PutCommand.class);
+      serializer.register(GetQuery.class);
+    }
+    else {
+      serializer.resolve(new MapSerialization());
+    }
+
+    long key = new Random().nextLong();
+    Object value = "bytes".equals(valueType) ? new byte[32] : "val" + key;
+    put = new PutCommand<>(key, value);
+    get = new GetQuery<>(key);
+
+    encodedPut = serializer.writeObject(put).flip();
+    encodedGet = serializer.writeObject(get).flip();
+    System.out.println();
+    System.out.println(serialization + " PutCommand size: " + encodedPut.remaining() + " bytes");
+    System.out.println(serialization + " GetQuery size: " + encodedGet.remaining() + " bytes");
+  }
+
+  @Benchmark
+  public Buffer encodePut() {
+    return serializer.writeObject(put, buffer.clear());
+  }
+
+  @Benchmark
+  public Object decodePut() {
+    return serializer.readObject(encodedPut.rewind());
+  }
+
+  @Benchmark
+  public Buffer encodeGet() {
+    return serializer.writeObject(get, buffer.clear());
+  }
+
+  @Benchmark
+  public Object decodeGet() {
+    return serializer.readObject(encodedGet.rewind());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + SerializationBenchmark.class.getSimpleName() + ".*").build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,100 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to write and read a map snapshot with {@code writeObject(map)} ("object") and with the record-by-record
+ * {@link SnapshotFormat} ("streaming"). The snapshot is written to a heap buffer, so no cluster or disk is involved. Run with the
+ * GC profiler (as {@link #main(String[])} does) to see the allocation per operation in {@code gc.alloc.rate.norm}.
+ * <p>
+ * Catalyst's map serializer writes the entry count as an unsigned short. With more than 65535 entries, "object" therefore reads back
+ * only {@code entries % 65536} of them, and its read times are not comparable. The number of entries read back is printed once per
+ * trial.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.SingleShotTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class SnapshotBenchmark {
+
+  @Param({ "1000000", "10000000" })
+  public int entries;
+
+  @Param({ "object", "streaming" })
+  public String format;
+
+  private Serializer serializer;
+  private Map<Long, String> map;
+  private Buffer buffer;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    serializer = new Serializer();
+    serializer.resolve(new MapSerialization());
+    map = new HashMap<>(entries * 4 / 3 + 1);
+    for (long i = 0; i < entries; i++) {
+      map.put(i, "value" + i);
+    }
+    buffer = HeapBuffer.allocate(64 * 1024 * 1024, Integer.MAX_VALUE - 8);
+    write();
+    System.out.println();
+    System.out.println(format + " snapshot size: " + buffer.position() / entries + " bytes per entry");
+    System.out.println(format + " entries read back: " + read().size());
+  }
+
+  @Benchmark
+  public Buffer write() {
+    buffer.clear();
+    if ("object".equals(format)) {
+      serializer.writeObject(map, buffer);
+    }
+    else {
+      SnapshotFormat.writeEntries(map, buffer, serializer);
+    }
+    return buffer;
+  }
+
+  @Benchmark
+  public Map<Long, String> read() {
+    buffer.rewind();
+    if ("object".equals(format)) {
+      return serializer.readObject(buffer);
+    }
+    return SnapshotFormat.readEntries(buffer, serializer);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + SnapshotBenchmark.class.getSimpleName() + ".*").addProfiler(GCProfiler.class).build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,110 @@
+package statemachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import util.LongObjectMap;
+
+/**
+ * Measures the heap retained per entry by the storage of the {@code MapStateMachine} ("hashmap", a {@code HashMap} with boxed
+ * {@code Long} keys) and of the {@code LongMapStateMachine} ("longmap", a {@link LongObjectMap}). All entries share one value, so the
+ * result is the overhead of the map structure and the keys alone. The score is the time to fill the map. The retained bytes per entry,
+ * measured from the used heap after a full GC, are printed after each iteration. No cluster is needed to run this benchmark.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.SingleShotTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class MemoryPerEntryBenchmark {
+
+  @Param({ "1000000" })
+  public int entries;
+
+  @Param({ "hashmap", "longmap" })
+  public String store;
+
+  private static final String VALUE = "value";
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  private long[] keys;
+  private double bytesPerEntry;
+
+  @Setup(Level.Trial)
+  public void createKeys() {
+    Random random = new Random(42);
+    keys = new long[entries];
+    for (int i = 0; i < entries; i++) {
+      keys[i] = random.nextLong();
+    }
+  }
+
+  @Benchmark
+  public Object fill() {
+    long before = usedHeapAfterGc();
+    Object map = "longmap".equals(store) ? fillLongMap() : fillHashMap();
+    bytesPerEntry = (usedHeapAfterGc() - before) / (double) entries;
+    return map;
+  }
+
+  @TearDown(Level.Iteration)
+  public void printFootprint() {
+    System.out.printf(" %s: %.1f bytes per entry%n", store, bytesPerEntry);
+  }
+
+  private Map<Long, String> fillHashMap() {
+    Map<Long, String> map = new HashMap<>();
+    for (long key : keys) {
+      map.put(key, VALUE);
+    }
+    return map;
+  }
+
+  private LongObjectMap<String> fillLongMap() {
+    LongObjectMap<String> map = new LongObjectMap<>();
+    for (long key : keys) {
+      map.put(key, VALUE);
+    }
+    return map;
+  }
+
+  private static long usedHeapAfterGc() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + MemoryPerEntryBenchmark.class.getSimpleName() + ".*").build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,161 @@
+package statemachine;
+
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.Operation;
+import io.atomix.copycat.server.Commit;
+import io.atomix.copycat.server.session.ServerSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import serialization.MapSerialization;
+
+/**
+ * Measures the cost of {@link StateMachineMetrics} on the apply path: puts and gets of existing keys are applied directly to a
+ * {@code MapStateMachine} with a {@code HashMap} store, with and without metrics, through a commit that is reused like Copycat's pooled
+ * commits. All commands and queries are created up front, so nothing is allocated per operation unless the metrics allocate. Compare
+ * the average times of the two settings, and the normalized allocation rates of the GC profiler (as {@link #main(String[])} runs it).
+ * No cluster is needed to run this benchmark.
+ * <p>
+ * Most of the overhead is the two reads of the clock per operation. Reading the clock also keeps the processor from overlapping the
+ * cache misses of consecutive operations, so the overhead is larger for a map that does not fit into the cache. On a server, each
+ * operation also costs a log append, replication and a response, which take much longer than either.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+  @Param({ "1000", "100000" })
+  public int entries;
+
+  @Param({ "false", "true" })
+  public boolean metrics;
+
+  private final Random random = new Random();
+  private MapStateMachine<Long, String> stateMachine;
+  private PutCommand<Long, String>[] puts;
+  private GetQuery<String>[] gets;
+  private ReusedCommit<PutCommand<Long, String>> put;
+  private ReusedCommit<GetQuery<String>> get;
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void fill() {
+    Serializer serializer = new Serializer();
+    serializer.resolve(new MapSerialization());
+    StoreFactory<Long, String> store = StoreFactory.heap();
+    stateMachine = new MapStateMachine<>(store, false, metrics ? new StateMachineMetrics() : null);
+    stateMachine.map = store.create(entries, serializer); // instead of init(), which needs a Copycat executor
+    puts = new PutCommand[entries];
+    gets = new GetQuery[entries];
+    for (int i = 0; i < entries; i++) {
+      Long key = (long) i;
+      puts[i] = new PutCommand<>(key, "value" + i);
+      gets[i] = new GetQuery<>(key);
+      stateMachine.map.put(key, puts[i].value());
+    }
+    put = new ReusedCommit<>(puts[0]);
+    get = new ReusedCommit<>(gets[0]);
+  }
+
+  @Benchmark
+  public String put() {
+    put.operation = puts[random.nextInt(entries)];
+    put.index++;
+    return stateMachine.put(put);
+  }
+
+  @Benchmark
+  public String get() {
+    get.operation = gets[random.nextInt(entries)];
+    return stateMachine.get(get);
+  }
+
+  private static final class ReusedCommit<T extends Operation<?>> implements Commit<T> {
+
+    T operation;
+    long index;
+
+    ReusedCommit(T operation) {
+      this.operation = operation;
+    }
+
+    @Override
+    public long index() {
+      return index;
+    }
+
+    @Override
+    public ServerSession session() {
+      return null;
+    }
+
+    @Override
+    public Instant time() {
+      return Instant.EPOCH;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<T> type() {
+      return (Class<T>) operation.getClass();
+    }
+
+    @Override
+    public T operation() {
+      return operation;
+    }
+
+    @Override
+    public Commit<T> acquire() {
+      return this;
+    }
+
+    @Override
+    public boolean release() {
+      return false;
+    }
+
+    @Override
+    public int references() {
+      return 1;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + MetricsOverheadBenchmark.class.getSimpleName() + ".*")
+        .addProfiler(GCProfiler.class).build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,126 @@
+package statemachine;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import serialization.MapSerialization;
+import serialization.SnapshotFormat;
+import util.HashTrieMap;
+
+/**
+ * Measures the latency distribution of puts into a store while snapshots are taken, as on a server under compaction. Every
+ * {@value #SNAPSHOT_INTERVAL} puts, the benchmark takes a snapshot:
+ * <ul>
+ * <li>"heap": a {@code HashMap} can only be read consistently on the thread that changes it, so the snapshot is written inline and
+ * stalls the put that triggers it.
+ * <li>"persistent": a {@code HashTrieMap} hands an immutable view to a background thread in constant time, and the puts continue while
+ * the view is written. A snapshot is skipped while the previous one is still being written, as Copycat takes one at a time.
+ * </ul>
+ * Compare the high percentiles of the sample time. No cluster is needed to run this benchmark.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SnapshotStallBenchmark {
+
+  private static final int SNAPSHOT_INTERVAL = 100_000;
+
+  @Param({ "1000000" })
+  public int entries;
+
+  @Param({ "heap", "persistent" })
+  public String store;
+
+  private final Random random = new Random();
+  private final AtomicBoolean writing = new AtomicBoolean();
+  private Serializer serializer;
+  private Map<Long, String> map;
+  private Buffer buffer;
+  private ExecutorService snapshotter;
+  private int puts;
+
+  @Setup(Level.Trial)
+  public void fill() {
+    serializer = new Serializer();
+    serializer.resolve(new MapSerialization());
+    map = "heap".equals(store) ? StoreFactory.<Long, String> heap().create(entries, serializer) : new HashTrieMap<>();
+    for (long i = 0; i < entries; i++) {
+      map.put(i, "value" + i);
+    }
+    buffer = HeapBuffer.allocate(64 * 1024 * 1024);
+    snapshotter = Executors.newSingleThreadExecutor();
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    snapshotter.shutdownNow();
+  }
+
+  @Benchmark
+  public String put() {
+    long key = random.nextInt(entries);
+    String old = map.put(key, "value" + key);
+    if (++puts % SNAPSHOT_INTERVAL == 0) {
+      snapshot();
+    }
+    return old;
+  }
+
+  private void snapshot() {
+    if (map instanceof HashTrieMap) {
+      if (writing.compareAndSet(false, true)) {
+        HashTrieMap<Long, String> view = ((HashTrieMap<Long, String>) map).snapshot();
+        snapshotter.execute(() -> {
+          write(view);
+          writing.set(false);
+        });
+      }
+    }
+    else {
+      write(map);
+    }
+  }
+
+  private void write(Map<Long, String> entries) {
+    buffer.clear();
+    SnapshotFormat.writeEntries(entries, buffer, serializer);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + SnapshotStallBenchmark.class.getSimpleName() + ".*").build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,131 @@
+package statemachine;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import serialization.MapSerialization;
+import serialization.SnapshotFormat;
+
+/**
+ * Compares the stores of the {@code MapStateMachine}: the default {@code HashTrieMap} ("persistent"), a {@code HashMap} ("heap")
+ * and the {@link OffHeapStore} ("offheap"), filled with distinct string values.
+ * <ul>
+ * <li>{@code fullGc} is the duration of a full collection while the store is live, a stand-in for the GC pauses on a server.
+ * <li>{@code snapshot} is the time to write a snapshot in {@link SnapshotFormat} to a heap buffer.
+ * <li>{@code put} and {@code get} are the costs of single operations on random existing keys.
+ * </ul>
+ * The heap retained by the store and the off-heap bytes are printed once per trial. Run with the GC profiler (as
+ * {@link #main(String[])} does) to see GC counts and times for all benchmarks. No cluster is needed to run this benchmark.
+ *
+ * @author Initial author: Sebastian Millies
+ */
+@BenchmarkMode({ Mode.SingleShotTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class StoreBenchmark {
+
+  @Param({ "1000000" })
+  public int entries;
+
+  @Param({ "persistent", "heap", "offheap" })
+  public String store;
+
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  private final Random random = new Random();
+  private Serializer serializer;
+  private Map<Long, String> map;
+  private Buffer buffer;
+
+  @Setup(Level.Trial)
+  public void fill() {
+    serializer = new Serializer();
+    serializer.resolve(new MapSerialization());
+    StoreFactory<Long, String> factory = "offheap".equals(store) ? StoreFactory.offHeap(OffHeapStore.DEFAULT_SLAB_SIZE)
+        : "heap".equals(store) ? StoreFactory.heap() : StoreFactory.persistent();
+    long before = usedHeapAfterGc();
+    map = factory.create(entries, serializer);
+    for (long i = 0; i < entries; i++) {
+      map.put(i, "value" + i);
+    }
+    long heap = usedHeapAfterGc() - before;
+    long offHeap = map instanceof OffHeapStore ? ((OffHeapStore<?, ?>) map).offHeapBytes() : 0;
+    buffer = HeapBuffer.allocate(64 * 1024 * 1024);
+    System.out.println();
+    System.out.printf("%s store: %.1f heap bytes per entry, %.1f off-heap bytes per entry%n", store, heap / (double) entries,
+        offHeap / (double) entries);
+  }
+
+  @Benchmark
+  public void fullGc() {
+    System.gc();
+  }
+
+  @Benchmark
+  public Buffer snapshot() {
+    buffer.clear();
+    SnapshotFormat.writeEntries(map, buffer, serializer);
+    return buffer;
+  }
+
+  @Benchmark
+  @BenchmarkMode({ Mode.AverageTime })
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+  @Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+  public String put() {
+    long key = random.nextInt(entries);
+    return map.put(key, "value" + key);
+  }
+
+  @Benchmark
+  @BenchmarkMode({ Mode.AverageTime })
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+  @Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+  public String get() {
+    return map.get((long) random.nextInt(entries));
+  }
+
+  private static long usedHeapAfterGc() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Locale.setDefault(Locale.ENGLISH);
+    Options opt = new OptionsBuilder().include(".*" + StoreBenchmark.class.getSimpleName() + ".*").addProfiler(GCProfiler.class).build();
+
+    new Runner(opt).run();
+  }
+}
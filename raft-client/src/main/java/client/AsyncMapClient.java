@@ -0,0 +1,599 @@
+package client;
+
+import io.atomix.copycat.Command;
+import io.atomix.copycat.Operation;
+import io.atomix.copycat.Query.ConsistencyLevel;
+import io.atomix.copycat.client.CopycatClient;
+import client.RequestMetrics.Request;
+import java.time.Duration;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.LoggerFactory;
+import statemachine.BatchCommand;
+import statemachine.ClearCommand;
+import statemachine.CompareAndSetCommand;
+import statemachine.CompressedValue;
+import statemachine.ContainsKeyQuery;
+import statemachine.ContainsValueQuery;
+import statemachine.ExpiringPutCommand;
+import statemachine.GetQuery;
+import statemachine.MapStateMachine;
+import statemachine.MultiGetQuery;
+import statemachine.PutAllCommand;
+import statemachine.PutCommand;
+import statemachine.PutIfAbsentCommand;
+import statemachine.RemoveCommand;
+import statemachine.ReplaceCommand;
+import statemachine.ScanPage;
+import statemachine.ScanQuery;
+import statemachine.ScanQuery.Projection;
+import statemachine.SizeQuery;
+import statemachine.SnapshotQuery;
+import statemachine.Stats;
+import statemachine.StatsQuery;
+import statemachine.SubscribeCommand;
+
+/**
+ * An asynchronous map client that forwards all calls through a {@code CopycatClient} to a Copycat cluster. All operations return
+ * immediately with a {@code CompletableFuture}, so a single thread can keep many operations in flight.
+ * <p>
+ * The number of operations in flight is capped. When the cap is reached, the calling thread blocks until an earlier operation completes
+ * (backpressure). Copycat completes the responses of a session in the order in which the operations were submitted, so the futures of
+ * this client complete in submission order, too. With micro-batching enabled, that guarantee holds separately for puts and for gets.
+ * <p>
+ * The conditional operations ({@link #putIfAbsent(Object, Object)}, {@link #replace(Object, Object)},
+ * {@link #compareAndSet(Object, Object, Object)} and the removals) are applied atomically by the state machine, each in a single log entry.
+ * They are never micro-batched.
+ * <p>
+ * Do not submit operations from within a completion callback: callbacks run on the Copycat client thread, and if that thread blocks on
+ * the in-flight cap, no operation can complete any more.
+ * <p>
+ * An optional near cache serves repeated gets of unchanged keys from local memory. See {@link Builder#withNearCache(int)}.
+ * <p>
+ * Optional {@link RequestMetrics} time every request and can report slow ones. See {@link Builder#withMetrics()}.
+ * <p>
+ * Optional compression shrinks large string and byte array values before they are sent, so they stay compressed in the log and in the
+ * state machine. See {@link Builder#withCompression(int)}.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class AsyncMapClient<K, V> {
+
+	/** The default maximum number of entries that {@link #putAll(Map)} sends in a single log entry. */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/** The default maximum number of operations in flight. */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+	/** The default number of entries fetched by {@link #scan(long)}. */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	private final CopycatClient client;
+	private final int batchSize;
+	private final int pageSize;
+	private final int maxInFlight;
+	private final Semaphore inFlight;
+	private final ConsistencyLevel readConsistency;
+	private final MicroBatcher<K, V> batcher;
+	private final NearCache<K, V> cache;
+	private final RequestMetrics metrics; // null if there are no metrics
+	private final int compressionThreshold; // 0 if values are not compressed
+
+	public AsyncMapClient(CopycatClient client) {
+		this(new Builder<>(client));
+	}
+
+	private AsyncMapClient(Builder<K, V> builder) {
+		this.client = builder.client;
+		this.batchSize = builder.batchSize;
+		this.pageSize = builder.pageSize;
+		this.maxInFlight = builder.maxInFlight;
+		this.inFlight = new Semaphore(builder.maxInFlight);
+		this.readConsistency = builder.readConsistency;
+		this.batcher = builder.maxMicroBatchSize > 0 ? new MicroBatcher<>(client, builder.maxMicroBatchSize, readConsistency) : null;
+		this.cache = builder.nearCacheSize > 0 ? new NearCache<>(builder.nearCacheSize) : null;
+		this.compressionThreshold = builder.compressionThreshold;
+		this.metrics = builder.metrics ? new RequestMetrics(this::inFlight, builder.slowRequestNanos, builder.slowRequestListener,
+				client.serializer()) : null;
+		if (metrics != null) {
+			client.onStateChange(state -> {
+				if (state == CopycatClient.State.SUSPENDED) {
+					metrics.suspended();
+				}
+				else if (state == CopycatClient.State.CONNECTED) {
+					metrics.reconnected();
+				}
+			});
+		}
+		if (cache != null) {
+			client.<List<Object>> onEvent(MapStateMachine.INVALIDATE, cache::invalidate);
+			client.onEvent(MapStateMachine.INVALIDATE_ALL, cache::invalidateAll);
+			client.onStateChange(state -> {
+				if (state == CopycatClient.State.CONNECTED) {
+					subscribe();
+				}
+				else {
+					cache.setEnabled(false); // events may be missed until we are connected again
+				}
+			});
+			subscribe().join();
+		}
+	}
+
+	/*
+	 * The cache is only enabled once the state machine has registered the session for invalidations. A session that has been recovered
+	 * after expiry is a new session and must subscribe again.
+	 */
+	private CompletableFuture<Void> subscribe() {
+		return client.submit(new SubscribeCommand()).thenRun(() -> cache.setEnabled(true));
+	}
+
+	public static <K, V> Builder<K, V> builder(CopycatClient client) {
+		return new Builder<>(client);
+	}
+
+	public CompletableFuture<Integer> size() {
+		return size(readConsistency);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public CompletableFuture<Integer> size(ConsistencyLevel consistency) {
+		return submit(Request.SIZE, null, new SizeQuery(consistency));
+	}
+
+	public CompletableFuture<Boolean> isEmpty() {
+		return size().thenApply(size -> size == 0);
+	}
+
+	public CompletableFuture<Boolean> containsKey(Object key) {
+		return submit(Request.CONTAINS_KEY, key, new ContainsKeyQuery(key, readConsistency));
+	}
+
+	/**
+	 * Tells whether any key maps to the value. Unless the servers maintain a value index, this is a pass over the whole map on the server,
+	 * but only the answer is transferred. Byte arrays are compared by content.
+	 */
+	public CompletableFuture<Boolean> containsValue(Object value) {
+		return submit(Request.CONTAINS_VALUE, null, new ContainsValueQuery(compress(value), readConsistency));
+	}
+
+	/**
+	 * Gets a value. With a near cache enabled, the value is served from the cache if possible.
+	 */
+	public CompletableFuture<V> get(Object key) {
+		if (cache != null) {
+			V value = cache.get(key);
+			if (value != null) {
+				return CompletableFuture.completedFuture(value);
+			}
+			long epoch = cache.epoch();
+			return get(key, readConsistency).thenApply(loaded -> {
+				cache.put(key, loaded, epoch);
+				return loaded;
+			});
+		}
+		return get(key, readConsistency);
+	}
+
+	/**
+	 * Gets a value with a specific consistency level. With micro-batching enabled, only gets at the client's default read consistency
+	 * level are batched. This method never uses the near cache.
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<V> get(Object key, ConsistencyLevel consistency) {
+		if (batcher != null && consistency == readConsistency) {
+			return decompressed(throttle(Request.GET, key, null, () -> batcher.get((K) key)));
+		}
+		return decompressed(submit(Request.GET, key, new GetQuery<V>(key, consistency)));
+	}
+
+	public CompletableFuture<V> put(K key, V value) {
+		V compressed = compress(value);
+		if (batcher != null) {
+			return decompressed(throttle(Request.PUT, key, null, () -> batcher.put(key, compressed)));
+		}
+		return decompressed(submit(Request.PUT, key, new PutCommand<>(key, compressed)));
+	}
+
+	/**
+	 * Puts a value that expires after a time to live. The servers count it from the time that the leader has given the command, and
+	 * remove the entry with the first command after that time. The clock of the servers advances with the log, so gets stop returning
+	 * the entry after the next command or session keep-alive, and a near cache may serve it until a command has invalidated it. This
+	 * put is never micro-batched.
+	 * @param ttl the time to live, at least one millisecond
+	 * @return the previous value, or {@code null} if the key was absent
+	 */
+	public CompletableFuture<V> put(K key, V value, Duration ttl) {
+		return decompressed(submit(Request.PUT, key, new ExpiringPutCommand<>(key, compress(value), ttl.toMillis())));
+	}
+
+	/**
+	 * @return the previous value, or {@code null} if the key was absent
+	 */
+	public CompletableFuture<V> remove(Object key) {
+		return decompressed(submit(Request.REMOVE, key, new RemoveCommand<Object, V>(key)));
+	}
+
+	/**
+	 * @return the current value, or {@code null} if the key was absent and the value has been put
+	 */
+	public CompletableFuture<V> putIfAbsent(K key, V value) {
+		return decompressed(submit(Request.PUT_IF_ABSENT, key, new PutIfAbsentCommand<>(key, compress(value))));
+	}
+
+	/**
+	 * Puts the value only if the key is present.
+	 * @return the previous value, or {@code null} if the key was absent
+	 */
+	public CompletableFuture<V> replace(K key, V value) {
+		return decompressed(submit(Request.REPLACE, key, new ReplaceCommand<>(key, compress(value))));
+	}
+
+	/**
+	 * Sets the key to {@code update} only if its current value equals {@code expect}. Byte arrays are compared by content.
+	 * @param expect the expected value, or {@code null} if the key is expected to be absent
+	 * @param update the new value, or {@code null} to remove the key
+	 * @return whether the key has been set
+	 */
+	public CompletableFuture<Boolean> compareAndSet(K key, V expect, V update) {
+		return submit(Request.COMPARE_AND_SET, key, new CompareAndSetCommand<>(key, compress(expect), compress(update)));
+	}
+
+	/**
+	 * Splits the map into chunks of at most batchSize entries. Each chunk is one {@code PutAllCommand}, and therefore one log entry. The map
+	 * as a whole is not applied atomically, only each chunk.
+	 */
+	public CompletableFuture<Void> putAll(Map<? extends K, ? extends V> m) {
+		List<CompletableFuture<Void>> futures = new ArrayList<>(m.size() / batchSize + 1);
+		Map<K, V> chunk = new HashMap<>();
+		for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			chunk.put(entry.getKey(), compress(entry.getValue()));
+			if (chunk.size() == batchSize) {
+				futures.add(submit(Request.PUT_ALL, null, new PutAllCommand<>(chunk)));
+				chunk = new HashMap<>();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			futures.add(submit(Request.PUT_ALL, null, new PutAllCommand<>(chunk)));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+	}
+
+	public CompletableFuture<Void> clear() {
+		return submit(Request.CLEAR, null, new ClearCommand());
+	}
+
+	/**
+	 * Gets the values of several keys with a single query.
+	 * @return a map that contains the keys that are present, with their values
+	 */
+	public CompletableFuture<Map<K, V>> getAll(Collection<? extends K> keys) {
+		return getAll(keys, readConsistency);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 * @see #getAll(Collection)
+	 */
+	public CompletableFuture<Map<K, V>> getAll(Collection<? extends K> keys, ConsistencyLevel consistency) {
+		return decompressedValues(submit(Request.GET_ALL, null, new MultiGetQuery<K, V>(new ArrayList<>(keys), consistency)));
+	}
+
+	/**
+	 * Applies the commands atomically in a single log entry. The commands are sent as they are, so their values are not compressed,
+	 * and values in the results are not decompressed.
+	 * @return the results of the individual commands, in order
+	 */
+	public CompletableFuture<List<Object>> batch(List<Command<?>> commands) {
+		return submit(Request.BATCH, null, new BatchCommand(commands));
+	}
+
+	/**
+	 * Gets one page of entries. Start a scan with {@link ScanQuery#START} and continue it with {@link ScanPage#next()} until
+	 * {@link ScanPage#hasNext()} returns false. A scan can be resumed from any cursor at a later time.
+	 */
+	public CompletableFuture<ScanPage<K, V>> scan(long cursor) {
+		return scan(cursor, Projection.ENTRIES);
+	}
+
+	/**
+	 * Gets one page of keys or values. The entries of the page carry only the projected half, the other half is {@code null}.
+	 * @see #scan(long)
+	 */
+	public CompletableFuture<ScanPage<K, V>> scan(long cursor, Projection projection) {
+		CompletableFuture<ScanPage<K, V>> page = submit(Request.SCAN, null, new ScanQuery<K, V>(cursor, pageSize, projection,
+				readConsistency));
+		if (compressionThreshold == 0 || projection == Projection.KEYS) {
+			return page;
+		}
+		return page.thenApply(compressed -> {
+			List<Entry<K, V>> entries = new ArrayList<>(compressed.entries().size());
+			for (Entry<K, V> entry : compressed.entries()) {
+				entries.add(new SimpleImmutableEntry<>(entry.getKey(), decompress(entry.getValue())));
+			}
+			return new ScanPage<>(entries, compressed.next(), compressed.projection());
+		});
+	}
+
+	/**
+	 * Gets a consistent copy of the entire map in a single response. The whole map must fit into one message, so use {@link #scan(long)}
+	 * for large maps.
+	 */
+	public CompletableFuture<Map<K, V>> snapshot() {
+		return decompressedValues(submit(Request.SNAPSHOT, null, new SnapshotQuery<K, V>()));
+	}
+
+	/**
+	 * Gets the size, last applied index and, if the server records them, the metrics of the state machine on the server this client is
+	 * connected to.
+	 */
+	public CompletableFuture<Stats> stats() {
+		return submit(Request.STATS, null, new StatsQuery());
+	}
+
+	/**
+	 * @return the number of operations that have been submitted but not yet completed
+	 */
+	public int inFlight() {
+		return maxInFlight - inFlight.availablePermits();
+	}
+
+	/**
+	 * @return batch statistics of concurrent puts, or {@code null} if micro-batching is not enabled
+	 */
+	public BatchStatistics putBatchStatistics() {
+		return batcher != null ? batcher.putStatistics() : null;
+	}
+
+	/**
+	 * @return batch statistics of concurrent gets, or {@code null} if micro-batching is not enabled
+	 */
+	public BatchStatistics getBatchStatistics() {
+		return batcher != null ? batcher.getStatistics() : null;
+	}
+
+	/**
+	 * @return near cache counters, or {@code null} if the near cache is not enabled
+	 */
+	public NearCacheStatistics nearCacheStatistics() {
+		return cache != null ? cache.statistics() : null;
+	}
+
+	/**
+	 * @return the live request metrics, which may be registered with an MBean server, or {@code null} if metrics are not enabled
+	 */
+	public RequestMetrics requestMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return a snapshot of the request metrics, or {@code null} if metrics are not enabled
+	 */
+	public RequestStatistics requestStatistics() {
+		return metrics != null ? metrics.statistics() : null;
+	}
+
+	private <T> CompletableFuture<T> submit(Request request, Object key, Operation<T> operation) {
+		return throttle(request, key, operation, () -> client.submit(operation));
+	}
+
+	/*
+	 * Without metrics, a request does not read the clock.
+	 */
+	private <T> CompletableFuture<T> throttle(Request request, Object key, Operation<?> operation, Supplier<CompletableFuture<T>> submission) {
+		long start = metrics != null ? System.nanoTime() : 0;
+		try {
+			inFlight.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			CompletableFuture<T> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		long acquired = metrics != null ? System.nanoTime() : 0;
+		CompletableFuture<T> future;
+		try {
+			future = submission.get();
+		}
+		catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+		if (metrics == null) {
+			return future.whenComplete((_r, _e) -> inFlight.release());
+		}
+		long submitted = System.nanoTime();
+		metrics.submitted(start, acquired);
+		return future.whenComplete((_r, e) -> {
+			inFlight.release();
+			metrics.completed(request, key, operation, start, acquired, submitted, e);
+		});
+	}
+
+	// -------------------------------------------------------------------
+
+	@SuppressWarnings("unchecked")
+	private <T> T compress(T value) {
+		return compressionThreshold == 0 ? value : (T) CompressedValue.compress(value, compressionThreshold);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T decompress(T value) {
+		return (T) CompressedValue.decompress(value);
+	}
+
+	private CompletableFuture<V> decompressed(CompletableFuture<V> future) {
+		return compressionThreshold == 0 ? future : future.thenApply(this::decompress);
+	}
+
+	private CompletableFuture<Map<K, V>> decompressedValues(CompletableFuture<Map<K, V>> future) {
+		if (compressionThreshold == 0) {
+			return future;
+		}
+		return future.thenApply(compressed -> {
+			Map<K, V> map = new HashMap<>(compressed.size() * 4 / 3 + 1);
+			compressed.forEach((key, value) -> map.put(key, decompress(value)));
+			return map;
+		});
+	}
+
+	/**
+	 * Builds an {@code AsyncMapClient} with non-default options.
+	 */
+	public static class Builder<K, V> {
+
+		private final CopycatClient client;
+		private int batchSize = DEFAULT_BATCH_SIZE;
+		private int pageSize = DEFAULT_PAGE_SIZE;
+		private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+		private int maxMicroBatchSize;
+		private ConsistencyLevel readConsistency;
+		private int nearCacheSize;
+		private boolean metrics;
+		private long slowRequestNanos = Long.MAX_VALUE;
+		private Consumer<SlowRequest> slowRequestListener;
+		private int compressionThreshold;
+
+		private Builder(CopycatClient client) {
+			this.client = client;
+		}
+
+		/**
+		 * Sets the maximum number of entries that {@link AsyncMapClient#putAll(Map)} sends in a single log entry.
+		 */
+		public Builder<K, V> withBatchSize(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("batchSize must be positive");
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Sets the number of entries that {@link AsyncMapClient#scan(long)} fetches at a time.
+		 */
+		public Builder<K, V> withPageSize(int pageSize) {
+			if (pageSize < 1) {
+				throw new IllegalArgumentException("pageSize must be positive");
+			}
+			this.pageSize = pageSize;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of operations in flight. Callers block when the limit is reached.
+		 */
+		public Builder<K, V> withMaxInFlight(int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("maxInFlight must be positive");
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * Enables micro-batching: puts and gets that are submitted concurrently are combined into a single command or query of at most
+		 * {@code maxBatchSize} operations. A lone caller sees no added latency.
+		 */
+		public Builder<K, V> withMicroBatching(int maxBatchSize) {
+			if (maxBatchSize < 1) {
+				throw new IllegalArgumentException("maxBatchSize must be positive");
+			}
+			this.maxMicroBatchSize = maxBatchSize;
+			return this;
+		}
+
+		/**
+		 * Sets the default consistency level of reads (gets and size). Reads at {@code SEQUENTIAL} consistency may be served by followers
+		 * without a round trip to the leader. The default is {@code null}, which stands for the Copycat default (linearizable).
+		 */
+		public Builder<K, V> withReadConsistency(ConsistencyLevel readConsistency) {
+			this.readConsistency = readConsistency;
+			return this;
+		}
+
+		/**
+		 * Enables a client-side cache of at most {@code maxEntries} values, with least-recently-used eviction. The cluster pushes an
+		 * invalidation to this client whenever an entry changes, so cached values are dropped as soon as the client learns of a change.
+		 * Reads from the cache are not linearizable: another client may already have written a newer value whose invalidation is still
+		 * on its way.
+		 */
+		public Builder<K, V> withNearCache(int maxEntries) {
+			if (maxEntries < 1) {
+				throw new IllegalArgumentException("maxEntries must be positive");
+			}
+			this.nearCacheSize = maxEntries;
+			return this;
+		}
+
+		/**
+		 * Enables {@link RequestMetrics}: latency histograms per request type, the in-flight gauge and counters of failures, timeouts and
+		 * session suspensions. Without metrics, requests do not read the clock.
+		 */
+		public Builder<K, V> withMetrics() {
+			this.metrics = true;
+			return this;
+		}
+
+		/**
+		 * Enables metrics, and logs every request that takes at least {@code threshold} as a warning, with the parts of its latency.
+		 * @see SlowRequest
+		 */
+		public Builder<K, V> withSlowRequestTracing(Duration threshold) {
+			return withSlowRequestTracing(threshold, slow -> LoggerFactory.getLogger(AsyncMapClient.class).warn("{}", slow));
+		}
+
+		/**
+		 * Enables metrics, and passes every request that takes at least {@code threshold} to the listener. The listener is called on the
+		 * thread that completes the request, usually the Copycat client thread, so it must not block.
+		 */
+		public Builder<K, V> withSlowRequestTracing(Duration threshold, Consumer<SlowRequest> listener) {
+			if (threshold.isNegative() || threshold.isZero()) {
+				throw new IllegalArgumentException("threshold must be positive");
+			}
+			this.metrics = true;
+			this.slowRequestNanos = threshold.toNanos();
+			this.slowRequestListener = listener;
+			return this;
+		}
+
+		/**
+		 * Compresses string and byte array values of at least {@code thresholdBytes} bytes (strings in UTF-8) with {@link util.Lzf},
+		 * unless that does not make them smaller. The values are sent and stored as {@link CompressedValue}s and are decompressed when
+		 * they are read. Conditional operations and {@code containsValue} compare compressed values, so all clients of a map must use
+		 * the same threshold. Values in {@link AsyncMapClient#batch(List)} are not compressed.
+		 */
+		public Builder<K, V> withCompression(int thresholdBytes) {
+			if (thresholdBytes < 1) {
+				throw new IllegalArgumentException("thresholdBytes must be positive");
+			}
+			this.compressionThreshold = thresholdBytes;
+			return this;
+		}
+
+		public AsyncMapClient<K, V> build() {
+			return new AsyncMapClient<>(this);
+		}
+
+		/**
+		 * Builds a blocking {@code ConcurrentMap} view on top of the asynchronous client.
+		 */
+		public ConcurrentMapClient<K, V> buildBlocking() {
+			return new ConcurrentMapClient<>(build());
+		}
+	}
+}
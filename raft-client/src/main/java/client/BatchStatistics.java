@@ -0,0 +1,53 @@
+package client;
+
+/**
+ * An immutable snapshot of the batch sizes and wait times of a {@link MicroBatcher} lane. Wait time is measured from the moment an
+ * operation is enqueued until the batch that contains it is submitted.
+ * @author Initial author: Sebastian Millies
+ */
+public final class BatchStatistics {
+
+	private final long batches;
+	private final long operations;
+	private final int maxBatchSize;
+	private final long totalWaitNanos;
+	private final long maxWaitNanos;
+
+	BatchStatistics(long batches, long operations, int maxBatchSize, long totalWaitNanos, long maxWaitNanos) {
+		this.batches = batches;
+		this.operations = operations;
+		this.maxBatchSize = maxBatchSize;
+		this.totalWaitNanos = totalWaitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+	}
+
+	public long batches() {
+		return batches;
+	}
+
+	public long operations() {
+		return operations;
+	}
+
+	public double meanBatchSize() {
+		return batches == 0 ? 0 : (double) operations / batches;
+	}
+
+	public int maxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public double meanWaitMicros() {
+		return operations == 0 ? 0 : totalWaitNanos / 1000.0 / operations;
+	}
+
+	public double maxWaitMicros() {
+		return maxWaitNanos / 1000.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("batches=%d, operations=%d, mean batch size=%.1f, max batch size=%d, mean wait=%.1fus, max wait=%.1fus",
+				batches, operations, meanBatchSize(), maxBatchSize, meanWaitMicros(), maxWaitMicros());
+	}
+}
@@ -1,33 +1,51 @@
 package client;
 
+import io.atomix.copycat.Command;
+import io.atomix.copycat.Query.ConsistencyLevel;
 import io.atomix.copycat.client.CopycatClient;
+import java.time.Duration;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
-import statemachine.SnapshotQuery;
-import statemachine.ClearCommand;
-import statemachine.GetQuery;
-import statemachine.PutCommand;
-import statemachine.SizeQuery;
+import statemachine.ScanQuery.Projection;
+import statemachine.Stats;
 
 /**
  * A {@code ConcurrentMap} that forwards all calls through a {@code CopycatClient} to a Copycat cluster. This class represents only the
  * remote side; the actual map operations are implemented on the server side.
  * <p>
- * All methods are blocking.
+ * All methods are blocking. This class is a thin wrapper around an {@link AsyncMapClient}, which is available through {@link #async()}.
+ * <p>
+ * The collection views are backed by the remote map. Their iterators fetch entries page by page on demand and do not support removal.
+ * The key set and the values fetch only keys or only values. Membership tests are answered on the server.
  * @param <K> map key type
  * @param <V> map value type
  * @author Initial author: Sebastian Millies
  */
 public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 
-	private final CopycatClient client;
+	private final AsyncMapClient<K, V> async;
 
 	public ConcurrentMapClient(CopycatClient client) {
-		this.client = client;
+		this(new AsyncMapClient<>(client));
+	}
+
+	public ConcurrentMapClient(AsyncMapClient<K, V> async) {
+		this.async = async;
+	}
+
+	/**
+	 * @return the asynchronous client to which this map delegates
+	 */
+	public AsyncMapClient<K, V> async() {
+		return async;
 	}
 
 	/*
@@ -35,8 +53,14 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public int size() throws CompletionException {
-		CompletableFuture<Integer> future = client.submit(new SizeQuery());
-		return future.join();
+		return async.size().join();
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public int size(ConsistencyLevel consistency) {
+		return async.size(consistency).join();
 	}
 
 	/*
@@ -52,7 +76,7 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public boolean containsKey(Object key) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return async.containsKey(key).join();
 	}
 
 	/*
@@ -60,7 +84,7 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public boolean containsValue(Object value) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return async.containsValue(value).join();
 	}
 
 	/*
@@ -68,8 +92,14 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public V get(Object key) {
-		CompletableFuture<V> future = client.submit(new GetQuery<V>(key));
-		return future.join();
+		return async.get(key).join();
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public V get(Object key, ConsistencyLevel consistency) {
+		return async.get(key, consistency).join();
 	}
 
 	/*
@@ -77,8 +107,14 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public V put(K key, V value) {
-		CompletableFuture<V> future = client.submit(new PutCommand<>(key, value));
-		return future.join();
+		return async.put(key, value).join();
+	}
+
+	/**
+	 * @see AsyncMapClient#put(Object, Object, Duration)
+	 */
+	public V put(K key, V value, Duration ttl) {
+		return async.put(key, value, ttl).join();
 	}
 
 	/*
@@ -86,15 +122,17 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public V remove(Object key) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return async.remove(key).join();
 	}
 
 	/*
+	 * All chunks are submitted before waiting for the first result.
 	 * @see java.util.Map#putAll(java.util.Map)
+	 * @see AsyncMapClient#putAll(java.util.Map)
 	 */
 	@Override
 	public void putAll(Map<? extends K, ? extends V> m) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		async.putAll(m).join();
 	}
 
 	/*
@@ -102,8 +140,7 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public void clear() {
-		CompletableFuture<Void> future = client.submit(new ClearCommand());
-		future.join();
+		async.clear().join();
 	}
 
 	/*
@@ -111,7 +148,22 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public Set<K> keySet() {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return new ScanIterator<>(async, Projection.KEYS, Entry::getKey);
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentMapClient.this.size();
+			}
+		};
 	}
 
 	/*
@@ -119,7 +171,22 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public Collection<V> values() {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new ScanIterator<>(async, Projection.VALUES, Entry::getValue);
+			}
+
+			@Override
+			public boolean contains(Object value) {
+				return containsValue(value);
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentMapClient.this.size();
+			}
+		};
 	}
 
 	/*
@@ -127,9 +194,88 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public Set<Entry<K, V>> entrySet() {
-		// get a serialized snapshot of the entire map, because HashMap.EntrySet itself is not serializable
-		CompletableFuture<Set<Entry<K, V>>> future = client.submit(new SnapshotQuery<K, V>()).thenApply(Map::entrySet);
-		return future.join();
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return new ScanIterator<>(async, Projection.ENTRIES, entry -> entry);
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Entry)) {
+					return false;
+				}
+				Entry<?, ?> entry = (Entry<?, ?>) o;
+				V value = get(entry.getKey());
+				return value != null && value.equals(entry.getValue());
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentMapClient.this.size();
+			}
+		};
+	}
+
+	// -------------------------------------------------------------------
+
+	/**
+	 * Gets the values of several keys with a single query.
+	 * @return a map that contains the keys that are present, with their values
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		return async.getAll(keys).join();
+	}
+
+	/**
+	 * Applies the commands atomically in a single log entry.
+	 * @return the results of the individual commands, in order
+	 */
+	public List<Object> batch(List<Command<?>> commands) {
+		return async.batch(commands).join();
+	}
+
+	/**
+	 * Gets the size, last applied index and, if the server records them, the metrics of the state machine on the server this client is
+	 * connected to.
+	 */
+	public Stats stats() {
+		return async.stats().join();
+	}
+
+	/**
+	 * @return batch statistics of concurrent puts, or {@code null} if micro-batching is not enabled
+	 */
+	public BatchStatistics putBatchStatistics() {
+		return async.putBatchStatistics();
+	}
+
+	/**
+	 * @return batch statistics of concurrent gets, or {@code null} if micro-batching is not enabled
+	 */
+	public BatchStatistics getBatchStatistics() {
+		return async.getBatchStatistics();
+	}
+
+	/**
+	 * @return near cache counters, or {@code null} if the near cache is not enabled
+	 */
+	public NearCacheStatistics nearCacheStatistics() {
+		return async.nearCacheStatistics();
+	}
+
+	/**
+	 * @return the live request metrics, which may be registered with an MBean server, or {@code null} if metrics are not enabled
+	 */
+	public RequestMetrics requestMetrics() {
+		return async.requestMetrics();
+	}
+
+	/**
+	 * @return a snapshot of the request metrics, or {@code null} if metrics are not enabled
+	 */
+	public RequestStatistics requestStatistics() {
+		return async.requestStatistics();
 	}
 
 	// -------------------------------------------------------------------
@@ -139,15 +285,16 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public V putIfAbsent(K key, V value) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return async.putIfAbsent(key, Objects.requireNonNull(value)).join();
 	}
 
 	/*
 	 * @see java.util.concurrent.ConcurrentMap#remove(java.lang.Object, java.lang.Object)
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public boolean remove(Object key, Object value) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return value != null && async.compareAndSet((K) key, (V) value, null).join();
 	}
 
 	/*
@@ -155,7 +302,7 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public boolean replace(K key, V oldValue, V newValue) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return async.compareAndSet(key, Objects.requireNonNull(oldValue), Objects.requireNonNull(newValue)).join();
 	}
 
 	/*
@@ -163,7 +310,7 @@ public class ConcurrentMapClient<K, V> implements ConcurrentMap<K, V> {
 	 */
 	@Override
 	public V replace(K key, V value) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		return async.replace(key, Objects.requireNonNull(value)).join();
 	}
 
 }
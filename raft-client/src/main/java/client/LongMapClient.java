@@ -0,0 +1,92 @@
+package client;
+
+import io.atomix.copycat.Query.ConsistencyLevel;
+import io.atomix.copycat.client.CopycatClient;
+import java.util.concurrent.CompletableFuture;
+import statemachine.ClearCommand;
+import statemachine.LongGetQuery;
+import statemachine.LongPutCommand;
+import statemachine.SizeQuery;
+
+/**
+ * A map client for primitive long keys, which forwards all calls through a {@code CopycatClient} to a Copycat cluster that runs a
+ * {@code LongMapStateMachine} (start the servers with {@code --long-keys}). Keys are never boxed, neither here nor in the commands nor on
+ * the server.
+ * <p>
+ * The blocking methods wait for the result. The asynchronous variants return immediately; Copycat completes them in submission order.
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class LongMapClient<V> {
+
+	private final CopycatClient client;
+	private final ConsistencyLevel readConsistency;
+
+	public LongMapClient(CopycatClient client) {
+		this(client, null);
+	}
+
+	/**
+	 * @param readConsistency the default consistency level of reads, or {@code null} for the Copycat default (linearizable)
+	 */
+	public LongMapClient(CopycatClient client, ConsistencyLevel readConsistency) {
+		this.client = client;
+		this.readConsistency = readConsistency;
+	}
+
+	/**
+	 * @return the previous value, or {@code null}
+	 */
+	public V put(long key, V value) {
+		return putAsync(key, value).join();
+	}
+
+	public CompletableFuture<V> putAsync(long key, V value) {
+		return client.submit(new LongPutCommand<>(key, value));
+	}
+
+	public V get(long key) {
+		return getAsync(key, readConsistency).join();
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public V get(long key, ConsistencyLevel consistency) {
+		return getAsync(key, consistency).join();
+	}
+
+	public CompletableFuture<V> getAsync(long key) {
+		return getAsync(key, readConsistency);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public CompletableFuture<V> getAsync(long key, ConsistencyLevel consistency) {
+		return client.submit(new LongGetQuery<V>(key, consistency));
+	}
+
+	/**
+	 * @return the previous value, or {@code null}
+	 */
+	public V remove(long key) {
+		return removeAsync(key).join();
+	}
+
+	public CompletableFuture<V> removeAsync(long key) {
+		return client.submit(new LongPutCommand<V>(key, null)); // the state machine removes the key of a null value
+	}
+
+	public int size() {
+		return client.submit(new SizeQuery(readConsistency)).join();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		client.submit(new ClearCommand()).join();
+	}
+}
@@ -0,0 +1,199 @@
+package client;
+
+import io.atomix.copycat.Command;
+import io.atomix.copycat.Query.ConsistencyLevel;
+import io.atomix.copycat.client.CopycatClient;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import statemachine.BatchCommand;
+import statemachine.GetQuery;
+import statemachine.MultiGetQuery;
+import statemachine.PutCommand;
+
+/**
+ * Collects puts and gets that are submitted concurrently and sends them to the cluster as one {@code BatchCommand} (for puts) or
+ * one {@code MultiGetQuery} (for gets). The results are fanned back out to the individual callers.
+ * <p>
+ * Puts and gets each have their own lane. A lane has at most one batch in flight. An operation that arrives at an idle lane is sent
+ * immediately and on its own, so a lone caller sees no added latency. Operations that arrive while a batch is in flight are queued
+ * and sent together as soon as that batch completes. The batching window therefore adapts to the load: it is one round trip long
+ * when the lane is busy, and zero when it is idle.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+class MicroBatcher<K, V> {
+
+	private final CopycatClient client;
+	private final int maxBatchSize;
+	private final ConsistencyLevel readConsistency;
+	private final Lane<PutCommand<K, V>> puts = new Lane<>(this::sendPuts);
+	private final Lane<K> gets = new Lane<>(this::sendGets);
+
+	MicroBatcher(CopycatClient client, int maxBatchSize, ConsistencyLevel readConsistency) {
+		this.client = client;
+		this.maxBatchSize = maxBatchSize;
+		this.readConsistency = readConsistency;
+	}
+
+	CompletableFuture<V> put(K key, V value) {
+		return puts.enqueue(new PutCommand<>(key, value));
+	}
+
+	CompletableFuture<V> get(K key) {
+		return gets.enqueue(key);
+	}
+
+	BatchStatistics putStatistics() {
+		return puts.statistics();
+	}
+
+	BatchStatistics getStatistics() {
+		return gets.statistics();
+	}
+
+	private CompletableFuture<Void> sendPuts(List<Pending<PutCommand<K, V>>> batch) {
+		if (batch.size() == 1) {
+			Pending<PutCommand<K, V>> single = batch.get(0);
+			return client.submit(single.operation).handle((result, error) -> single.complete(result, error));
+		}
+		List<Command<?>> commands = new ArrayList<>(batch.size());
+		for (Pending<PutCommand<K, V>> pending : batch) {
+			commands.add(pending.operation);
+		}
+		return client.submit(new BatchCommand(commands)).handle((results, error) -> {
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).complete(error == null ? results.get(i) : null, error);
+			}
+			return null;
+		});
+	}
+
+	private CompletableFuture<Void> sendGets(List<Pending<K>> batch) {
+		if (batch.size() == 1) {
+			Pending<K> single = batch.get(0);
+			return client.submit(new GetQuery<V>(single.operation, readConsistency)).handle((result, error) -> single.complete(result, error));
+		}
+		List<K> keys = new ArrayList<>(batch.size());
+		for (Pending<K> pending : batch) {
+			keys.add(pending.operation);
+		}
+		return client.submit(new MultiGetQuery<K, V>(keys, readConsistency)).handle((results, error) -> {
+			for (Pending<K> pending : batch) {
+				pending.complete(error == null ? results.get(pending.operation) : null, error);
+			}
+			return null;
+		});
+	}
+
+	private interface Sender<T> {
+		CompletableFuture<Void> send(List<Pending<T>> batch);
+	}
+
+	private static class Pending<T> {
+		final T operation;
+		final long enqueued = System.nanoTime();
+		final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		Pending(T operation) {
+			this.operation = operation;
+		}
+
+		Void complete(Object result, Throwable error) {
+			if (error != null) {
+				future.completeExceptionally(error);
+			}
+			else {
+				future.complete(result);
+			}
+			return null;
+		}
+	}
+
+	private class Lane<T> {
+		private final Sender<T> sender;
+		private final Queue<Pending<T>> queue = new ArrayDeque<>();
+		private boolean inFlight;
+
+		// statistics, guarded by this
+		private long batches;
+		private long operations;
+		private int maxSize;
+		private long totalWait;
+		private long maxWait;
+
+		Lane(Sender<T> sender) {
+			this.sender = sender;
+		}
+
+		@SuppressWarnings("unchecked")
+		<R> CompletableFuture<R> enqueue(T operation) {
+			Pending<T> pending = new Pending<>(operation);
+			List<Pending<T>> batch;
+			synchronized (this) {
+				queue.add(pending);
+				batch = inFlight ? null : drain();
+			}
+			if (batch != null) {
+				send(batch);
+			}
+			return (CompletableFuture<R>) pending.future;
+		}
+
+		/*
+		 * Sends batches until the queue is empty or a batch is still in flight. A send that completes at once, for example because it
+		 * failed, is followed by the next batch in this loop rather than from its callback, which would run on this stack and recurse
+		 * once per batch.
+		 */
+		private void send(List<Pending<T>> batch) {
+			while (batch != null) {
+				CompletableFuture<Void> sent;
+				try {
+					sent = sender.send(batch);
+				}
+				catch (RuntimeException e) {
+					batch.forEach(pending -> pending.complete(null, e));
+					sent = CompletableFuture.completedFuture(null);
+				}
+				if (!sent.isDone()) {
+					sent.whenComplete((_v, _e) -> send(next()));
+					return;
+				}
+				batch = next();
+			}
+		}
+
+		private synchronized List<Pending<T>> next() {
+			List<Pending<T>> next = queue.isEmpty() ? null : drain();
+			inFlight = next != null;
+			return next;
+		}
+
+		// must hold lock
+		private List<Pending<T>> drain() {
+			long now = System.nanoTime();
+			int size = Math.min(queue.size(), maxBatchSize);
+			List<Pending<T>> batch = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				Pending<T> pending = queue.poll();
+				long wait = now - pending.enqueued;
+				totalWait += wait;
+				maxWait = Math.max(maxWait, wait);
+				batch.add(pending);
+			}
+			batches++;
+			operations += size;
+			maxSize = Math.max(maxSize, size);
+			inFlight = true;
+			return batch;
+		}
+
+		synchronized BatchStatistics statistics() {
+			return new BatchStatistics(batches, operations, maxSize, totalWait, maxWait);
+		}
+	}
+}
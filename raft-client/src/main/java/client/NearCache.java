@@ -0,0 +1,104 @@
+package client;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded client-side cache of map entries with least-recently-used eviction. The cache is kept correct by invalidation events that
+ * the state machine publishes to the client session whenever entries change.
+ * <p>
+ * A value loaded from the cluster may already be stale when it arrives, if an invalidation of the same key was processed while the
+ * query was in flight. Each invalidation therefore advances an epoch, and a loaded value is only cached if the epoch has not changed since
+ * the query was submitted. While the cache is disabled (before the subscription is confirmed, and while the session is not connected)
+ * nothing is cached and every lookup misses.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+class NearCache<K, V> {
+
+	private final int maxEntries;
+	private final Map<Object, V> entries;
+	private long epoch;
+	private boolean enabled;
+	private long hits;
+	private long misses;
+	private long invalidations;
+	private long evictions;
+
+	NearCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Object, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, V> eldest) {
+				if (size() > NearCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached value, or {@code null} on a miss
+	 */
+	synchronized V get(Object key) {
+		V value = enabled ? entries.get(key) : null;
+		if (value != null) {
+			hits++;
+		}
+		else {
+			misses++;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the epoch to pass to {@link #put(Object, Object, long)} when the value loaded by the current miss arrives
+	 */
+	synchronized long epoch() {
+		return epoch;
+	}
+
+	/**
+	 * Caches a value loaded from the cluster, unless an invalidation has happened since {@code loadEpoch}. Null values are not cached.
+	 */
+	synchronized void put(Object key, V value, long loadEpoch) {
+		if (enabled && value != null && loadEpoch == epoch) {
+			entries.put(key, value);
+		}
+	}
+
+	synchronized void invalidate(Collection<?> keys) {
+		epoch++;
+		for (Object key : keys) {
+			if (entries.remove(key) != null) {
+				invalidations++;
+			}
+		}
+	}
+
+	synchronized void invalidateAll() {
+		epoch++;
+		invalidations += entries.size();
+		entries.clear();
+	}
+
+	/**
+	 * Enables or disables caching. Disabling drops all entries, because invalidations may be missed while the cache is disabled.
+	 */
+	synchronized void setEnabled(boolean enabled) {
+		if (!enabled) {
+			invalidateAll();
+		}
+		this.enabled = enabled;
+	}
+
+	synchronized NearCacheStatistics statistics() {
+		return new NearCacheStatistics(entries.size(), hits, misses, invalidations, evictions);
+	}
+}
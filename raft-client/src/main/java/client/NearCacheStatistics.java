@@ -0,0 +1,54 @@
+package client;
+
+/**
+ * An immutable snapshot of the counters of a near cache. Invalidations count the cached entries that were dropped because of a change
+ * on the server side.
+ * @author Initial author: Sebastian Millies
+ */
+public final class NearCacheStatistics {
+
+	private final int size;
+	private final long hits;
+	private final long misses;
+	private final long invalidations;
+	private final long evictions;
+
+	NearCacheStatistics(int size, long hits, long misses, long invalidations, long evictions) {
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.invalidations = invalidations;
+		this.evictions = evictions;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long hits() {
+		return hits;
+	}
+
+	public long misses() {
+		return misses;
+	}
+
+	public long invalidations() {
+		return invalidations;
+	}
+
+	public long evictions() {
+		return evictions;
+	}
+
+	public double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size=%d, hits=%d, misses=%d, hit rate=%.3f, invalidations=%d, evictions=%d",
+				size, hits, misses, hitRate(), invalidations, evictions);
+	}
+}
@@ -0,0 +1,271 @@
+package client;
+
+import java.time.Duration;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import util.Partitions;
+
+/**
+ * A {@code ConcurrentMap} over a partitioned cluster (see {@code StartServer --partitions}). Every partition is a separate Copycat group
+ * with its own leader, reached through its own {@link ConcurrentMapClient}. Each key is routed to its partition by
+ * {@link Partitions#partition(Object, int)}, so single-key operations, including the conditional ones, are as atomic as on an
+ * unpartitioned map.
+ * <p>
+ * Multi-key operations are scattered to all partitions concerned, which work on them in parallel, and the results are gathered. They are
+ * atomic only per partition: {@link #putAll(Map)} may be partly applied when it fails, {@link #clear()} and {@link #size()} are not
+ * atomic across partitions, and the collection views visit one partition after the other.
+ * <p>
+ * Keys are routed by their hash code, so null keys are not supported: operations on them throw a {@code NullPointerException}.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class PartitionedMapClient<K, V> implements ConcurrentMap<K, V> {
+
+	private final List<ConcurrentMapClient<K, V>> partitions;
+
+	/**
+	 * @param partitions one client per partition, in the order of the partition numbers. Each client must be connected to the members of
+	 *        its partition, see {@link Partitions#addresses(Collection, int)}.
+	 */
+	public PartitionedMapClient(List<ConcurrentMapClient<K, V>> partitions) {
+		if (partitions.isEmpty()) {
+			throw new IllegalArgumentException("partitions must not be empty");
+		}
+		this.partitions = new ArrayList<>(partitions);
+	}
+
+	/**
+	 * @return the number of partitions
+	 */
+	public int partitionCount() {
+		return partitions.size();
+	}
+
+	/**
+	 * @return the client of the partition that holds a key
+	 * @throws NullPointerException if the key is null
+	 */
+	public ConcurrentMapClient<K, V> partitionOf(Object key) {
+		return partitions.get(partition(key));
+	}
+
+	private int partition(Object key) {
+		return Partitions.partition(Objects.requireNonNull(key, "a partitioned map does not support null keys"), partitions.size());
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Integer partitionSize : gather(partition -> partition.async().size())) {
+			size += partitionSize;
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return partitionOf(key).containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return gather(partition -> partition.async().containsValue(value)).contains(true);
+	}
+
+	@Override
+	public V get(Object key) {
+		return partitionOf(key).get(key);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return partitionOf(key).put(key, value);
+	}
+
+	/**
+	 * @see AsyncMapClient#put(Object, Object, Duration)
+	 */
+	public V put(K key, V value, Duration ttl) {
+		return partitionOf(key).put(key, value, ttl);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return partitionOf(key).remove(key);
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		Map<Integer, Map<K, V>> split = new HashMap<>();
+		for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			split.computeIfAbsent(partition(entry.getKey()), _p -> new HashMap<>())
+					.put(entry.getKey(), entry.getValue());
+		}
+		List<CompletableFuture<Void>> futures = new ArrayList<>(split.size());
+		for (Entry<Integer, Map<K, V>> entry : split.entrySet()) {
+			futures.add(partitions.get(entry.getKey()).async().putAll(entry.getValue()));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+	}
+
+	@Override
+	public void clear() {
+		gather(partition -> partition.async().clear());
+	}
+
+	/**
+	 * Gets the values of several keys with one query per partition concerned.
+	 * @return a map that contains the keys that are present, with their values
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		Map<Integer, List<K>> split = new HashMap<>();
+		for (K key : keys) {
+			split.computeIfAbsent(partition(key), _p -> new ArrayList<>()).add(key);
+		}
+		List<CompletableFuture<Map<K, V>>> futures = new ArrayList<>(split.size());
+		for (Entry<Integer, List<K>> entry : split.entrySet()) {
+			futures.add(partitions.get(entry.getKey()).async().getAll(entry.getValue()));
+		}
+		Map<K, V> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+		for (CompletableFuture<Map<K, V>> future : futures) {
+			result.putAll(future.join());
+		}
+		return result;
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return partitionOf(key).putIfAbsent(key, value);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		return partitionOf(key).remove(key, value);
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		return partitionOf(key).replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		return partitionOf(key).replace(key, value);
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return concat(ConcurrentMapClient::keySet);
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public int size() {
+				return PartitionedMapClient.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return concat(ConcurrentMapClient::values);
+			}
+
+			@Override
+			public boolean contains(Object value) {
+				return containsValue(value);
+			}
+
+			@Override
+			public int size() {
+				return PartitionedMapClient.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return concat(ConcurrentMapClient::entrySet);
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof Entry && partitionOf(((Entry<?, ?>) o).getKey()).entrySet().contains(o);
+			}
+
+			@Override
+			public int size() {
+				return PartitionedMapClient.this.size();
+			}
+		};
+	}
+
+	// submits the operation to all partitions before waiting for the first result
+	private <T> List<T> gather(Function<ConcurrentMapClient<K, V>, CompletableFuture<T>> operation) {
+		List<CompletableFuture<T>> futures = new ArrayList<>(partitions.size());
+		for (ConcurrentMapClient<K, V> partition : partitions) {
+			futures.add(operation.apply(partition));
+		}
+		List<T> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<T> future : futures) {
+			results.add(future.join());
+		}
+		return results;
+	}
+
+	// a partition's scan is only started when the iteration reaches it
+	private <T> Iterator<T> concat(Function<ConcurrentMapClient<K, V>, Collection<T>> view) {
+		Iterator<ConcurrentMapClient<K, V>> remaining = partitions.iterator();
+		return new Iterator<T>() {
+			private Iterator<T> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && remaining.hasNext()) {
+					current = view.apply(remaining.next()).iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+	}
+}
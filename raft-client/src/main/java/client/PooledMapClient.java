@@ -0,0 +1,312 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.client.CopycatClient;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import util.Partitions;
+
+/**
+ * A {@code ConcurrentMap} that spreads its calls over several Copycat sessions to the same cluster. A session applies its operations
+ * strictly in submission order, so many threads that share one session wait for each other. With a pool, they mostly do not.
+ * <p>
+ * Every key is pinned to one session by a stable hash, so the operations on a key are still applied in the order in which they were
+ * submitted. Operations without a key ({@link #size()}, {@link #clear()}, {@link #containsValue(Object)} and the collection views) go to
+ * the connected session with the fewest operations in flight. Operations on different keys, and operations without a key, may therefore
+ * overtake each other; a {@code clear()}, for example, is not ordered after puts that are still in flight on other sessions.
+ * <p>
+ * When a session is closed, for example because it has expired during a partition, it is replaced by a new one in the background. Only
+ * the callers whose keys are pinned to that session wait for the replacement. If the replacement cannot connect, the next call to that
+ * session tries again.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class PooledMapClient<K, V> implements ConcurrentMap<K, V> {
+
+	private final Supplier<CopycatClient> clients;
+	private final Collection<Address> cluster;
+	private final Function<CopycatClient, ConcurrentMapClient<K, V>> wrapper;
+	private final AtomicReferenceArray<CompletableFuture<Session<K, V>>> sessions;
+	private volatile boolean closed;
+
+	/**
+	 * Connects all sessions and waits until they are connected.
+	 * @param size the number of sessions
+	 * @param clients creates an unconnected {@code CopycatClient} for each session, with the map serializers registered
+	 * @param cluster the addresses to which the sessions connect
+	 * @throws java.util.concurrent.CompletionException if a session cannot connect, after the sessions that have connected are closed
+	 */
+	public PooledMapClient(int size, Supplier<CopycatClient> clients, Collection<Address> cluster) {
+		this(size, clients, cluster, ConcurrentMapClient::new);
+	}
+
+	/**
+	 * @param wrapper creates the map client of a session, for example with {@code AsyncMapClient.builder(client).buildBlocking()}
+	 */
+	public PooledMapClient(int size, Supplier<CopycatClient> clients, Collection<Address> cluster,
+			Function<CopycatClient, ConcurrentMapClient<K, V>> wrapper) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be positive");
+		}
+		this.clients = clients;
+		this.cluster = new ArrayList<>(cluster);
+		this.wrapper = wrapper;
+		this.sessions = new AtomicReferenceArray<>(size);
+		for (int i = 0; i < size; i++) {
+			CompletableFuture<Session<K, V>> session = new CompletableFuture<>();
+			sessions.set(i, session);
+			connect(i, session);
+		}
+		List<CompletableFuture<Session<K, V>>> connecting = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			connecting.add(sessions.get(i));
+		}
+		try {
+			CompletableFuture.allOf(connecting.toArray(new CompletableFuture[size])).join();
+		}
+		catch (CompletionException e) {
+			// the caller gets no pool to close, so the sessions that did connect are closed here
+			closed = true;
+			for (CompletableFuture<Session<K, V>> session : connecting) {
+				if (!session.isCompletedExceptionally()) {
+					session.join().client.close().join();
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of sessions
+	 */
+	public int poolSize() {
+		return sessions.length();
+	}
+
+	/**
+	 * Closes all sessions. The pool must not be used afterwards.
+	 */
+	public CompletableFuture<Void> close() {
+		closed = true;
+		List<CompletableFuture<Void>> futures = new ArrayList<>(sessions.length());
+		for (int i = 0; i < sessions.length(); i++) {
+			futures.add(sessions.get(i).thenCompose(session -> session.client.close()));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+	}
+
+	/*
+	 * The map client is created on a common pool thread, because it may submit a command and wait for it, which must not happen on the
+	 * Copycat client thread. A session that has never connected does not replace itself when its client closes; the next call retries.
+	 */
+	private void connect(int index, CompletableFuture<Session<K, V>> session) {
+		CopycatClient client = clients.get();
+		client.onStateChange(state -> {
+			if (state == CopycatClient.State.CLOSED && session.isDone() && !session.isCompletedExceptionally()) {
+				replace(index, session);
+			}
+		});
+		client.connect(cluster).whenCompleteAsync((connected, error) -> {
+			if (error != null) {
+				session.completeExceptionally(error);
+				client.close();
+			}
+			else {
+				try {
+					session.complete(new Session<>(client, wrapper.apply(client)));
+				}
+				catch (RuntimeException e) {
+					session.completeExceptionally(e);
+					client.close();
+				}
+			}
+		});
+	}
+
+	/*
+	 * The replacement is connected from a common pool thread. A CopycatClient that is created on the thread of the closed client is bound
+	 * to its dead thread context, and completes commands without applying them.
+	 */
+	private void replace(int index, CompletableFuture<Session<K, V>> failed) {
+		CompletableFuture<Session<K, V>> replacement = new CompletableFuture<>();
+		if (!closed && sessions.compareAndSet(index, failed, replacement)) {
+			CompletableFuture.runAsync(() -> connect(index, replacement));
+		}
+	}
+
+	/*
+	 * Operations submitted to a closed CopycatClient never complete. So a closed session is replaced here, too, in case the state change
+	 * has not been handled yet.
+	 */
+	private ConcurrentMapClient<K, V> session(int index) {
+		CompletableFuture<Session<K, V>> session = sessions.get(index);
+		if (session.isCompletedExceptionally() || session.isDone() && session.join().client.state() == CopycatClient.State.CLOSED) {
+			replace(index, session);
+			session = sessions.get(index);
+		}
+		return session.join().map;
+	}
+
+	private int indexOf(Object key) {
+		return Partitions.partition(key, sessions.length()); // the same stable hash that routes keys to partitions
+	}
+
+	/**
+	 * @return the client of the session to which a key is pinned
+	 */
+	public ConcurrentMapClient<K, V> sessionOf(Object key) {
+		return session(indexOf(key));
+	}
+
+	// waits for session 0 only if no session is connected
+	private ConcurrentMapClient<K, V> leastLoaded() {
+		Session<K, V> best = null;
+		for (int i = 0; i < sessions.length(); i++) {
+			CompletableFuture<Session<K, V>> future = sessions.get(i);
+			if (future.isDone() && !future.isCompletedExceptionally()) {
+				Session<K, V> session = future.join();
+				if (session.client.state() == CopycatClient.State.CONNECTED
+						&& (best == null || session.map.async().inFlight() < best.map.async().inFlight())) {
+					best = session;
+				}
+			}
+		}
+		return best != null ? best.map : session(0);
+	}
+
+	@Override
+	public int size() {
+		return leastLoaded().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return sessionOf(key).containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return leastLoaded().containsValue(value);
+	}
+
+	@Override
+	public V get(Object key) {
+		return sessionOf(key).get(key);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return sessionOf(key).put(key, value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return sessionOf(key).remove(key);
+	}
+
+	/*
+	 * The entries are split by session, so that each entry stays in order with the other operations on its key.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		Map<Integer, Map<K, V>> split = new HashMap<>();
+		for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			split.computeIfAbsent(indexOf(entry.getKey()), _i -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+		}
+		List<CompletableFuture<Void>> futures = new ArrayList<>(split.size());
+		for (Entry<Integer, Map<K, V>> entry : split.entrySet()) {
+			futures.add(session(entry.getKey()).async().putAll(entry.getValue()));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+	}
+
+	@Override
+	public void clear() {
+		leastLoaded().clear();
+	}
+
+	/**
+	 * Gets the values of several keys with one query per session concerned.
+	 * @return a map that contains the keys that are present, with their values
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		Map<Integer, List<K>> split = new HashMap<>();
+		for (K key : keys) {
+			split.computeIfAbsent(indexOf(key), _i -> new ArrayList<>()).add(key);
+		}
+		List<CompletableFuture<Map<K, V>>> futures = new ArrayList<>(split.size());
+		for (Entry<Integer, List<K>> entry : split.entrySet()) {
+			futures.add(session(entry.getKey()).async().getAll(entry.getValue()));
+		}
+		Map<K, V> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+		for (CompletableFuture<Map<K, V>> future : futures) {
+			result.putAll(future.join());
+		}
+		return result;
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return sessionOf(key).putIfAbsent(key, value);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		return sessionOf(key).remove(key, value);
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		return sessionOf(key).replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		return sessionOf(key).replace(key, value);
+	}
+
+	/*
+	 * The views of one session, which fetches all pages of an iteration.
+	 */
+	@Override
+	public Set<K> keySet() {
+		return leastLoaded().keySet();
+	}
+
+	@Override
+	public Collection<V> values() {
+		return leastLoaded().values();
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return leastLoaded().entrySet();
+	}
+
+	private static final class Session<K, V> {
+
+		final CopycatClient client;
+		final ConcurrentMapClient<K, V> map;
+
+		Session(CopycatClient client, ConcurrentMapClient<K, V> map) {
+			this.client = client;
+			this.map = map;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package client;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.Operation;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import statemachine.OperationStats;
+
+/**
+ * Counts and times the requests of an {@link AsyncMapClient}, from the call until the future completes. Enable it with
+ * {@link AsyncMapClient.Builder#withMetrics()}, read a snapshot with {@link #statistics()}, or register the instance returned by
+ * {@link AsyncMapClient#requestMetrics()} with an MBean server.
+ * <p>
+ * Every request type has a histogram with one bucket per power of two of nanoseconds, so latencies are reported to within a factor of
+ * two. All counters are striped {@link LongAdder}s, because requests complete on the Copycat client thread while callers start new
+ * ones. Recording allocates nothing, except for the report of a slow request.
+ * <p>
+ * Copycat resubmits operations after it has reconnected a suspended session, without telling the caller. Instead of retries, this
+ * class therefore counts the suspensions and reconnections of the session.
+ * @author Initial author: Sebastian Millies
+ */
+public final class RequestMetrics implements RequestMetricsMXBean {
+
+	/** The request types of an {@code AsyncMapClient}. Gets served from the near cache are not requests. */
+	public enum Request {
+		GET, GET_ALL, CONTAINS_KEY, CONTAINS_VALUE, SIZE, SCAN, SNAPSHOT, STATS, // queries
+		PUT, PUT_ALL, REMOVE, PUT_IF_ABSENT, REPLACE, COMPARE_AND_SET, CLEAR, BATCH // commands
+	}
+
+	private final Map<Request, Histogram> requests = new EnumMap<>(Request.class);
+	private final Histogram enqueue = new Histogram();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder suspensions = new LongAdder();
+	private final LongAdder reconnections = new LongAdder();
+	private final LongAdder slowRequests = new LongAdder();
+	private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+	private final IntSupplier inFlight;
+
+	private final long slowNanos; // Long.MAX_VALUE if slow requests are not traced
+	private final Consumer<SlowRequest> slowRequestListener;
+	private final Serializer serializer;
+	private Serializer copy; // made on the first slow request, when all types have been registered
+
+	RequestMetrics(IntSupplier inFlight, long slowNanos, Consumer<SlowRequest> slowRequestListener, Serializer serializer) {
+		this.inFlight = inFlight;
+		this.slowNanos = slowNanos;
+		this.slowRequestListener = slowRequestListener;
+		this.serializer = serializer;
+		for (Request request : Request.values()) {
+			requests.put(request, new Histogram());
+		}
+	}
+
+	/**
+	 * Records the first part of a request, until it has been handed to Copycat.
+	 * @param start when the request was made
+	 * @param acquired when it has been admitted by the in-flight cap
+	 */
+	void submitted(long start, long acquired) {
+		enqueue.record(acquired - start);
+		peakInFlight.accumulate(inFlight.getAsInt());
+	}
+
+	/**
+	 * Records a completed request.
+	 * @param key the key of the request, or {@code null} if it has none
+	 * @param operation the operation submitted to Copycat, or {@code null} if it was submitted by the micro-batcher
+	 * @param start when the request was made
+	 * @param acquired when it has been admitted by the in-flight cap
+	 * @param submitted when {@code CopycatClient.submit} has returned
+	 * @param failure the exception that completed the request, or {@code null}
+	 */
+	void completed(Request request, Object key, Operation<?> operation, long start, long acquired, long submitted, Throwable failure) {
+		long end = System.nanoTime();
+		requests.get(request).record(end - start);
+		if (failure != null) {
+			failures.increment();
+			if (isTimeout(failure)) {
+				timeouts.increment();
+			}
+		}
+		if (end - start >= slowNanos) {
+			slowRequests.increment();
+			long[] encoding = operation != null ? encode(operation) : new long[] { -1, -1 };
+			slowRequestListener.accept(new SlowRequest(request, key != null ? key.hashCode() : 0, end - start, acquired - start,
+					submitted - acquired, end - submitted, encoding[0], encoding[1], failure));
+		}
+	}
+
+	private static boolean isTimeout(Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+		return cause instanceof TimeoutException || cause instanceof SocketTimeoutException;
+	}
+
+	/*
+	 * Copycat serializes the operation later on its own thread, so the time it takes is not visible here. For a slow request, the
+	 * operation is therefore serialized once more to estimate that time, which costs nothing for all other requests.
+	 * @return nanoseconds and bytes
+	 */
+	private synchronized long[] encode(Operation<?> operation) {
+		if (copy == null) {
+			copy = serializer.clone();
+		}
+		long start = System.nanoTime();
+		Buffer buffer = copy.writeObject(operation);
+		long nanos = System.nanoTime() - start;
+		long bytes = buffer.position();
+		buffer.release();
+		return new long[] { nanos, bytes };
+	}
+
+	void suspended() {
+		suspensions.increment();
+	}
+
+	void reconnected() {
+		reconnections.increment();
+	}
+
+	/**
+	 * @return an immutable snapshot of all counters
+	 */
+	public RequestStatistics statistics() {
+		return new RequestStatistics(getInFlight(), getPeakInFlight(), getRequests(), getFailures(), getTimeouts(), getSuspensions(),
+				getReconnections(), getSlowRequests(), getEnqueue(), getOperations());
+	}
+
+	@Override
+	public int getInFlight() {
+		return inFlight.getAsInt();
+	}
+
+	@Override
+	public long getPeakInFlight() {
+		return peakInFlight.get();
+	}
+
+	@Override
+	public long getRequests() {
+		long count = 0;
+		for (Histogram histogram : requests.values()) {
+			count += histogram.count();
+		}
+		return count;
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getSuspensions() {
+		return suspensions.sum();
+	}
+
+	@Override
+	public long getReconnections() {
+		return reconnections.sum();
+	}
+
+	@Override
+	public long getSlowRequests() {
+		return slowRequests.sum();
+	}
+
+	@Override
+	public OperationStats getEnqueue() {
+		return enqueue.stats("ENQUEUE");
+	}
+
+	/**
+	 * @return the request types that have completed at least once
+	 */
+	@Override
+	public List<OperationStats> getOperations() {
+		List<OperationStats> stats = new ArrayList<>();
+		for (Entry<Request, Histogram> entry : requests.entrySet()) {
+			if (entry.getValue().count() > 0) {
+				stats.add(entry.getValue().stats(entry.getKey().name()));
+			}
+		}
+		return stats;
+	}
+
+	private static final class Histogram {
+
+		private static final int BUCKETS = Long.SIZE + 1;
+
+		private final LongAdder[] counts = new LongAdder[BUCKETS];
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		Histogram() {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = new LongAdder();
+			}
+		}
+
+		// bucket i holds the values with i significant bits, that is, from 2^(i-1) to 2^i - 1
+		void record(long nanos) {
+			counts[Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+		}
+
+		long count() {
+			long count = 0;
+			for (LongAdder bucket : counts) {
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		// the upper bound of the bucket, but never more than the maximum
+		private long valueAtPercentile(long[] snapshot, long count, double percentile, long max) {
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				seen += snapshot[bucket];
+				if (seen >= rank) {
+					return Math.min(bucket == Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1, max);
+				}
+			}
+			return max;
+		}
+
+		OperationStats stats(String name) {
+			long[] snapshot = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				snapshot[i] = counts[i].sum();
+				count += snapshot[i];
+			}
+			if (count == 0) {
+				return new OperationStats(name, 0, 0, 0, 0, 0);
+			}
+			long max = maxNanos.get();
+			return new OperationStats(name, count, totalNanos.sum() / count, valueAtPercentile(snapshot, count, 50, max),
+					valueAtPercentile(snapshot, count, 99, max), max);
+		}
+	}
+}
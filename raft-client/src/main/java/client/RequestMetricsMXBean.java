@@ -0,0 +1,33 @@
+package client;
+
+import java.util.List;
+import statemachine.OperationStats;
+
+/**
+ * The attributes of {@link RequestMetrics} as they appear in a JMX console. Latencies are in nanoseconds.
+ */
+public interface RequestMetricsMXBean {
+
+	int getInFlight();
+
+	long getPeakInFlight();
+
+	long getRequests();
+
+	long getFailures();
+
+	long getTimeouts();
+
+	long getSuspensions();
+
+	long getReconnections();
+
+	long getSlowRequests();
+
+	/**
+	 * @return the time requests have waited for the in-flight cap
+	 */
+	OperationStats getEnqueue();
+
+	List<OperationStats> getOperations();
+}
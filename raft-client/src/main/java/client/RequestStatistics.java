@@ -0,0 +1,94 @@
+package client;
+
+import java.util.List;
+import statemachine.OperationStats;
+
+/**
+ * An immutable snapshot of the {@link RequestMetrics} of a client. Latencies are measured from the call until the future completes,
+ * and include the wait for the in-flight cap, which is also reported on its own as {@link #enqueue()}.
+ * @author Initial author: Sebastian Millies
+ */
+public final class RequestStatistics {
+
+	private final int inFlight;
+	private final long peakInFlight;
+	private final long requests;
+	private final long failures;
+	private final long timeouts;
+	private final long suspensions;
+	private final long reconnections;
+	private final long slowRequests;
+	private final OperationStats enqueue;
+	private final List<OperationStats> operations;
+
+	RequestStatistics(int inFlight, long peakInFlight, long requests, long failures, long timeouts, long suspensions, long reconnections,
+			long slowRequests, OperationStats enqueue, List<OperationStats> operations) {
+		this.inFlight = inFlight;
+		this.peakInFlight = peakInFlight;
+		this.requests = requests;
+		this.failures = failures;
+		this.timeouts = timeouts;
+		this.suspensions = suspensions;
+		this.reconnections = reconnections;
+		this.slowRequests = slowRequests;
+		this.enqueue = enqueue;
+		this.operations = operations;
+	}
+
+	public int inFlight() {
+		return inFlight;
+	}
+
+	public long peakInFlight() {
+		return peakInFlight;
+	}
+
+	/**
+	 * @return the number of completed requests, including failed ones
+	 */
+	public long requests() {
+		return requests;
+	}
+
+	public long failures() {
+		return failures;
+	}
+
+	public long timeouts() {
+		return timeouts;
+	}
+
+	public long suspensions() {
+		return suspensions;
+	}
+
+	public long reconnections() {
+		return reconnections;
+	}
+
+	public long slowRequests() {
+		return slowRequests;
+	}
+
+	public OperationStats enqueue() {
+		return enqueue;
+	}
+
+	/**
+	 * @return the request types that have completed at least once, in the order of {@link RequestMetrics.Request}
+	 */
+	public List<OperationStats> operations() {
+		return operations;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(String.format(
+				"in flight=%d, peak in flight=%d, requests=%d, failures=%d, timeouts=%d, suspensions=%d, reconnections=%d, slow=%d%n%s",
+				inFlight, peakInFlight, requests, failures, timeouts, suspensions, reconnections, slowRequests, enqueue));
+		for (OperationStats operation : operations) {
+			sb.append(String.format("%n%s", operation));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,56 @@
+package client;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import statemachine.ScanPage;
+import statemachine.ScanQuery;
+import statemachine.ScanQuery.Projection;
+
+/**
+ * Iterates over the entries of the remote map one page at a time. The next page is requested as soon as the current page has arrived,
+ * so at most two pages are held in memory, independent of the size of the map. The iteration is weakly consistent, see
+ * {@link ScanQuery}. Only the projected half of each entry is fetched.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @param <T> element type, projected from each entry
+ * @author Initial author: Sebastian Millies
+ */
+class ScanIterator<K, V, T> implements Iterator<T> {
+
+	private final AsyncMapClient<K, V> async;
+	private final Projection fetched;
+	private final Function<Entry<K, V>, T> projection;
+	private Iterator<Entry<K, V>> current;
+	private CompletableFuture<ScanPage<K, V>> next;
+
+	ScanIterator(AsyncMapClient<K, V> async, Projection fetched, Function<Entry<K, V>, T> projection) {
+		this.async = async;
+		this.fetched = fetched;
+		this.projection = projection;
+		this.next = async.scan(ScanQuery.START, fetched);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (current == null || !current.hasNext()) {
+			if (next == null) {
+				return false;
+			}
+			ScanPage<K, V> page = next.join();
+			next = page.hasNext() ? async.scan(page.next(), fetched) : null;
+			current = page.entries().iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return projection.apply(current.next());
+	}
+}
@@ -0,0 +1,102 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+import client.RequestMetrics.Request;
+
+/**
+ * A request that took longer than the threshold set with {@link AsyncMapClient.Builder#withSlowRequestTracing(java.time.Duration)},
+ * with the parts of its latency:
+ * <ul>
+ * <li>enqueue: the wait for the in-flight cap
+ * <li>submit: the call to {@code CopycatClient.submit}, which hands the operation to the Copycat client thread
+ * <li>response: from then until the future completes, which covers serialization, the round trip to the cluster, replication and the
+ * state machine
+ * </ul>
+ * Copycat serializes the operation on its own thread, so serialization cannot be timed in place. The operation is serialized once more
+ * when the request is reported, and the time and size of that encoding are reported instead.
+ */
+public final class SlowRequest {
+
+	private final Request request;
+	private final int keyHash;
+	private final long totalNanos;
+	private final long enqueueNanos;
+	private final long submitNanos;
+	private final long responseNanos;
+	private final long serializeNanos;
+	private final long serializedBytes;
+	private final Throwable failure;
+
+	SlowRequest(Request request, int keyHash, long totalNanos, long enqueueNanos, long submitNanos, long responseNanos, long serializeNanos,
+			long serializedBytes, Throwable failure) {
+		this.request = request;
+		this.keyHash = keyHash;
+		this.totalNanos = totalNanos;
+		this.enqueueNanos = enqueueNanos;
+		this.submitNanos = submitNanos;
+		this.responseNanos = responseNanos;
+		this.serializeNanos = serializeNanos;
+		this.serializedBytes = serializedBytes;
+		this.failure = failure;
+	}
+
+	public Request request() {
+		return request;
+	}
+
+	/**
+	 * @return the hash code of the key, or 0 if the request has no single key. The key itself is not kept, so that it does not end up
+	 * in a log.
+	 */
+	public int keyHash() {
+		return keyHash;
+	}
+
+	public long totalNanos() {
+		return totalNanos;
+	}
+
+	public long enqueueNanos() {
+		return enqueueNanos;
+	}
+
+	public long submitNanos() {
+		return submitNanos;
+	}
+
+	public long responseNanos() {
+		return responseNanos;
+	}
+
+	/**
+	 * @return the time to serialize the operation again, or -1 if it was submitted by the micro-batcher
+	 */
+	public long serializeNanos() {
+		return serializeNanos;
+	}
+
+	/**
+	 * @return the size of the serialized operation, or -1 if it was submitted by the micro-batcher
+	 */
+	public long serializedBytes() {
+		return serializedBytes;
+	}
+
+	/**
+	 * @return the exception that completed the request, or {@code null} if it succeeded
+	 */
+	public Throwable failure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("slow %s (key hash %08x): %.3f ms = enqueue %.3f + submit %.3f + response %.3f ms; serialize %d us, %d bytes%s",
+				request, keyHash, millis(totalNanos), millis(enqueueNanos), millis(submitNanos), millis(responseNanos),
+				TimeUnit.NANOSECONDS.toMicros(serializeNanos), serializedBytes, failure != null ? "; failed with " + failure : "");
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,187 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import serialization.MapSerialization;
+import statemachine.CompressedValue;
+import statemachine.OperationStats;
+import statemachine.ScanPage;
+import statemachine.ScanQuery;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AsyncMapClientTest {
+
+	private static final int MAX_IN_FLIGHT = 16;
+
+	private static CopycatClient copycatClient;
+	private static AsyncMapClient<String, String> client;
+
+	@BeforeClass
+	public static void connect() {
+		copycatClient = CopycatClient.builder()
+				.withTransport(NettyTransport.builder().withThreads(2).build()).build();
+
+		copycatClient.serializer().resolve(new MapSerialization());
+
+		CompletableFuture<CopycatClient> future = copycatClient.connect(asList(new Address("localhost", 5001), new Address("localhost", 5099)));
+		future.join(); // block
+
+		client = AsyncMapClient.<String, String> builder(copycatClient).withMaxInFlight(MAX_IN_FLIGHT).build();
+	}
+
+	@Before
+	public void setup() {
+		client.clear().join();
+	}
+
+	@Test
+	public void compression() {
+		AsyncMapClient<String, String> compressing = AsyncMapClient.<String, String> builder(copycatClient).withCompression(64).build();
+		AsyncMapClient<String, Object> raw = AsyncMapClient.<String, Object> builder(copycatClient).build();
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			json.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+		}
+		String large = json.toString();
+		String larger = large + large;
+
+		assertNull(compressing.put("large", large).join());
+		compressing.put("small", "value").join();
+		assertTrue(raw.get("large").join() instanceof CompressedValue);
+		assertEquals("value", raw.get("small").join());
+
+		assertEquals(large, compressing.get("large").join());
+		assertTrue(compressing.containsValue(large).join());
+		assertFalse(compressing.compareAndSet("large", larger, large).join());
+		assertTrue(compressing.compareAndSet("large", large, larger).join());
+		assertEquals(larger, compressing.putIfAbsent("large", large).join());
+		Map<String, String> all = compressing.getAll(asList("large", "small")).join();
+		assertEquals(larger, all.get("large"));
+		assertEquals("value", all.get("small"));
+		ScanPage<String, String> page = compressing.scan(ScanQuery.START).join();
+		assertEquals(2, page.entries().size());
+		page.entries().forEach(entry -> assertEquals(all.get(entry.getKey()), entry.getValue()));
+		assertEquals(larger, compressing.remove("large").join());
+	}
+
+	@Test
+	public void expiry() throws InterruptedException {
+		assertNull(client.put("session", "alive", Duration.ofMillis(500)).join());
+		client.put("renewed", "value", Duration.ofMillis(500)).join();
+		client.put("renewed", "value").join(); // no longer expires
+		client.put("permanent", "value").join();
+		assertEquals("alive", client.get("session").join());
+		assertEquals(Integer.valueOf(3), client.size().join());
+
+		Thread.sleep(1000);
+		client.put("other", "value").join(); // removes the expired entry
+		assertNull(client.get("session").join());
+		assertFalse(client.containsKey("session").join());
+		assertEquals("value", client.get("renewed").join());
+		assertEquals(Integer.valueOf(3), client.size().join());
+	}
+
+	// no command follows the put, so the entry is still in the map while the keep-alives of the session advance the query time
+	@Test
+	public void expiryWithoutCommand() throws InterruptedException {
+		client.put("permanent", "value").join();
+		client.put("session", "alive", Duration.ofMillis(200)).join();
+		assertTrue(client.containsValue("alive").join());
+		long deadline = System.currentTimeMillis() + 20000;
+		while (client.get("session").join() != null) {
+			assertTrue("the query time has not passed the expiry", System.currentTimeMillis() < deadline);
+			Thread.sleep(100);
+		}
+		assertEquals(Integer.valueOf(1), client.size().join());
+		assertFalse(client.containsValue("alive").join());
+		ScanPage<String, String> page = client.scan(ScanQuery.START).join();
+		assertEquals(1, page.entries().size());
+		assertEquals("permanent", page.entries().get(0).getKey());
+		assertFalse(page.hasNext());
+		assertEquals(1, client.stats().join().size());
+		assertEquals(singletonMap("permanent", "value"), client.snapshot().join());
+	}
+
+	@Test
+	public void pipelined() {
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 10 * MAX_IN_FLIGHT; i++) {
+			futures.add(client.put("key" + i, "value" + i));
+			assertTrue(client.inFlight() <= MAX_IN_FLIGHT);
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+		for (CompletableFuture<String> future : futures) {
+			assertNull(future.join());
+		}
+		assertEquals(Integer.valueOf(10 * MAX_IN_FLIGHT), client.size().join());
+		assertEquals("value7", client.get("key7").join());
+	}
+
+	@Test
+	public void requestMetrics() {
+		ConcurrentLinkedQueue<SlowRequest> slow = new ConcurrentLinkedQueue<>();
+		AsyncMapClient<String, String> traced = AsyncMapClient.<String, String> builder(copycatClient)
+				.withSlowRequestTracing(Duration.ofNanos(1), slow::add).build();
+		traced.put("foo", "bar").join();
+		traced.get("foo").join();
+
+		RequestStatistics statistics = traced.requestStatistics();
+		assertEquals(2, statistics.requests());
+		assertEquals(0, statistics.failures());
+		assertEquals(2, statistics.slowRequests());
+		assertEquals(0, statistics.inFlight());
+		assertTrue(statistics.peakInFlight() >= 1);
+		List<String> operations = new ArrayList<>();
+		for (OperationStats operation : statistics.operations()) {
+			operations.add(operation.getOperation());
+			assertEquals(1, operation.getCount());
+			assertTrue(operation.getMaxNanos() > 0);
+		}
+		assertEquals(asList("GET", "PUT"), operations);
+
+		assertEquals(2, slow.size());
+		SlowRequest put = slow.poll();
+		assertEquals(RequestMetrics.Request.PUT, put.request());
+		assertEquals("foo".hashCode(), put.keyHash());
+		assertTrue(put.serializedBytes() > 0);
+		assertEquals(put.totalNanos(), put.enqueueNanos() + put.submitNanos() + put.responseNanos());
+	}
+
+	@Test
+	public void submissionOrder() {
+		ConcurrentLinkedQueue<Integer> completed = new ConcurrentLinkedQueue<>();
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			int n = i;
+			futures.add(client.put("key", "value" + i).whenComplete((_v, _e) -> completed.add(n)));
+		}
+		CompletableFuture<String> last = client.get("key");
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+
+		assertEquals("value99", last.join());
+		assertEquals("value98", futures.get(99).join());
+		int expected = 0;
+		for (int n : completed) {
+			assertEquals(expected++, n);
+		}
+	}
+}
@@ -14,6 +14,7 @@ import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import serialization.MapSerialization;
 import statemachine.ClearCommand;
 import statemachine.GetQuery;
 import statemachine.PutCommand;
@@ -34,8 +35,7 @@ public class ClientDriver {
 				// .builder(new Address("localhost", 5001), new Address("localhost", 5002))
 				.withTransport(NettyTransport.builder().withThreads(2).build()).build();
 
-		client.serializer().register(PutCommand.class);
-		client.serializer().register(GetQuery.class);
+		client.serializer().resolve(new MapSerialization());
 
 		/*
 		 * When connecting to a cluster, a collection of server addresses must be passed to the connect method. The address list does not
@@ -2,38 +2,49 @@ package client;
 
 import io.atomix.catalyst.transport.Address;
 import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.Command;
+import io.atomix.copycat.Query.ConsistencyLevel;
 import io.atomix.copycat.client.CopycatClient;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
-import statemachine.GetQuery;
+import serialization.MapSerialization;
+import statemachine.OperationStats;
 import statemachine.PutCommand;
+import statemachine.Stats;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class ConcurrentMapClientTest {
 
-	private static ConcurrentMap<String,String> client;
+	private static CopycatClient copycatClient;
+	private static ConcurrentMapClient<String,String> client;
 
 	@BeforeClass
 	public static void connect() {
-		CopycatClient copycatClient = CopycatClient.builder()
+		copycatClient = CopycatClient.builder()
 				// .builder(new Address("localhost", 5001), new Address("localhost", 5002))
 				.withTransport(NettyTransport.builder().withThreads(2).build()).build();
 
-		copycatClient.serializer().register(PutCommand.class);
-		copycatClient.serializer().register(GetQuery.class);
+		copycatClient.serializer().resolve(new MapSerialization());
 
 		CompletableFuture<CopycatClient> future = copycatClient.connect(asList(new Address("localhost", 5001), new Address("localhost", 5099)));
 		future.join(); // block
@@ -47,6 +58,46 @@ public class ConcurrentMapClientTest {
 		client.clear();
 	}
 	
+	@Test
+	public void batch() {
+		client.put("foo", "old");
+		List<Command<?>> commands = asList(new PutCommand<>("foo", "new"), new PutCommand<>("bar", "Hello world!"));
+		assertEquals(asList("old", null), client.batch(commands));
+		assertEquals("new", client.get("foo"));
+		assertEquals("Hello world!", client.get("bar"));
+	}
+
+	@Test
+	public void conditionalOperations() {
+		assertNull(client.putIfAbsent("foo", "first"));
+		assertEquals("first", client.putIfAbsent("foo", "second"));
+		assertNull(client.replace("bar", "new"));
+		assertNull(client.get("bar"));
+		assertEquals("first", client.replace("foo", "second"));
+		assertFalse(client.replace("foo", "first", "third"));
+		assertTrue(client.replace("foo", "second", "third"));
+		assertFalse(client.remove("foo", "second"));
+		assertTrue(client.remove("foo", "third"));
+		assertNull(client.get("foo"));
+		client.put("bar", "value");
+		assertEquals("value", client.remove("bar"));
+		assertNull(client.remove("bar"));
+		assertEquals(0, client.size());
+	}
+
+	@Test
+	public void contains() {
+		client.put("foo", "bar");
+		assertTrue(client.containsKey("foo"));
+		assertFalse(client.containsKey("bar"));
+		assertTrue(client.containsValue("bar"));
+		assertFalse(client.containsValue("foo"));
+		assertTrue(client.keySet().contains("foo"));
+		assertTrue(client.values().contains("bar"));
+		client.remove("foo");
+		assertFalse(client.containsValue("bar"));
+	}
+
 	@Test
 	public void entrySet() throws Throwable {
 		Map<String, String> expected = new HashMap<>();
@@ -72,12 +123,127 @@ public class ConcurrentMapClientTest {
 		}
 	}
 	
+	@Test
+	public void getWithConsistency() {
+		client.put("baz", "Hello world!");
+		for (ConsistencyLevel consistency : ConsistencyLevel.values()) {
+			assertEquals("Hello world!", client.get("baz", consistency));
+			assertEquals(1, client.size(consistency));
+		}
+	}
+
+	@Test
+	public void getAll() {
+		client.put("foo", "Hello world!");
+		client.put("bar", "Hello world!");
+		Map<String, String> expected = new HashMap<>();
+		expected.put("foo", "Hello world!");
+		expected.put("bar", "Hello world!");
+		assertEquals(expected, client.getAll(asList("foo", "bar", "baz")));
+	}
+
+	@Test
+	public void microBatching() throws Exception {
+		ConcurrentMapClient<String, String> batching = AsyncMapClient.<String, String> builder(copycatClient).withMicroBatching(100).buildBlocking();
+		ExecutorService executor = Executors.newFixedThreadPool(20);
+		try {
+			List<Future<String>> puts = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				String key = "key" + i;
+				puts.add(executor.submit(() -> batching.put(key, "value")));
+			}
+			for (Future<String> put : puts) {
+				assertNull(put.get());
+			}
+			List<Future<String>> gets = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				String key = "key" + i;
+				gets.add(executor.submit(() -> batching.get(key)));
+			}
+			for (Future<String> get : gets) {
+				assertEquals("value", get.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		System.out.println("put batches: " + batching.putBatchStatistics());
+		System.out.println("get batches: " + batching.getBatchStatistics());
+		assertEquals(200, batching.putBatchStatistics().operations());
+		assertEquals(200, batching.getBatchStatistics().operations());
+	}
+
+	@Test
+	public void nearCache() throws Exception {
+		CopycatClient cachingClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(2).build()).build();
+		cachingClient.serializer().resolve(new MapSerialization());
+		cachingClient.connect(asList(new Address("localhost", 5001), new Address("localhost", 5099))).join();
+		try {
+			ConcurrentMapClient<String, String> caching = AsyncMapClient.<String, String> builder(cachingClient).withNearCache(10).buildBlocking();
+			client.put("foo", "old");
+			assertEquals("old", caching.get("foo")); // miss
+			assertEquals("old", caching.get("foo")); // hit
+
+			// the invalidation reaches the caching session asynchronously
+			client.put("foo", "new");
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!"new".equals(caching.get("foo")) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals("new", caching.get("foo"));
+
+			NearCacheStatistics statistics = caching.nearCacheStatistics();
+			System.out.println("near cache: " + statistics);
+			assertTrue(statistics.hits() >= 1);
+			assertTrue(statistics.invalidations() >= 1);
+		}
+		finally {
+			cachingClient.close().join();
+		}
+	}
+
 	@Test
 	public void put() {
 		assertNull(client.put("baz", "Hello world!"));
 		assertEquals("Hello world!", client.put("baz", "Hello world!"));
 	}
 
+	@Test
+	public void putAll() {
+		Map<String, String> entries = new HashMap<>();
+		for (int i = 0; i < 2 * AsyncMapClient.DEFAULT_BATCH_SIZE + 1; i++) {
+			entries.put("key" + i, "value" + i);
+		}
+		client.putAll(entries);
+		assertEquals(entries.size(), client.size());
+		assertEquals(entries, client.getAll(entries.keySet()));
+	}
+
+	@Test
+	public void scan() {
+		Map<String, String> entries = new HashMap<>();
+		for (int i = 0; i < 250; i++) {
+			entries.put("key" + i, "value" + i);
+		}
+		for (String key : asList("Aa", "BB", "C#")) { // same hash code
+			entries.put(key, key);
+		}
+		client.putAll(entries);
+
+		for (int pageSize : asList(1, 7, 1000)) {
+			ConcurrentMapClient<String, String> paging = AsyncMapClient.<String, String> builder(copycatClient).withPageSize(pageSize).buildBlocking();
+			Map<String, String> scanned = new HashMap<>();
+			for (Map.Entry<String, String> entry : paging.entrySet()) {
+				assertNull(scanned.put(entry.getKey(), entry.getValue()));
+			}
+			assertEquals(entries, scanned);
+			assertEquals(entries.keySet(), new HashSet<>(paging.keySet()));
+			assertEquals(new HashSet<>(entries.values()), new HashSet<>(paging.values()));
+		}
+		assertTrue(client.keySet().contains("Aa"));
+		assertTrue(client.entrySet().contains(new SimpleImmutableEntry<>("BB", "BB")));
+	}
+
 	@Test
 	public void size() throws Throwable {
 		try {
@@ -87,4 +253,19 @@ public class ConcurrentMapClientTest {
 			throw e.getCause();
 		}
 	}
+
+	@Test
+	public void stats() {
+		client.put("foo", "bar");
+		Stats stats = client.stats();
+		assertEquals(1, stats.size());
+		assertTrue(stats.lastAppliedIndex() > 0);
+		assertTrue(stats.commits() > 0);
+		assertTrue(stats.estimatedBytes() > 0);
+		boolean puts = false;
+		for (OperationStats operation : stats.operations()) {
+			puts |= operation.getOperation().equals("PUT") && operation.getCount() > 0;
+		}
+		assertTrue(puts);
+	}
 }
@@ -0,0 +1,138 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import io.atomix.copycat.server.CopycatServer;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import serialization.MapSerialization;
+import statemachine.LongMapStateMachine;
+import util.FileUtils;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs its own single-node cluster with a {@code LongMapStateMachine} on localhost port 5011, with small log segments so that Copycat
+ * takes snapshots, and restarts it on its storage to install them.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LongMapClientTest {
+
+	private static final Address ADDRESS = new Address("localhost", 5011);
+	private static final int ENTRIES_PER_SEGMENT = 100;
+
+	private static Path directory;
+	private static CopycatServer server;
+	private static CopycatClient copycatClient;
+	private static LongMapClient<String> client;
+
+	@BeforeClass
+	public static void start() throws IOException {
+		directory = Files.createTempDirectory("long-map");
+		startServer();
+	}
+
+	private static void startServer() {
+		server = CopycatServer.builder(ADDRESS).withStateMachine(LongMapStateMachine::new)
+				.withStorage(Storage.builder().withDirectory(directory.toFile()).withStorageLevel(StorageLevel.DISK)
+						.withMaxEntriesPerSegment(ENTRIES_PER_SEGMENT).build())
+				.build();
+		server.serializer().resolve(new MapSerialization());
+		server.bootstrap().join();
+
+		copycatClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(1).build()).build();
+		copycatClient.serializer().resolve(new MapSerialization());
+		copycatClient.connect(singleton(ADDRESS)).join();
+		client = new LongMapClient<>(copycatClient);
+	}
+
+	private static void stopServer() {
+		copycatClient.close().join();
+		server.shutdown().join();
+	}
+
+	@AfterClass
+	public static void stop() throws IOException {
+		stopServer();
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Before
+	public void setup() {
+		client.clear();
+	}
+
+	@Test
+	public void operations() {
+		assertTrue(client.isEmpty());
+		assertNull(client.put(1L, "one"));
+		assertNull(client.put(Long.MIN_VALUE, "min"));
+		assertEquals("one", client.put(1L, "uno"));
+		assertEquals("uno", client.get(1L));
+		assertEquals("min", client.getAsync(Long.MIN_VALUE).join());
+		assertNull(client.get(2L));
+		assertEquals(2, client.size());
+
+		assertEquals("uno", client.remove(1L));
+		assertNull(client.remove(1L));
+		assertNull(client.get(1L));
+		assertEquals(1, client.size());
+	}
+
+	@Test
+	public void snapshotRoundTrip() throws Exception {
+		int entries = 10 * ENTRIES_PER_SEGMENT;
+		Set<String> before = snapshots();
+		for (long key = 0; key < entries; key++) {
+			client.putAsync(key, "value" + key);
+		}
+		client.remove(0L);
+		assertEquals(entries - 1, client.size());
+		assertTrue("no snapshot taken", awaitSnapshot(before, 30));
+
+		stopServer();
+		startServer();
+		assertEquals(entries - 1, client.size());
+		assertNull(client.get(0L));
+		for (long key = 1; key < entries; key++) {
+			assertEquals("value" + key, client.get(key));
+		}
+		assertEquals("value1", client.put(1L, "new"));
+		assertEquals("new", client.get(1L));
+	}
+
+	private static Set<String> snapshots() {
+		String[] names = directory.toFile().list((dir, name) -> name.endsWith(".snapshot"));
+		return names != null ? new HashSet<>(asList(names)) : new HashSet<>();
+	}
+
+	// waits for a snapshot that is not one of the earlier ones
+	private static boolean awaitSnapshot(Set<String> earlier, int timeoutSeconds) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		while (System.nanoTime() < deadline) {
+			if (!earlier.containsAll(snapshots())) {
+				Thread.sleep(1000); // let Copycat finish writing it
+				return true;
+			}
+			Thread.sleep(100);
+		}
+		return false;
+	}
+}
@@ -0,0 +1,191 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import io.atomix.copycat.server.CopycatServer;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import serialization.MapSerialization;
+import statemachine.MapStateMachine;
+import util.Partitions;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs its own partitioned cluster: one single-node Copycat group per partition, at localhost port 5031 and the ports that
+ * {@link Partitions#address(Address, int)} derives from it, with logs in memory.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PartitionedMapClientTest {
+
+	private static final Address ADDRESS = new Address("localhost", 5031);
+	private static final int PARTITIONS = 3;
+	private static final int ENTRIES = 300;
+
+	private static final List<CopycatServer> servers = new ArrayList<>();
+	private static final List<CopycatClient> copycatClients = new ArrayList<>();
+	private static final List<ConcurrentMapClient<String, String>> partitions = new ArrayList<>();
+	private static PartitionedMapClient<String, String> client;
+
+	@BeforeClass
+	public static void start() {
+		for (int partition = 0; partition < PARTITIONS; partition++) {
+			Address address = Partitions.address(ADDRESS, partition);
+			CopycatServer server = CopycatServer.builder(address).withStateMachine(MapStateMachine::new)
+					.withStorage(Storage.builder().withStorageLevel(StorageLevel.MEMORY).build()).build();
+			server.serializer().resolve(new MapSerialization());
+			server.bootstrap().join();
+			servers.add(server);
+
+			CopycatClient copycatClient = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(1).build()).build();
+			copycatClient.serializer().resolve(new MapSerialization());
+			copycatClient.connect(singleton(address)).join();
+			copycatClients.add(copycatClient);
+			partitions.add(new ConcurrentMapClient<>(copycatClient));
+		}
+		client = new PartitionedMapClient<>(partitions);
+	}
+
+	@AfterClass
+	public static void stop() {
+		copycatClients.forEach(copycatClient -> copycatClient.close().join());
+		servers.forEach(server -> server.shutdown().join());
+	}
+
+	@Before
+	public void setup() {
+		client.clear();
+	}
+
+	private static Map<String, String> entries() {
+		Map<String, String> entries = new HashMap<>();
+		for (int i = 0; i < ENTRIES; i++) {
+			entries.put("key" + i, "value" + i);
+		}
+		return entries;
+	}
+
+	@Test
+	public void routing() {
+		int[] counts = new int[PARTITIONS];
+		for (int i = 0; i < ENTRIES; i++) {
+			String key = "key" + i;
+			assertNull(client.put(key, "value" + i));
+			counts[Partitions.partition(key, PARTITIONS)]++;
+		}
+		for (int partition = 0; partition < PARTITIONS; partition++) {
+			assertTrue("partition " + partition + " is empty", counts[partition] > 0);
+			assertEquals(counts[partition], partitions.get(partition).size());
+		}
+		assertEquals(ENTRIES, client.size());
+
+		for (int i = 0; i < ENTRIES; i++) {
+			String key = "key" + i;
+			int partition = Partitions.partition(key, PARTITIONS);
+			assertEquals(partitions.get(partition), client.partitionOf(key));
+			assertEquals("value" + i, partitions.get(partition).get(key));
+			assertFalse(partitions.get((partition + 1) % PARTITIONS).containsKey(key));
+		}
+
+		assertEquals("value1", client.putIfAbsent("key1", "other"));
+		assertTrue(client.replace("key1", "value1", "new"));
+		assertEquals("new", client.replace("key1", "newer"));
+		assertFalse(client.remove("key1", "new"));
+		assertTrue(client.remove("key1", "newer"));
+		assertEquals("value2", client.remove("key2"));
+		assertFalse(client.containsKey("key2"));
+		assertTrue(client.containsValue("value3"));
+		assertFalse(client.containsValue("value2"));
+		assertEquals(ENTRIES - 2, client.size());
+	}
+
+	@Test
+	public void putAllAndGetAll() {
+		Map<String, String> entries = entries();
+		client.putAll(entries);
+		assertEquals(ENTRIES, client.size());
+		for (int partition = 0; partition < PARTITIONS; partition++) {
+			for (String key : partitions.get(partition).keySet()) {
+				assertEquals(partition, Partitions.partition(key, PARTITIONS));
+			}
+		}
+
+		List<String> keys = new ArrayList<>(entries.keySet());
+		keys.add("missing");
+		assertEquals(entries, client.getAll(keys));
+		assertEquals(singleton("key7"), client.getAll(asList("key7", "missing")).keySet());
+		assertTrue(client.getAll(asList("missing")).isEmpty());
+		assertTrue(client.getAll(new ArrayList<>()).isEmpty());
+
+		client.clear();
+		assertTrue(client.isEmpty());
+		for (ConcurrentMapClient<String, String> partition : partitions) {
+			assertTrue(partition.isEmpty());
+		}
+	}
+
+	@Test
+	public void iteration() {
+		Map<String, String> entries = entries();
+		client.putAll(entries);
+
+		List<String> keys = new ArrayList<>(client.keySet());
+		assertEquals(ENTRIES, keys.size());
+		assertEquals(entries.keySet(), new HashSet<>(keys));
+		assertEquals(new HashSet<>(entries.values()), new HashSet<>(client.values()));
+		assertEquals(entries.entrySet(), new HashSet<>(client.entrySet()));
+		assertTrue(client.entrySet().contains(new SimpleImmutableEntry<>("key5", "value5")));
+		assertFalse(client.entrySet().contains(new SimpleImmutableEntry<>("key5", "value6")));
+		assertTrue(client.keySet().contains("key5"));
+
+		// partitions are visited one after the other
+		int partition = 0;
+		for (String key : keys) {
+			int keyPartition = Partitions.partition(key, PARTITIONS);
+			assertTrue(keyPartition >= partition);
+			partition = keyPartition;
+		}
+	}
+
+	@Test
+	public void rejectsNullKeys() {
+		expectNullPointer(() -> client.get(null));
+		expectNullPointer(() -> client.put(null, "value"));
+		expectNullPointer(() -> client.containsKey(null));
+		expectNullPointer(() -> client.partitionOf(null));
+		expectNullPointer(() -> client.getAll(asList("key", null)));
+		Map<String, String> withNull = new HashMap<>();
+		withNull.put(null, "value");
+		expectNullPointer(() -> client.putAll(withNull));
+		assertTrue(client.isEmpty());
+	}
+
+	private static void expectNullPointer(Runnable operation) {
+		try {
+			operation.run();
+			fail("expected NullPointerException");
+		}
+		catch (NullPointerException e) {
+			assertEquals("a partitioned map does not support null keys", e.getMessage());
+		}
+	}
+}
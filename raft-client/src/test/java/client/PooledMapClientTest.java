@@ -0,0 +1,77 @@
+package client;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.client.CopycatClient;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import serialization.MapSerialization;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PooledMapClientTest {
+
+	private static final int POOL_SIZE = 4;
+
+	private static final List<CopycatClient> created = new CopyOnWriteArrayList<>();
+	private static PooledMapClient<String, String> pool;
+
+	@BeforeClass
+	public static void connect() {
+		pool = new PooledMapClient<>(POOL_SIZE, () -> {
+			CopycatClient copycatClient = CopycatClient.builder()
+					.withTransport(NettyTransport.builder().withThreads(1).build()).build();
+			copycatClient.serializer().resolve(new MapSerialization());
+			created.add(copycatClient);
+			return copycatClient;
+		}, asList(new Address("localhost", 5001), new Address("localhost", 5099)));
+	}
+
+	@AfterClass
+	public static void close() {
+		if (pool != null) {
+			pool.close().join();
+		}
+	}
+
+	@Before
+	public void setup() {
+		pool.clear();
+	}
+
+	@Test
+	public void operations() {
+		Map<String, String> entries = new HashMap<>();
+		for (int i = 0; i < 100; i++) {
+			entries.put("key" + i, "value" + i);
+		}
+		pool.putAll(entries);
+		assertEquals(100, pool.size());
+		assertEquals(entries, pool.getAll(entries.keySet()));
+		assertEquals("value7", pool.put("key7", "new"));
+		assertEquals("new", pool.putIfAbsent("key7", "newer"));
+		assertSame(pool.sessionOf("key7"), pool.sessionOf("key7"));
+	}
+
+	@Test
+	public void replacesClosedSession() throws Exception {
+		created.get(0).close().join();
+		for (int i = 0; i < 100; i++) {
+			assertNull(pool.put("key" + i, "value" + i));
+		}
+		assertEquals(100, pool.size());
+		assertEquals(POOL_SIZE + 1, created.size());
+	}
+}
@@ -0,0 +1,35 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import io.atomix.copycat.Command;
+import java.util.ArrayList;
+import java.util.List;
+import statemachine.BatchCommand;
+
+/**
+ * Writes the commands of a batch with their own type IDs, so a batch costs a few bytes more than the sum of its commands.
+ */
+public class BatchCommandSerializer implements TypeSerializer<BatchCommand> {
+
+	@Override
+	public void write(BatchCommand batch, BufferOutput buffer, Serializer serializer) {
+		List<Command<?>> commands = batch.commands();
+		buffer.writeInt(commands.size());
+		for (Command<?> command : commands) {
+			serializer.writeObject(command, buffer);
+		}
+	}
+
+	@Override
+	public BatchCommand read(Class<BatchCommand> type, BufferInput buffer, Serializer serializer) {
+		int size = buffer.readInt();
+		List<Command<?>> commands = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			commands.add(serializer.readObject(buffer));
+		}
+		return new BatchCommand(commands);
+	}
+}
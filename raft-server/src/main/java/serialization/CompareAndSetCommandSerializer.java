@@ -0,0 +1,25 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.CompareAndSetCommand;
+
+public class CompareAndSetCommandSerializer implements TypeSerializer<CompareAndSetCommand<?, ?>> {
+
+	@Override
+	public void write(CompareAndSetCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Values.write(command.key(), buffer, serializer);
+		Values.write(command.expect(), buffer, serializer);
+		Values.write(command.update(), buffer, serializer);
+	}
+
+	@Override
+	public CompareAndSetCommand<?, ?> read(Class<CompareAndSetCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		Object expect = Values.read(buffer, serializer);
+		Object update = Values.read(buffer, serializer);
+		return new CompareAndSetCommand<>(key, expect, update);
+	}
+}
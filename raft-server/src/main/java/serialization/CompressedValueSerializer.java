@@ -0,0 +1,24 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.CompressedValue;
+
+/*
+ * For compressed values that are serialized on their own, such as the result of a get. Inside commands and snapshots, Values writes
+ * them behind its own tag.
+ */
+public class CompressedValueSerializer implements TypeSerializer<CompressedValue> {
+
+	@Override
+	public void write(CompressedValue value, BufferOutput buffer, Serializer serializer) {
+		buffer.writeBoolean(value.isString()).writeInt(value.length()).writeInt(value.data().length).write(value.data());
+	}
+
+	@Override
+	public CompressedValue read(Class<CompressedValue> type, BufferInput buffer, Serializer serializer) {
+		return Values.readCompressed(buffer.readBoolean(), buffer);
+	}
+}
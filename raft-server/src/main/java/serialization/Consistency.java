@@ -0,0 +1,23 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.copycat.Query.ConsistencyLevel;
+
+/**
+ * Writes and reads the consistency level of a query as a single byte. A {@code null} level stands for the Copycat default.
+ */
+abstract class Consistency {
+
+	private static final ConsistencyLevel[] LEVELS = ConsistencyLevel.values();
+	private static final byte DEFAULT = -1;
+
+	static void write(ConsistencyLevel consistency, BufferOutput<?> buffer) {
+		buffer.writeByte(consistency == null ? DEFAULT : consistency.ordinal());
+	}
+
+	static ConsistencyLevel read(BufferInput<?> buffer) {
+		int ordinal = buffer.readByte();
+		return ordinal == DEFAULT ? null : LEVELS[ordinal];
+	}
+}
@@ -0,0 +1,22 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.ContainsKeyQuery;
+
+public class ContainsKeyQuerySerializer implements TypeSerializer<ContainsKeyQuery> {
+
+	@Override
+	public void write(ContainsKeyQuery query, BufferOutput buffer, Serializer serializer) {
+		Values.write(query.key(), buffer, serializer);
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public ContainsKeyQuery read(Class<ContainsKeyQuery> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		return new ContainsKeyQuery(key, Consistency.read(buffer));
+	}
+}
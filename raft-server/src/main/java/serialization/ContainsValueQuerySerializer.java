@@ -0,0 +1,22 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.ContainsValueQuery;
+
+public class ContainsValueQuerySerializer implements TypeSerializer<ContainsValueQuery> {
+
+	@Override
+	public void write(ContainsValueQuery query, BufferOutput buffer, Serializer serializer) {
+		Values.write(query.value(), buffer, serializer);
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public ContainsValueQuery read(Class<ContainsValueQuery> type, BufferInput buffer, Serializer serializer) {
+		Object value = Values.read(buffer, serializer);
+		return new ContainsValueQuery(value, Consistency.read(buffer));
+	}
+}
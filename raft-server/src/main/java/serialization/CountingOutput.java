@@ -0,0 +1,165 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.buffer.Bytes;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Passes all writes on to another output and counts the bytes written. Copycat's {@code SnapshotWriter} does not tell its position, so
+ * this is how the size of a snapshot is measured. Strings are counted as Catalyst's buffers write them: a null flag, a two-byte length
+ * and the encoded bytes.
+ */
+public final class CountingOutput implements BufferOutput<CountingOutput> {
+
+	private final BufferOutput<?> output;
+	private long count;
+
+	public CountingOutput(BufferOutput<?> output) {
+		this.output = output;
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long count() {
+		return count;
+	}
+
+	private CountingOutput add(long bytes) {
+		count += bytes;
+		return this;
+	}
+
+	@Override
+	public CountingOutput write(Bytes bytes) {
+		output.write(bytes);
+		return add(bytes.size());
+	}
+
+	@Override
+	public CountingOutput write(byte[] bytes) {
+		output.write(bytes);
+		return add(bytes.length);
+	}
+
+	@Override
+	public CountingOutput write(Bytes bytes, long offset, long length) {
+		output.write(bytes, offset, length);
+		return add(length);
+	}
+
+	@Override
+	public CountingOutput write(byte[] bytes, long offset, long length) {
+		output.write(bytes, offset, length);
+		return add(length);
+	}
+
+	@Override
+	public CountingOutput write(Buffer buffer) {
+		long remaining = buffer.remaining();
+		output.write(buffer);
+		return add(remaining);
+	}
+
+	@Override
+	public CountingOutput writeByte(int b) {
+		output.writeByte(b);
+		return add(Byte.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeUnsignedByte(int b) {
+		output.writeUnsignedByte(b);
+		return add(Byte.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeChar(char c) {
+		output.writeChar(c);
+		return add(Character.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeShort(short s) {
+		output.writeShort(s);
+		return add(Short.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeUnsignedShort(int s) {
+		output.writeUnsignedShort(s);
+		return add(Short.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeMedium(int m) {
+		output.writeMedium(m);
+		return add(3);
+	}
+
+	@Override
+	public CountingOutput writeUnsignedMedium(int m) {
+		output.writeUnsignedMedium(m);
+		return add(3);
+	}
+
+	@Override
+	public CountingOutput writeInt(int i) {
+		output.writeInt(i);
+		return add(Integer.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeUnsignedInt(long i) {
+		output.writeUnsignedInt(i);
+		return add(Integer.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeLong(long l) {
+		output.writeLong(l);
+		return add(Long.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeFloat(float f) {
+		output.writeFloat(f);
+		return add(Float.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeDouble(double d) {
+		output.writeDouble(d);
+		return add(Double.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeBoolean(boolean b) {
+		output.writeBoolean(b);
+		return add(Byte.BYTES);
+	}
+
+	@Override
+	public CountingOutput writeString(String s) {
+		output.writeString(s);
+		return add(s == null ? 1 : 1 + Short.BYTES + s.getBytes().length);
+	}
+
+	@Override
+	public CountingOutput writeUTF8(String s) {
+		output.writeUTF8(s);
+		return add(s == null ? 1 : 1 + Short.BYTES + s.getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	@Override
+	public CountingOutput flush() {
+		output.flush();
+		return this;
+	}
+
+	@Override
+	public void close() {
+		output.close();
+	}
+}
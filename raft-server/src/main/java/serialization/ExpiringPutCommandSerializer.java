@@ -0,0 +1,24 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.ExpiringPutCommand;
+
+public class ExpiringPutCommandSerializer implements TypeSerializer<ExpiringPutCommand<?, ?>> {
+
+	@Override
+	public void write(ExpiringPutCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Values.write(command.key(), buffer, serializer);
+		Values.write(command.value(), buffer, serializer);
+		buffer.writeLong(command.ttlMillis());
+	}
+
+	@Override
+	public ExpiringPutCommand<?, ?> read(Class<ExpiringPutCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		Object value = Values.read(buffer, serializer);
+		return new ExpiringPutCommand<>(key, value, buffer.readLong());
+	}
+}
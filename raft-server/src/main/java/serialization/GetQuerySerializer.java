@@ -0,0 +1,22 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.GetQuery;
+
+public class GetQuerySerializer implements TypeSerializer<GetQuery<?>> {
+
+	@Override
+	public void write(GetQuery<?> query, BufferOutput buffer, Serializer serializer) {
+		Values.write(query.key(), buffer, serializer);
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public GetQuery<?> read(Class<GetQuery<?>> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		return new GetQuery<>(key, Consistency.read(buffer));
+	}
+}
@@ -0,0 +1,34 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import java.util.Map.Entry;
+import util.HashTrieMap;
+
+/**
+ * Writes the size as an int, so unlike the Catalyst map serializer this is not limited to 65535 entries. A map is read back as a
+ * mutable {@code HashTrieMap}.
+ */
+public class HashTrieMapSerializer implements TypeSerializer<HashTrieMap<?, ?>> {
+
+	@Override
+	public void write(HashTrieMap<?, ?> map, BufferOutput buffer, Serializer serializer) {
+		buffer.writeInt(map.size());
+		for (Entry<?, ?> entry : map.entrySet()) {
+			Values.write(entry.getKey(), buffer, serializer);
+			Values.write(entry.getValue(), buffer, serializer);
+		}
+	}
+
+	@Override
+	public HashTrieMap<?, ?> read(Class<HashTrieMap<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		HashTrieMap<Object, Object> map = new HashTrieMap<>();
+		for (int n = buffer.readInt(); n > 0; n--) {
+			Object key = Values.read(buffer, serializer);
+			map.put(key, Values.read(buffer, serializer));
+		}
+		return map;
+	}
+}
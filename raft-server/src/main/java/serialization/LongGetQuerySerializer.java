@@ -0,0 +1,22 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.LongGetQuery;
+
+public class LongGetQuerySerializer implements TypeSerializer<LongGetQuery<?>> {
+
+	@Override
+	public void write(LongGetQuery<?> query, BufferOutput buffer, Serializer serializer) {
+		buffer.writeLong(query.key());
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public LongGetQuery<?> read(Class<LongGetQuery<?>> type, BufferInput buffer, Serializer serializer) {
+		long key = buffer.readLong();
+		return new LongGetQuery<>(key, Consistency.read(buffer));
+	}
+}
@@ -0,0 +1,22 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.LongPutCommand;
+
+public class LongPutCommandSerializer implements TypeSerializer<LongPutCommand<?>> {
+
+	@Override
+	public void write(LongPutCommand<?> command, BufferOutput buffer, Serializer serializer) {
+		buffer.writeLong(command.key());
+		Values.write(command.value(), buffer, serializer);
+	}
+
+	@Override
+	public LongPutCommand<?> read(Class<LongPutCommand<?>> type, BufferInput buffer, Serializer serializer) {
+		long key = buffer.readLong();
+		return new LongPutCommand<>(key, Values.read(buffer, serializer));
+	}
+}
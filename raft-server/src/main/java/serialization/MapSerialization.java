@@ -0,0 +1,96 @@
+package serialization;
+
+import io.atomix.catalyst.serializer.SerializableTypeResolver;
+import io.atomix.catalyst.serializer.SerializerRegistry;
+import statemachine.BatchCommand;
+import statemachine.ClearCommand;
+import statemachine.CompareAndSetCommand;
+import statemachine.CompressedValue;
+import statemachine.ContainsKeyQuery;
+import statemachine.ContainsValueQuery;
+import statemachine.ExpiringPutCommand;
+import statemachine.GetQuery;
+import statemachine.LongGetQuery;
+import statemachine.LongPutCommand;
+import statemachine.MultiGetQuery;
+import statemachine.PutAllCommand;
+import statemachine.PutCommand;
+import statemachine.PutIfAbsentCommand;
+import statemachine.RemoveCommand;
+import statemachine.ReplaceCommand;
+import statemachine.ScanPage;
+import statemachine.ScanQuery;
+import statemachine.SizeQuery;
+import statemachine.SnapshotQuery;
+import statemachine.Stats;
+import statemachine.StatsQuery;
+import statemachine.SubscribeCommand;
+import util.HashTrieMap;
+
+/**
+ * Registers binary serializers with fixed type IDs for all map state machine operations. Clients and servers must resolve the
+ * same types with the same IDs, so always register them through this class:
+ * <pre>
+ * server.serializer().resolve(new MapSerialization());
+ * </pre>
+ * Without a registered serializer, Catalyst falls back to Java serialization, which writes a class descriptor into every log entry.
+ * <p>
+ * Catalyst reserves the IDs 128 and upwards for JDK and primitive types, and Copycat uses negative IDs for its protocol types.
+ * Our IDs therefore live in the range 1..127, which also keeps the type header at two bytes.
+ * @author Initial author: Sebastian Millies
+ */
+public final class MapSerialization implements SerializableTypeResolver {
+
+	public static final int PUT_COMMAND = 1;
+	public static final int GET_QUERY = 2;
+	public static final int CLEAR_COMMAND = 3;
+	public static final int SIZE_QUERY = 4;
+	public static final int SNAPSHOT_QUERY = 5;
+	public static final int PUT_ALL_COMMAND = 6;
+	public static final int MULTI_GET_QUERY = 7;
+	public static final int BATCH_COMMAND = 8;
+	public static final int SUBSCRIBE_COMMAND = 9;
+	public static final int SCAN_QUERY = 10;
+	public static final int SCAN_PAGE = 11;
+	public static final int LONG_PUT_COMMAND = 12;
+	public static final int LONG_GET_QUERY = 13;
+	public static final int HASH_TRIE_MAP = 14;
+	public static final int REMOVE_COMMAND = 15;
+	public static final int PUT_IF_ABSENT_COMMAND = 16;
+	public static final int REPLACE_COMMAND = 17;
+	public static final int COMPARE_AND_SET_COMMAND = 18;
+	public static final int CONTAINS_KEY_QUERY = 19;
+	public static final int CONTAINS_VALUE_QUERY = 20;
+	public static final int STATS_QUERY = 21;
+	public static final int STATS = 22;
+	public static final int COMPRESSED_VALUE = 23;
+	public static final int EXPIRING_PUT_COMMAND = 24;
+
+	@Override
+	public void resolve(SerializerRegistry registry) {
+		registry.register(PutCommand.class, PUT_COMMAND, PutCommandSerializer.class);
+		registry.register(GetQuery.class, GET_QUERY, GetQuerySerializer.class);
+		registry.register(ClearCommand.class, CLEAR_COMMAND, NoArgsSerializer.class);
+		registry.register(SizeQuery.class, SIZE_QUERY, SizeQuerySerializer.class);
+		registry.register(SnapshotQuery.class, SNAPSHOT_QUERY, NoArgsSerializer.class);
+		registry.register(PutAllCommand.class, PUT_ALL_COMMAND, PutAllCommandSerializer.class);
+		registry.register(MultiGetQuery.class, MULTI_GET_QUERY, MultiGetQuerySerializer.class);
+		registry.register(BatchCommand.class, BATCH_COMMAND, BatchCommandSerializer.class);
+		registry.register(SubscribeCommand.class, SUBSCRIBE_COMMAND, NoArgsSerializer.class);
+		registry.register(ScanQuery.class, SCAN_QUERY, ScanQuerySerializer.class);
+		registry.register(ScanPage.class, SCAN_PAGE, ScanPageSerializer.class);
+		registry.register(LongPutCommand.class, LONG_PUT_COMMAND, LongPutCommandSerializer.class);
+		registry.register(LongGetQuery.class, LONG_GET_QUERY, LongGetQuerySerializer.class);
+		registry.register(HashTrieMap.class, HASH_TRIE_MAP, HashTrieMapSerializer.class);
+		registry.register(RemoveCommand.class, REMOVE_COMMAND, RemoveCommandSerializer.class);
+		registry.register(PutIfAbsentCommand.class, PUT_IF_ABSENT_COMMAND, PutIfAbsentCommandSerializer.class);
+		registry.register(ReplaceCommand.class, REPLACE_COMMAND, ReplaceCommandSerializer.class);
+		registry.register(CompareAndSetCommand.class, COMPARE_AND_SET_COMMAND, CompareAndSetCommandSerializer.class);
+		registry.register(ContainsKeyQuery.class, CONTAINS_KEY_QUERY, ContainsKeyQuerySerializer.class);
+		registry.register(ContainsValueQuery.class, CONTAINS_VALUE_QUERY, ContainsValueQuerySerializer.class);
+		registry.register(StatsQuery.class, STATS_QUERY, NoArgsSerializer.class);
+		registry.register(Stats.class, STATS, StatsSerializer.class);
+		registry.register(CompressedValue.class, COMPRESSED_VALUE, CompressedValueSerializer.class);
+		registry.register(ExpiringPutCommand.class, EXPIRING_PUT_COMMAND, ExpiringPutCommandSerializer.class);
+	}
+}
@@ -0,0 +1,33 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import statemachine.MultiGetQuery;
+
+public class MultiGetQuerySerializer implements TypeSerializer<MultiGetQuery<?, ?>> {
+
+	@Override
+	public void write(MultiGetQuery<?, ?> query, BufferOutput buffer, Serializer serializer) {
+		Collection<?> keys = query.keys();
+		buffer.writeInt(keys.size());
+		for (Object key : keys) {
+			Values.write(key, buffer, serializer);
+		}
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public MultiGetQuery<?, ?> read(Class<MultiGetQuery<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		int size = buffer.readInt();
+		List<Object> keys = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			keys.add(Values.read(buffer, serializer));
+		}
+		return new MultiGetQuery<>(keys, Consistency.read(buffer));
+	}
+}
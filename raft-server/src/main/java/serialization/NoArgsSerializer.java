@@ -0,0 +1,27 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.SerializationException;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+
+/**
+ * Serializer for operations without state, such as {@code ClearCommand} or {@code SizeQuery}. Only the type ID goes over the wire.
+ */
+public class NoArgsSerializer implements TypeSerializer<Object> {
+
+	@Override
+	public void write(Object operation, BufferOutput buffer, Serializer serializer) {
+	}
+
+	@Override
+	public Object read(Class<Object> type, BufferInput buffer, Serializer serializer) {
+		try {
+			return type.getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new SerializationException("failed to instantiate " + type, e);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import java.util.HashMap;
+import java.util.Map;
+import statemachine.PutAllCommand;
+
+public class PutAllCommandSerializer implements TypeSerializer<PutAllCommand<?, ?>> {
+
+	@Override
+	public void write(PutAllCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Map<?, ?> entries = command.entries();
+		buffer.writeInt(entries.size());
+		for (Map.Entry<?, ?> entry : entries.entrySet()) {
+			Values.write(entry.getKey(), buffer, serializer);
+			Values.write(entry.getValue(), buffer, serializer);
+		}
+	}
+
+	@Override
+	public PutAllCommand<?, ?> read(Class<PutAllCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		int size = buffer.readInt();
+		Map<Object, Object> entries = new HashMap<>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			Object key = Values.read(buffer, serializer);
+			entries.put(key, Values.read(buffer, serializer));
+		}
+		return new PutAllCommand<>(entries);
+	}
+}
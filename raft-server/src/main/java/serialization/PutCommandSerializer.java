@@ -0,0 +1,23 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.PutCommand;
+
+public class PutCommandSerializer implements TypeSerializer<PutCommand<?, ?>> {
+
+	@Override
+	public void write(PutCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Values.write(command.key(), buffer, serializer);
+		Values.write(command.value(), buffer, serializer);
+	}
+
+	@Override
+	public PutCommand<?, ?> read(Class<PutCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		Object value = Values.read(buffer, serializer);
+		return new PutCommand<>(key, value);
+	}
+}
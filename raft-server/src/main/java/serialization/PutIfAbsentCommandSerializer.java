@@ -0,0 +1,23 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.PutIfAbsentCommand;
+
+public class PutIfAbsentCommandSerializer implements TypeSerializer<PutIfAbsentCommand<?, ?>> {
+
+	@Override
+	public void write(PutIfAbsentCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Values.write(command.key(), buffer, serializer);
+		Values.write(command.value(), buffer, serializer);
+	}
+
+	@Override
+	public PutIfAbsentCommand<?, ?> read(Class<PutIfAbsentCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		Object value = Values.read(buffer, serializer);
+		return new PutIfAbsentCommand<>(key, value);
+	}
+}
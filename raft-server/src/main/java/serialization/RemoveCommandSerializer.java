@@ -0,0 +1,20 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.RemoveCommand;
+
+public class RemoveCommandSerializer implements TypeSerializer<RemoveCommand<?, ?>> {
+
+	@Override
+	public void write(RemoveCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Values.write(command.key(), buffer, serializer);
+	}
+
+	@Override
+	public RemoveCommand<?, ?> read(Class<RemoveCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		return new RemoveCommand<>(Values.read(buffer, serializer));
+	}
+}
@@ -0,0 +1,23 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.ReplaceCommand;
+
+public class ReplaceCommandSerializer implements TypeSerializer<ReplaceCommand<?, ?>> {
+
+	@Override
+	public void write(ReplaceCommand<?, ?> command, BufferOutput buffer, Serializer serializer) {
+		Values.write(command.key(), buffer, serializer);
+		Values.write(command.value(), buffer, serializer);
+	}
+
+	@Override
+	public ReplaceCommand<?, ?> read(Class<ReplaceCommand<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		Object key = Values.read(buffer, serializer);
+		Object value = Values.read(buffer, serializer);
+		return new ReplaceCommand<>(key, value);
+	}
+}
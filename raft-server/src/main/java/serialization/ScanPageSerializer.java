@@ -0,0 +1,48 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import statemachine.ScanPage;
+import statemachine.ScanQuery.Projection;
+
+/**
+ * Writes only the projected half of each entry.
+ */
+public class ScanPageSerializer implements TypeSerializer<ScanPage<?, ?>> {
+
+	@Override
+	public void write(ScanPage<?, ?> page, BufferOutput buffer, Serializer serializer) {
+		Projection projection = page.projection();
+		buffer.writeLong(page.next());
+		buffer.writeByte(projection.ordinal());
+		buffer.writeInt(page.entries().size());
+		for (Entry<?, ?> entry : page.entries()) {
+			if (projection != Projection.VALUES) {
+				Values.write(entry.getKey(), buffer, serializer);
+			}
+			if (projection != Projection.KEYS) {
+				Values.write(entry.getValue(), buffer, serializer);
+			}
+		}
+	}
+
+	@Override
+	public ScanPage<?, ?> read(Class<ScanPage<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		long next = buffer.readLong();
+		Projection projection = ScanQuerySerializer.PROJECTIONS[buffer.readByte()];
+		int size = buffer.readInt();
+		List<Entry<Object, Object>> entries = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Object key = projection != Projection.VALUES ? Values.read(buffer, serializer) : null;
+			Object value = projection != Projection.KEYS ? Values.read(buffer, serializer) : null;
+			entries.add(new SimpleImmutableEntry<>(key, value));
+		}
+		return new ScanPage<>(entries, next, projection);
+	}
+}
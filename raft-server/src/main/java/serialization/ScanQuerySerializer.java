@@ -0,0 +1,32 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.ScanQuery;
+import statemachine.ScanQuery.Projection;
+
+/**
+ * Writes the projection as a single byte.
+ */
+public class ScanQuerySerializer implements TypeSerializer<ScanQuery<?, ?>> {
+
+	static final Projection[] PROJECTIONS = Projection.values();
+
+	@Override
+	public void write(ScanQuery<?, ?> query, BufferOutput buffer, Serializer serializer) {
+		buffer.writeLong(query.cursor());
+		buffer.writeInt(query.pageSize());
+		buffer.writeByte(query.projection().ordinal());
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public ScanQuery<?, ?> read(Class<ScanQuery<?, ?>> type, BufferInput buffer, Serializer serializer) {
+		long cursor = buffer.readLong();
+		int pageSize = buffer.readInt();
+		Projection projection = PROJECTIONS[buffer.readByte()];
+		return new ScanQuery<>(cursor, pageSize, projection, Consistency.read(buffer));
+	}
+}
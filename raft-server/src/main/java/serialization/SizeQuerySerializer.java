@@ -0,0 +1,20 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import statemachine.SizeQuery;
+
+public class SizeQuerySerializer implements TypeSerializer<SizeQuery> {
+
+	@Override
+	public void write(SizeQuery query, BufferOutput buffer, Serializer serializer) {
+		Consistency.write(query.consistency(), buffer);
+	}
+
+	@Override
+	public SizeQuery read(Class<SizeQuery> type, BufferInput buffer, Serializer serializer) {
+		return new SizeQuery(Consistency.read(buffer));
+	}
+}
@@ -0,0 +1,319 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.ObjLongConsumer;
+import statemachine.OffHeapStore;
+import util.LongObjectMap;
+import util.Lzf;
+
+/**
+ * Writes and reads the entries of a map snapshot one record at a time, straight to and from the snapshot buffer. Unlike
+ * {@code writeObject(map)}, this needs no intermediate encoding of the whole map, and the map that is read back is pre-sized from the
+ * entry count, so it is never rehashed.
+ * <p>
+ * Layout: magic number, format version, entry count, then the records in blocks. A record is the key followed by the value, each
+ * written by {@link Values}, which length-prefixes strings and byte arrays. A block holds the records that fill about
+ * {@value #BLOCK_SIZE} bytes, behind its record count, its length and its stored length. If the stored length is smaller, the block is
+ * compressed with {@link Lzf}. A block is only compressed if that makes it smaller, and only if the writer has been asked to compress
+ * at all. Every block can be decoded on its own, so a snapshot can be decoded in parallel.
+ * <p>
+ * The records are followed by the expiry section: the number of keys with an expiry time, then their records in blocks of the same
+ * kind. Such a record is the key followed by the expiry time as a long, and the records are in the order of recency that decides
+ * eviction. Version 2 snapshots, which have no expiry section, and version 1 snapshots, which also have the records without blocks, can
+ * still be read.
+ * <p>
+ * Snapshots of a {@link LongObjectMap} have their own magic number, write each key as a plain long, and have no blocks.
+ * @author Initial author: Sebastian Millies
+ */
+public abstract class SnapshotFormat {
+
+	public static final int MAGIC = 0x4D415053; // "MAPS"
+	public static final int LONG_MAGIC = 0x4C4D4150; // "LMAP"
+	public static final int VERSION = 3;
+	public static final int LONG_VERSION = 1;
+
+	/** The number of record bytes after which a block is closed. A block is larger if its last record crosses the limit. */
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	private static final int UNBLOCKED_VERSION = 1;
+	private static final int UNEXPIRING_VERSION = 2;
+
+	public static void writeEntries(Map<?, ?> map, BufferOutput<?> buffer, Serializer serializer) {
+		writeEntries(map, buffer, serializer, false);
+	}
+
+	/**
+	 * @param compress whether to compress the blocks
+	 */
+	public static void writeEntries(Map<?, ?> map, BufferOutput<?> buffer, Serializer serializer, boolean compress) {
+		writeEntries(map, Collections.emptyMap(), buffer, serializer, compress);
+	}
+
+	/**
+	 * @param expiries the expiry times of keys, in the order in which they are to be read back
+	 * @param compress whether to compress the blocks
+	 */
+	public static void writeEntries(Map<?, ?> map, Map<?, Long> expiries, BufferOutput<?> buffer, Serializer serializer,
+			boolean compress) {
+		buffer.writeInt(MAGIC).writeInt(VERSION).writeInt(map.size());
+		Blocks blocks = new Blocks(buffer, compress);
+		if (map instanceof OffHeapStore) { // records are stored in snapshot format already
+			((OffHeapStore<?, ?>) map).writeRecords(blocks);
+		}
+		else {
+			for (Entry<?, ?> entry : map.entrySet()) {
+				Values.write(entry.getKey(), blocks.output(), serializer);
+				Values.write(entry.getValue(), blocks.output(), serializer);
+				blocks.recordWritten();
+			}
+		}
+		blocks.flush();
+
+		buffer.writeInt(expiries.size());
+		for (Entry<?, Long> entry : expiries.entrySet()) {
+			Values.write(entry.getKey(), blocks.output(), serializer);
+			blocks.output().writeLong(entry.getValue());
+			blocks.recordWritten();
+		}
+		blocks.flush();
+	}
+
+	/**
+	 * @throws IllegalStateException if the buffer does not start with a snapshot of a supported version
+	 */
+	public static <K, V> Map<K, V> readEntries(BufferInput<?> buffer, Serializer serializer) {
+		return readEntries(buffer, serializer, size -> new HashMap<>(size * 4 / 3 + 1));
+	}
+
+	/**
+	 * @param mapFactory creates the map to read into, given the entry count
+	 * @throws IllegalStateException if the buffer does not start with a snapshot of a supported version
+	 */
+	public static <K, V> Map<K, V> readEntries(BufferInput<?> buffer, Serializer serializer, IntFunction<Map<K, V>> mapFactory) {
+		return readEntries(buffer, serializer, mapFactory, null);
+	}
+
+	/**
+	 * Reads a snapshot and decodes its blocks in parallel. The calling thread reads the blocks from the buffer and hands them to the pool,
+	 * which decompresses and deserializes them, while the calling thread puts the decoded entries into the map in snapshot order. The
+	 * map therefore need not be thread-safe. Without a pool, or with a pool of one thread, the snapshot is read on the calling thread.
+	 * @param mapFactory creates the map to read into, given the entry count
+	 * @param pool decodes the blocks, or {@code null}
+	 * @throws IllegalStateException if the buffer does not start with a snapshot of a supported version
+	 */
+	public static <K, V> Map<K, V> readEntries(BufferInput<?> buffer, Serializer serializer, IntFunction<Map<K, V>> mapFactory,
+			ForkJoinPool pool) {
+		return readEntries(buffer, serializer, mapFactory, pool, null);
+	}
+
+	/**
+	 * Reads a snapshot like {@link #readEntries(BufferInput, Serializer, IntFunction, ForkJoinPool)}, and then its expiry section.
+	 * @param expiries receives the expiry times in the order in which they have been written, or {@code null} to skip them. Snapshots
+	 *        of older versions have none.
+	 * @throws IllegalStateException if the buffer does not start with a snapshot of a supported version
+	 */
+	public static <K, V> Map<K, V> readEntries(BufferInput<?> buffer, Serializer serializer, IntFunction<Map<K, V>> mapFactory,
+			ForkJoinPool pool, ObjLongConsumer<K> expiries) {
+		int version = readVersion(MAGIC, buffer);
+		if (version != VERSION && version != UNEXPIRING_VERSION && version != UNBLOCKED_VERSION) {
+			throw new IllegalStateException("Unsupported snapshot version " + version);
+		}
+		int size = buffer.readInt();
+		Map<K, V> map = mapFactory.apply(size);
+		if (version == UNBLOCKED_VERSION) {
+			readRecords(size, buffer, serializer, map);
+		}
+		else if (pool == null || pool.getParallelism() < 2) {
+			for (int read = 0; read < size;) {
+				int records = buffer.readInt();
+				readRecords(records, readBlock(buffer), serializer, map);
+				read += records;
+			}
+		}
+		else {
+			readBlocks(size, buffer, serializer, map, pool);
+		}
+		if (version == VERSION) {
+			readExpiries(buffer, serializer, expiries);
+		}
+		return map;
+	}
+
+	private static <K> void readExpiries(BufferInput<?> buffer, Serializer serializer, ObjLongConsumer<K> expiries) {
+		int size = buffer.readInt();
+		for (int read = 0; read < size;) {
+			int records = buffer.readInt();
+			HeapBuffer block = readBlock(buffer);
+			for (int i = 0; i < records; i++) {
+				K key = Values.read(block, serializer);
+				long expiresAt = block.readLong();
+				if (expiries != null) {
+					expiries.accept(key, expiresAt);
+				}
+			}
+			read += records;
+		}
+	}
+
+	private static HeapBuffer readBlock(BufferInput<?> buffer) {
+		int length = buffer.readInt();
+		byte[] block = new byte[buffer.readInt()];
+		buffer.read(block);
+		return HeapBuffer.wrap(block.length < length ? Lzf.decompress(block, length) : block);
+	}
+
+	private static <K, V> void readRecords(int records, BufferInput<?> buffer, Serializer serializer, Map<K, V> map) {
+		for (int i = 0; i < records; i++) {
+			K key = Values.read(buffer, serializer);
+			map.put(key, Values.read(buffer, serializer));
+		}
+	}
+
+	/*
+	 * At most two blocks per thread of the pool are decoded or waiting to be put at any time, which bounds the memory for decoded entries.
+	 * A Catalyst serializer caches type serializers in plain maps, so every decoding task borrows a copy of its own.
+	 */
+	private static <K, V> void readBlocks(int size, BufferInput<?> buffer, Serializer serializer, Map<K, V> map, ForkJoinPool pool) {
+		int window = 2 * pool.getParallelism();
+		BlockingQueue<Serializer> serializers = new ArrayBlockingQueue<>(window);
+		for (int i = 0; i < window; i++) {
+			serializers.add(serializer.clone());
+		}
+		Deque<ForkJoinTask<Object[]>> decoding = new ArrayDeque<>(window);
+		for (int read = 0; read < size;) {
+			int records = buffer.readInt();
+			int length = buffer.readInt();
+			byte[] block = new byte[buffer.readInt()];
+			buffer.read(block);
+			if (decoding.size() == window) {
+				put(decoding.poll().join(), map);
+			}
+			decoding.add(pool.submit(() -> decode(records, length, block, serializers)));
+			read += records;
+		}
+		while (!decoding.isEmpty()) {
+			put(decoding.poll().join(), map);
+		}
+	}
+
+	// returns keys and values in alternating order
+	private static Object[] decode(int records, int length, byte[] block, BlockingQueue<Serializer> serializers) {
+		Serializer serializer = serializers.poll();
+		try {
+			HeapBuffer buffer = HeapBuffer.wrap(block.length < length ? Lzf.decompress(block, length) : block);
+			Object[] entries = new Object[2 * records];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = Values.read(buffer, serializer);
+			}
+			return entries;
+		}
+		finally {
+			serializers.add(serializer);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K, V> void put(Object[] entries, Map<K, V> map) {
+		for (int i = 0; i < entries.length; i += 2) {
+			map.put((K) entries[i], (V) entries[i + 1]);
+		}
+	}
+
+	public static void writeLongEntries(LongObjectMap<?> map, BufferOutput<?> buffer, Serializer serializer) {
+		buffer.writeInt(LONG_MAGIC).writeInt(LONG_VERSION).writeInt(map.size());
+		map.forEach((key, value) -> Values.write(value, buffer.writeLong(key), serializer));
+	}
+
+	/**
+	 * @throws IllegalStateException if the buffer does not start with a snapshot of a supported version
+	 */
+	public static <V> LongObjectMap<V> readLongEntries(BufferInput<?> buffer, Serializer serializer) {
+		int version = readVersion(LONG_MAGIC, buffer);
+		if (version != LONG_VERSION) {
+			throw new IllegalStateException("Unsupported snapshot version " + version);
+		}
+		int size = buffer.readInt();
+		LongObjectMap<V> map = new LongObjectMap<>(size);
+		for (int i = 0; i < size; i++) {
+			long key = buffer.readLong();
+			map.put(key, Values.read(buffer, serializer));
+		}
+		return map;
+	}
+
+	private static int readVersion(int magic, BufferInput<?> buffer) {
+		if (buffer.readInt() != magic) {
+			throw new IllegalStateException("Not a map snapshot");
+		}
+		return buffer.readInt();
+	}
+
+	/**
+	 * Collects records into blocks and writes each full block to the snapshot. Write a record to {@link #output()}, then call
+	 * {@link #recordWritten()}.
+	 */
+	public static final class Blocks {
+
+		private final BufferOutput<?> buffer;
+		private final boolean compress;
+		private final HeapBuffer block = HeapBuffer.allocate(BLOCK_SIZE + BLOCK_SIZE / 4);
+		private byte[] compressed = new byte[0];
+		private int records;
+
+		private Blocks(BufferOutput<?> buffer, boolean compress) {
+			this.buffer = buffer;
+			this.compress = compress;
+		}
+
+		/**
+		 * @return where to write the key and value of the next record
+		 */
+		public BufferOutput<?> output() {
+			return block;
+		}
+
+		public void recordWritten() {
+			records++;
+			if (block.position() >= BLOCK_SIZE) {
+				flush();
+			}
+		}
+
+		private void flush() {
+			if (records == 0) {
+				return;
+			}
+			int length = (int) block.position();
+			byte[] bytes = block.array();
+			int stored = -1;
+			if (compress) {
+				if (compressed.length < length) {
+					compressed = new byte[length];
+				}
+				stored = Lzf.compress(bytes, 0, length, compressed, 0, length - 1);
+			}
+			if (stored < 0) {
+				buffer.writeInt(records).writeInt(length).writeInt(length).write(bytes, 0, length);
+			}
+			else {
+				buffer.writeInt(records).writeInt(length).writeInt(stored).write(compressed, 0, stored);
+			}
+			block.clear();
+			records = 0;
+		}
+	}
+}
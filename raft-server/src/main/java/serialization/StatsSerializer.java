@@ -0,0 +1,55 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.serializer.TypeSerializer;
+import java.util.ArrayList;
+import java.util.List;
+import statemachine.OperationStats;
+import statemachine.Stats;
+
+public class StatsSerializer implements TypeSerializer<Stats> {
+
+	@Override
+	public void write(Stats stats, BufferOutput buffer, Serializer serializer) {
+		buffer.writeInt(stats.size()).writeLong(stats.lastAppliedIndex()).writeLong(stats.estimatedBytes()).writeLong(stats.commits())
+				.writeLong(stats.commitsPerSecond());
+		write(stats.snapshotWrites(), buffer.writeLong(stats.lastSnapshotBytes()));
+		write(stats.snapshotInstalls(), buffer.writeLong(stats.lastInstallBytes()));
+		buffer.writeInt(stats.operations().size());
+		for (OperationStats operation : stats.operations()) {
+			write(operation, buffer);
+		}
+	}
+
+	private static void write(OperationStats stats, BufferOutput<?> buffer) {
+		buffer.writeUTF8(stats.getOperation()).writeLong(stats.getCount()).writeLong(stats.getMeanNanos()).writeLong(stats.getP50Nanos())
+				.writeLong(stats.getP99Nanos()).writeLong(stats.getMaxNanos());
+	}
+
+	@Override
+	public Stats read(Class<Stats> type, BufferInput buffer, Serializer serializer) {
+		int size = buffer.readInt();
+		long lastAppliedIndex = buffer.readLong();
+		long estimatedBytes = buffer.readLong();
+		long commits = buffer.readLong();
+		long commitsPerSecond = buffer.readLong();
+		long lastSnapshotBytes = buffer.readLong();
+		OperationStats snapshotWrites = read(buffer);
+		long lastInstallBytes = buffer.readLong();
+		OperationStats snapshotInstalls = read(buffer);
+		int count = buffer.readInt();
+		List<OperationStats> operations = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			operations.add(read(buffer));
+		}
+		return new Stats(size, lastAppliedIndex, estimatedBytes, commits, commitsPerSecond, snapshotWrites, lastSnapshotBytes,
+				snapshotInstalls, lastInstallBytes, operations);
+	}
+
+	private static OperationStats read(BufferInput<?> buffer) {
+		return new OperationStats(buffer.readUTF8(), buffer.readLong(), buffer.readLong(), buffer.readLong(), buffer.readLong(),
+				buffer.readLong());
+	}
+}
@@ -0,0 +1,88 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import java.nio.charset.StandardCharsets;
+import statemachine.CompressedValue;
+
+/**
+ * Writes and reads map keys and values. The common types {@code Long}, {@code String} and {@code byte[]} are written behind a
+ * one-byte tag, without going through the Catalyst type registry. All other types are delegated to the {@code Serializer}.
+ * Strings and byte arrays are length-prefixed, so there is no 64K limit as with {@code BufferOutput.writeUTF8}. A
+ * {@link CompressedValue} is written as the length of its original followed by its compressed bytes.
+ * @author Initial author: Sebastian Millies
+ */
+public abstract class Values {
+
+	private static final byte NULL = 0;
+	private static final byte LONG = 1;
+	private static final byte STRING = 2;
+	private static final byte BYTES = 3;
+	private static final byte COMPRESSED_STRING = 4;
+	private static final byte COMPRESSED_BYTES = 5;
+	private static final byte OBJECT = 127;
+
+	public static void write(Object value, BufferOutput<?> buffer, Serializer serializer) {
+		if (value == null) {
+			buffer.writeByte(NULL);
+		}
+		else if (value instanceof Long) {
+			buffer.writeByte(LONG).writeLong((Long) value);
+		}
+		else if (value instanceof String) {
+			writeBytes(((String) value).getBytes(StandardCharsets.UTF_8), buffer.writeByte(STRING));
+		}
+		else if (value instanceof byte[]) {
+			writeBytes((byte[]) value, buffer.writeByte(BYTES));
+		}
+		else if (value instanceof CompressedValue) {
+			CompressedValue compressed = (CompressedValue) value;
+			buffer.writeByte(compressed.isString() ? COMPRESSED_STRING : COMPRESSED_BYTES).writeInt(compressed.length());
+			writeBytes(compressed.data(), buffer);
+		}
+		else {
+			serializer.writeObject(value, buffer.writeByte(OBJECT));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> T read(BufferInput<?> buffer, Serializer serializer) {
+		int tag = buffer.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case LONG:
+			return (T) Long.valueOf(buffer.readLong());
+		case STRING:
+			return (T) new String(readBytes(buffer), StandardCharsets.UTF_8);
+		case BYTES:
+			return (T) readBytes(buffer);
+		case COMPRESSED_STRING:
+		case COMPRESSED_BYTES:
+			return (T) readCompressed(tag == COMPRESSED_STRING, buffer);
+		case OBJECT:
+			return serializer.readObject(buffer);
+		default:
+			throw new IllegalStateException("Unknown value tag " + tag);
+		}
+	}
+
+	/**
+	 * Reads the fields of a compressed value, as written behind its tag.
+	 */
+	public static CompressedValue readCompressed(boolean string, BufferInput<?> buffer) {
+		int length = buffer.readInt();
+		return new CompressedValue(string, length, readBytes(buffer));
+	}
+
+	private static void writeBytes(byte[] bytes, BufferOutput<?> buffer) {
+		buffer.writeInt(bytes.length).write(bytes);
+	}
+
+	private static byte[] readBytes(BufferInput<?> buffer) {
+		byte[] bytes = new byte[buffer.readInt()];
+		buffer.read(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,150 @@
+package server;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.server.CopycatServer;
+import io.atomix.copycat.server.StateMachine;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import serialization.MapSerialization;
+import statemachine.MapStateMachine;
+import util.FileUtils;
+
+/**
+ * A cluster of Copycat servers that run inside the current JVM, for benchmarks and tests that must not depend on servers started by
+ * hand. All servers are bootstrapped together with the full configuration, so the cluster is ready as soon as a leader has been elected.
+ * Every server has its own storage directory below a temporary directory, which is deleted when the cluster is stopped.
+ * <pre>
+ * LocalCluster cluster = LocalCluster.builder().withSize(3).withStorageLevel(StorageLevel.MEMORY).build();
+ * cluster.start().join();
+ * ... connect a client to cluster.addresses() ...
+ * cluster.stop().join();
+ * </pre>
+ * @author Initial author: Sebastian Millies
+ */
+public class LocalCluster {
+
+	private final List<Address> addresses;
+	private final List<CopycatServer> servers;
+	private final Path directory;
+
+	private LocalCluster(Builder builder) {
+		try {
+			this.directory = Files.createTempDirectory("raft-cluster");
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		List<Address> addresses = new ArrayList<>(builder.size);
+		List<CopycatServer> servers = new ArrayList<>(builder.size);
+		for (int i = 0; i < builder.size; i++) {
+			Address address = new Address(builder.host, builder.port + i);
+			Storage storage = Storage.builder().withDirectory(directory.resolve(address.host() + "_" + address.port() + "_logs").toFile())
+					.withStorageLevel(builder.storageLevel).build();
+			CopycatServer server = CopycatServer.builder(address).withStateMachine(builder.stateMachine).withStorage(storage).build();
+			server.serializer().resolve(new MapSerialization());
+			addresses.add(address);
+			servers.add(server);
+		}
+		this.addresses = Collections.unmodifiableList(addresses);
+		this.servers = servers;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the addresses of the servers, to which clients connect
+	 */
+	public List<Address> addresses() {
+		return addresses;
+	}
+
+	/**
+	 * Bootstraps all servers.
+	 * @return a future that is completed when every server has joined the cluster
+	 */
+	public CompletableFuture<LocalCluster> start() {
+		List<CompletableFuture<CopycatServer>> futures = new ArrayList<>(servers.size());
+		for (CopycatServer server : servers) {
+			futures.add(server.bootstrap(addresses));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenApply(_v -> this);
+	}
+
+	/**
+	 * Shuts down all servers, without leaving the cluster, and deletes their storage.
+	 */
+	public CompletableFuture<Void> stop() {
+		List<CompletableFuture<Void>> futures = new ArrayList<>(servers.size());
+		for (CopycatServer server : servers) {
+			futures.add(server.shutdown());
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenRun(() -> {
+			try {
+				FileUtils.deleteDirectory(directory);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	// -------------------------------------------------------------------
+
+	/**
+	 * Builds a {@code LocalCluster}. By default, it has three servers with disk storage on localhost ports 5001 to 5003, each running a
+	 * {@code MapStateMachine}.
+	 */
+	public static class Builder {
+
+		private int size = 3;
+		private String host = "localhost";
+		private int port = 5001;
+		private StorageLevel storageLevel = StorageLevel.DISK;
+		private Supplier<StateMachine> stateMachine = MapStateMachine::new;
+
+		private Builder() {
+		}
+
+		public Builder withSize(int size) {
+			if (size < 1) {
+				throw new IllegalArgumentException("size must be positive");
+			}
+			this.size = size;
+			return this;
+		}
+
+		/**
+		 * Sets the host and the port of the first server. The other servers listen on the following ports.
+		 */
+		public Builder withAddress(String host, int port) {
+			this.host = host;
+			this.port = port;
+			return this;
+		}
+
+		public Builder withStorageLevel(StorageLevel storageLevel) {
+			this.storageLevel = storageLevel;
+			return this;
+		}
+
+		public Builder withStateMachine(Supplier<StateMachine> stateMachine) {
+			this.stateMachine = stateMachine;
+			return this;
+		}
+
+		public LocalCluster build() {
+			return new LocalCluster(this);
+		}
+	}
+}
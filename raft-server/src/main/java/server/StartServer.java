@@ -1,24 +1,43 @@
 package server;
 
 import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.netty.NettyTransport;
+import io.atomix.copycat.Query.ConsistencyLevel;
+import io.atomix.copycat.client.CopycatClient;
 import io.atomix.copycat.server.CopycatServer;
+import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.storage.Storage;
 import io.atomix.copycat.server.storage.StorageLevel;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import joptsimple.ValueConverter;
-import statemachine.ClearCommand;
-import statemachine.GetQuery;
+import serialization.MapSerialization;
+import statemachine.EvictionPolicy;
+import statemachine.LongMapStateMachine;
 import statemachine.MapStateMachine;
-import statemachine.PutCommand;
+import statemachine.OffHeapStore;
+import statemachine.RetainingMapStateMachine;
 import statemachine.SizeQuery;
-import statemachine.SnapshotQuery;
+import statemachine.StartupTimes;
+import statemachine.StateMachineMetrics;
+import statemachine.StoreFactory;
 import util.FileUtils;
+import util.Partitions;
 
 import static java.util.Collections.singleton;
 import static server.StartServer.AddressConverter.addressConverter;
@@ -29,53 +48,219 @@ import static server.StartServer.AddressConverter.addressConverter;
  * <li>-c, --clean (delete the storage directory before starting)
  * <li>-a, --address (host:port)
  * <li>-j, --join (join cluster at address)
+ * <li>-l, --long-keys (run a {@code LongMapStateMachine} instead of a {@code MapStateMachine}, for clients that use primitive long keys)
+ * <li>-o, --off-heap (keep the entries of the {@code MapStateMachine} serialized in off-heap slabs instead of on the heap)
+ * <li>-r, --retain-commits (run a {@code RetainingMapStateMachine}, which keeps the commits of the current state in the log instead of
+ * taking snapshots)
+ * <li>-i, --index-values (maintain a value index, so that {@code containsValue} does not need a pass over the map)
+ * <li>--major-compaction-interval (seconds between major compactions of the log, default one hour)
+ * <li>--max-segment-size (bytes per log segment, default 32 MB)
+ * <li>--max-entries-per-segment (entries per log segment, default 1048576)
+ * <li>-p, --partitions (number of independent Copycat groups hosted by this server, default 1)
+ * <li>--members (host:port,host:port,... bootstrap all partitions with this configuration, which must include the address)
+ * <li>--election-timeout (milliseconds, default 750; the heartbeat interval is a third of it)
+ * <li>-m, --metrics (record counts and latencies of the state machine operations, and register them with the platform MBean server
+ * as {@code statemachine:type=StateMachineMetrics,address=host_port} for each partition)
+ * <li>--compress-snapshots (compress the blocks of each snapshot, which pays off for values that clients do not compress themselves)
+ * <li>--max-entries (evict the least recently written entries when the map has more entries than this)
+ * <li>--max-bytes (evict the least recently written entries when the estimated bytes of the map exceed this)
  * </ul>
- * If join is not given, the server is bootstrapped.
+ * If neither join nor members is given, the server is bootstrapped as a single-node cluster.
+ * <p>
+ * With more than one partition, every server process hosts one Copycat group, with its own state machine and storage directory, per
+ * partition. Partition {@code p} listens on the port of the address plus {@code p * Partitions.PORT_STRIDE}. Each group elects its own
+ * leader, so writes to different partitions are ordered and replicated independently. A {@code PartitionedMapClient} routes every key to
+ * its partition. When a cluster is bootstrapped through members, partition {@code p} prefers the leader at position
+ * {@code p % members}: the other members wait twice as long before they start an election. This spreads the leaders across the
+ * servers, but it also doubles the time to fail over to a server that is not preferred. When servers join instead, the bootstrapping
+ * server becomes the first leader of every partition.
+ * <p>
+ * Copycat takes a snapshot of the state machine whenever a new log segment is started, and every snapshot contains the whole map. The
+ * snapshot bytes written per minute are therefore the size of the map times the number of segments filled per minute. Larger segments
+ * mean fewer snapshots, at the cost of more log on disk between snapshots and a longer replay after a restart.
+ * <p>
+ * Every partition prints its {@link StartupTimes} once it has caught up with the cluster, that is, once it answers a sequential read
+ * through a session that has been registered after it joined. A {@code MapStateMachine} decodes its snapshot on the common fork/join
+ * pool, whose size can be set with the system property {@code java.util.concurrent.ForkJoinPool.common.parallelism}.
  * @author Initial author: Sebastian Millies
  */
 public class StartServer {
 
+	// the Copycat default
+	private static final long ELECTION_TIMEOUT_MILLIS = 750;
+
 	public static void main(String[] args) throws IOException {
 		OptionParser parser = new OptionParser();
 		parser.accepts("clean");
+		parser.accepts("long-keys");
+		parser.accepts("off-heap");
+		parser.accepts("retain-commits");
+		parser.accepts("index-values");
+		parser.accepts("metrics");
+		parser.accepts("compress-snapshots");
 		OptionSpec<Address> addressOption = parser.accepts("address").withRequiredArg().required().withValuesConvertedBy(addressConverter());
 		OptionSpec<Address> joinOption = parser.accepts("join").withRequiredArg().withValuesConvertedBy(addressConverter());
+		OptionSpec<Address> membersOption = parser.accepts("members").withRequiredArg().withValuesSeparatedBy(',')
+				.withValuesConvertedBy(addressConverter());
+		OptionSpec<Integer> partitionsOption = parser.accepts("partitions").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+		OptionSpec<Long> majorCompactionOption = parser.accepts("major-compaction-interval").withRequiredArg().ofType(Long.class);
+		OptionSpec<Integer> segmentSizeOption = parser.accepts("max-segment-size").withRequiredArg().ofType(Integer.class);
+		OptionSpec<Integer> segmentEntriesOption = parser.accepts("max-entries-per-segment").withRequiredArg().ofType(Integer.class);
+		OptionSpec<Long> electionTimeoutOption = parser.accepts("election-timeout").withRequiredArg().ofType(Long.class)
+				.defaultsTo(ELECTION_TIMEOUT_MILLIS);
+		OptionSpec<Long> maxEntriesOption = parser.accepts("max-entries").withRequiredArg().ofType(Long.class);
+		OptionSpec<Long> maxBytesOption = parser.accepts("max-bytes").withRequiredArg().ofType(Long.class);
 		OptionSet options = parser.parse(args);
+		exclusive(options, "long-keys", "off-heap", "retain-commits", "index-values", "metrics", "max-entries", "max-bytes");
+		exclusive(options, "compress-snapshots", "long-keys", "retain-commits");
+		exclusive(options, "join", "members");
 		
 		Address address = options.valueOf(addressOption);
-		CopycatServer server = createServer(address);
-		
-		if (options.has("clean")) {
-			Path storageDir = Paths.get(storageDir(address));
-			FileUtils.deleteDirectory(storageDir);
-			System.out.println("Deleted storage at " +  storageDir.toRealPath());
-		}
-		
-		if (options.has("join")) {
-			Address cluster = options.valueOf(joinOption);
-			server.join(singleton(cluster)).thenRun(() -> System.out.println("Server " + address + " joined cluster at " + cluster));
+		// Copycat may create more than one state machine for a server, so all of them share the metrics and startup times of their partition
+		BiFunction<StateMachineMetrics, StartupTimes, Supplier<StateMachine>> stateMachine;
+		if (options.has("long-keys")) {
+			stateMachine = (metrics, startup) -> LongMapStateMachine::new;
 		}
 		else {
-			server.bootstrap().thenRun(() -> System.out.println("Server " + address + " bootstrapped"));
+			StoreFactory<Object, Object> store = options.has("off-heap") ? StoreFactory.offHeap(OffHeapStore.DEFAULT_SLAB_SIZE)
+					: StoreFactory.persistent();
+			boolean indexValues = options.has("index-values");
+			boolean compressSnapshots = options.has("compress-snapshots");
+			EvictionPolicy evictionPolicy = EvictionPolicy.unbounded();
+			if (options.has(maxEntriesOption)) {
+				evictionPolicy = evictionPolicy.withMaxEntries(options.valueOf(maxEntriesOption));
+			}
+			if (options.has(maxBytesOption)) {
+				evictionPolicy = evictionPolicy.withMaxBytes(options.valueOf(maxBytesOption));
+			}
+			EvictionPolicy eviction = evictionPolicy;
+			stateMachine = options.has("retain-commits")
+					? (metrics, startup) -> () -> new RetainingMapStateMachine<>(store, indexValues, metrics, eviction)
+					: (metrics, startup) -> () -> new MapStateMachine<>(store, indexValues, metrics, compressSnapshots, startup, eviction);
+		}
+		Function<Address, Storage> storage = partitionAddress -> {
+			Storage.Builder builder = Storage.builder().withDirectory(new File(storageDir(partitionAddress))).withStorageLevel(StorageLevel.DISK);
+			if (options.has(majorCompactionOption)) {
+				builder.withMajorCompactionInterval(Duration.ofSeconds(options.valueOf(majorCompactionOption)));
+			}
+			if (options.has(segmentSizeOption)) {
+				builder.withMaxSegmentSize(options.valueOf(segmentSizeOption));
+			}
+			if (options.has(segmentEntriesOption)) {
+				builder.withMaxEntriesPerSegment(options.valueOf(segmentEntriesOption));
+			}
+			return builder.build();
+		};
+
+		int partitions = options.valueOf(partitionsOption);
+		if (partitions < 1) {
+			throw new IllegalArgumentException("partitions must be positive");
+		}
+		List<Address> members = options.valuesOf(membersOption);
+		if (!members.isEmpty() && !members.contains(address)) {
+			throw new IllegalArgumentException("members must contain the address " + address);
+		}
+
+		Duration electionTimeout = Duration.ofMillis(options.valueOf(electionTimeoutOption));
+		if (electionTimeout.toMillis() < 3) {
+			throw new IllegalArgumentException("election-timeout must be at least 3 ms");
+		}
+
+		for (int partition = 0; partition < partitions; partition++) {
+			Address partitionAddress = Partitions.address(address, partition);
+			if (options.has("clean")) {
+				Path storageDir = Paths.get(storageDir(partitionAddress)).toAbsolutePath();
+				if (Files.exists(storageDir)) {
+					FileUtils.deleteDirectory(storageDir);
+					System.out.println("Deleted storage at " +  storageDir);
+				}
+			}
+
+			StateMachineMetrics metrics = options.has("metrics") ? registerMetrics(partitionAddress) : null;
+			StartupTimes startup = new StartupTimes();
+			boolean preferred = members.isEmpty() || members.indexOf(address) == partition % members.size();
+			CopycatServer server = createServer(partitionAddress, stateMachine.apply(metrics, startup), storage.apply(partitionAddress),
+					preferred ? electionTimeout : electionTimeout.multipliedBy(2), electionTimeout.dividedBy(3));
+			startup.storageOpened(); // Copycat opens the storage when it builds the server
+
+			CompletableFuture<CopycatServer> started;
+			if (options.has("join")) {
+				Address cluster = Partitions.address(options.valueOf(joinOption), partition);
+				started = server.join(singleton(cluster));
+				started.thenRun(() -> System.out.println("Server " + partitionAddress + " joined cluster at " + cluster));
+			}
+			else if (!members.isEmpty()) {
+				List<Address> cluster = Partitions.addresses(members, partition);
+				started = server.bootstrap(cluster);
+				started.thenRun(() -> System.out.println("Server " + partitionAddress + " bootstrapped cluster " + cluster));
+			}
+			else {
+				started = server.bootstrap();
+				started.thenRun(() -> System.out.println("Server " + partitionAddress + " bootstrapped"));
+			}
+			started.thenCompose(s -> {
+				startup.joined();
+				return catchUp(partitionAddress);
+			}).whenComplete((v, e) -> {
+				if (e == null) {
+					startup.caughtUp();
+					System.out.println("Server " + partitionAddress + " caught up, startup: " + startup);
+				}
+				else {
+					System.out.println("Server " + partitionAddress + " has not caught up: " + e);
+				}
+			});
 		}
 	}
+
+	/*
+	 * A sequential query is answered by the server the client is connected to, once its state machine has applied the registration of
+	 * the client's session, so it waits for the replay of everything that was committed before.
+	 */
+	private static CompletableFuture<Void> catchUp(Address address) {
+		CopycatClient probe = CopycatClient.builder().withTransport(NettyTransport.builder().withThreads(1).build()).build();
+		probe.serializer().resolve(new MapSerialization());
+		return probe.connect(singleton(address)).thenCompose(client -> client.submit(new SizeQuery(ConsistencyLevel.SEQUENTIAL)))
+				.thenCompose(size -> probe.close());
+	}
 	
-	private static CopycatServer createServer(Address address) {
-		CopycatServer server = CopycatServer.builder(address).withStateMachine(MapStateMachine::new)
+	private static CopycatServer createServer(Address address, Supplier<StateMachine> stateMachine, Storage storage,
+			Duration electionTimeout, Duration heartbeatInterval) {
+		CopycatServer server = CopycatServer.builder(address).withStateMachine(stateMachine).withElectionTimeout(electionTimeout)
+				.withHeartbeatInterval(heartbeatInterval)
 //				.withTransport(NettyTransport.builder().withThreads(4).build()) // Netty is default
-				.withStorage(
-						Storage.builder().withDirectory(new File(storageDir(address))).withStorageLevel(StorageLevel.DISK).build())
+				.withStorage(storage)
 				.build();
 		
-		server.serializer().register(ClearCommand.class);
-		server.serializer().register(PutCommand.class);
-		server.serializer().register(GetQuery.class);
-		server.serializer().register(SizeQuery.class);
-		server.serializer().register(SnapshotQuery.class);
+		server.serializer().resolve(new MapSerialization());
 		
 		return server;
 	}
 
+	private static StateMachineMetrics registerMetrics(Address address) {
+		StateMachineMetrics metrics = new StateMachineMetrics();
+		try {
+			ObjectName name = new ObjectName("statemachine:type=StateMachineMetrics,address=" + address.host() + "_" + address.port());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot register metrics for " + address, e);
+		}
+		return metrics;
+	}
+
+	/*
+	 * Checked here rather than with availableUnless(), which the jopt-simple version of JMH lacks, so that the benchmarks can start
+	 * servers from their jar.
+	 */
+	private static void exclusive(OptionSet options, String option, String... others) {
+		for (String other : others) {
+			if (options.has(option) && options.has(other)) {
+				throw new IllegalArgumentException(other + " cannot be combined with " + option);
+			}
+		}
+	}
+
 	private static String storageDir(Address address) {
 		return address.host() + "_" + address.port() + "_logs";
 	}
@@ -0,0 +1,742 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+import io.atomix.copycat.server.Commit;
+import io.atomix.copycat.server.StateMachine;
+import io.atomix.copycat.server.StateMachineExecutor;
+import io.atomix.copycat.server.session.ServerSession;
+import io.atomix.copycat.server.session.SessionListener;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import statemachine.ScanQuery.Projection;
+import statemachine.StateMachineMetrics.Operation;
+import util.HashTrieMap;
+
+/**
+ * The operations of a map state machine. Subclasses decide how the state survives log compaction: {@link MapStateMachine} takes
+ * snapshots, {@link RetainingMapStateMachine} keeps the commits that make up the current state in the log. Commands tell the subclass
+ * which keys they have {@linkplain #written(Object, Commit) written} and whether they have {@linkplain #cleared(Commit) cleared} the
+ * map, and then {@linkplain #release(Commit) release} their commit.
+ * <p>
+ * Entries that have been put with an {@link ExpiringPutCommand} expire when the time of a commit has passed their time to live. Commit
+ * times are assigned by the leader and replicated with the log, so every replica expires the same entries at the same point of the
+ * log. Expired entries are removed before the next command is applied, in order of their expiry time. Queries see the time of the
+ * last entry that has been applied, which may also be a session keep-alive, and ignore the entries that have expired by that time
+ * even before the next command has removed them. An {@link EvictionPolicy} bounds the map: after every command, the least recently
+ * written entries are evicted until the map fits. Expired and evicted entries are removed like keys that have been removed by a
+ * command: subscribed sessions receive an invalidation, and subclasses are told through {@link #removed(Object, Commit)}.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public abstract class AbstractMapStateMachine<K,V> extends StateMachine implements SessionListener {
+
+	/** Published with the list of keys that have changed, to sessions that have submitted a {@link SubscribeCommand}. */
+	public static final String INVALIDATE = "invalidate";
+	/** Published without a value when the map has been cleared, to sessions that have submitted a {@link SubscribeCommand}. */
+	public static final String INVALIDATE_ALL = "invalidateAll";
+
+	// this is not a concurrent map. Copycat should serialize all operations on this state machine, so there is no potential for
+	// concurrency. Or is there? It would be surprising, given that we  Copycat works by log replication, and the log probably
+	// cannot express parallelism
+	protected final StoreFactory<K, V> storeFactory;
+	protected Map<K, V> map;
+	private final ValueIndex values; // null if there is no value index
+	protected final StateMachineMetrics metrics; // null if there are no metrics
+	private final Eviction<K> eviction;
+
+	// IDs of the sessions that receive invalidation events. Queries are not replicated, so the state machine cannot know which session
+	// has read which key. Every subscribed session is therefore told about every change.
+	protected final Set<Long> listeners = new LinkedHashSet<>();
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 */
+	protected AbstractMapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues) {
+		this(storeFactory, indexValues, null);
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations of this state machine, or {@code null} for none
+	 */
+	protected AbstractMapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics) {
+		this(storeFactory, indexValues, metrics, EvictionPolicy.unbounded());
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations of this state machine, or {@code null} for none
+	 * @param evictionPolicy bounds the size of the map
+	 */
+	protected AbstractMapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics,
+			EvictionPolicy evictionPolicy) {
+		this.storeFactory = storeFactory;
+		this.values = indexValues ? new ValueIndex() : null;
+		this.metrics = metrics;
+		this.eviction = new Eviction<>(evictionPolicy);
+	}
+
+	@Override
+	public void init(StateMachineExecutor executor) {
+		map = storeFactory.create(0, executor.serializer());
+		super.init(executor);
+	}
+
+	/*
+	 * State machine operations are implemented as public methods on the state machine class which accept a single Commit parameter where
+	 * the generic argument for the commit is the operation accepted by the method. Copycat automatically detects the command or query that
+	 * applies to a given state machine methods based on the generic argument to the Commit parameter.
+	 */
+
+	public void clear(Commit<ClearCommand> commit) {
+		long start = start();
+		try {
+			apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.CLEAR, start, commit);
+			release(commit); // finally block required, not AutoCloseable
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V put(Commit<PutCommand<K,V>> commit) {
+		long start = start();
+		try {
+			return (V) apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.PUT, start, commit);
+			release(commit); // finally block required, not AutoCloseable
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V putExpiring(Commit<ExpiringPutCommand<K,V>> commit) {
+		long start = start();
+		try {
+			return (V) apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.PUT, start, commit);
+			release(commit);
+		}
+	}
+
+	public void putAll(Commit<PutAllCommand<K,V>> commit) {
+		long start = start();
+		try {
+			apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.PUT_ALL, start, commit);
+			release(commit);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(Commit<RemoveCommand<K,V>> commit) {
+		long start = start();
+		try {
+			return (V) apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.REMOVE, start, commit);
+			release(commit);
+		}
+	}
+
+	/*
+	 * The conditional commands read and write a key within a single commit, so they are atomic without any locking on the client.
+	 */
+	@SuppressWarnings("unchecked")
+	public V putIfAbsent(Commit<PutIfAbsentCommand<K,V>> commit) {
+		long start = start();
+		try {
+			return (V) apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.PUT_IF_ABSENT, start, commit);
+			release(commit);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V replace(Commit<ReplaceCommand<K,V>> commit) {
+		long start = start();
+		try {
+			return (V) apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.REPLACE, start, commit);
+			release(commit);
+		}
+	}
+
+	public boolean compareAndSet(Commit<CompareAndSetCommand<K,V>> commit) {
+		long start = start();
+		try {
+			return (Boolean) apply(commit, commit.operation());
+		}
+		finally {
+			applied(Operation.COMPARE_AND_SET, start, commit);
+			release(commit);
+		}
+	}
+
+	/*
+	 * All commands of a batch are applied within the same commit. No other operation can interleave, so the batch is atomic.
+	 * The batch is validated before the first command is applied, so an unsupported command leaves the map unchanged.
+	 */
+	public List<Object> batch(Commit<BatchCommand> commit) {
+		long start = start();
+		try {
+			List<Command<?>> commands = commit.operation().commands();
+			for (Command<?> command : commands) {
+				if (!isBatchable(command)) {
+					throw new IllegalArgumentException("Unsupported command in batch: " + command.getClass().getName());
+				}
+			}
+			List<Object> results = new ArrayList<>(commands.size());
+			for (Command<?> command : commands) {
+				results.add(apply(commit, command));
+			}
+			return results;
+		}
+		finally {
+			applied(Operation.BATCH, start, commit);
+			release(commit);
+		}
+	}
+
+	private static boolean isBatchable(Command<?> command) {
+		return command instanceof PutCommand || command instanceof ExpiringPutCommand || command instanceof PutAllCommand
+				|| command instanceof ClearCommand || command instanceof RemoveCommand || command instanceof PutIfAbsentCommand
+				|| command instanceof ReplaceCommand || command instanceof CompareAndSetCommand;
+	}
+
+	/*
+	 * Entries that have expired by the time of the commit are removed before the command, so that it sees the same map on every
+	 * replica. Entries are evicted after the command, so that the map it leaves behind fits the eviction policy.
+	 */
+	private Object apply(Commit<?> commit, Command<?> command) {
+		long now = commit.time().toEpochMilli();
+		for (K key = eviction.expired(now); key != null; key = eviction.expired(now)) {
+			remove(key, commit);
+		}
+		Object result = execute(commit, command);
+		for (K key = eviction.evictable(map.size()); key != null; key = eviction.evictable(map.size())) {
+			remove(key, commit);
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object execute(Commit<?> commit, Command<?> command) {
+		if (command instanceof PutCommand) {
+			PutCommand<K,V> put = (PutCommand<K,V>) command;
+			return write(put.key(), put.value(), commit);
+		}
+		if (command instanceof ExpiringPutCommand) {
+			ExpiringPutCommand<K,V> put = (ExpiringPutCommand<K,V>) command;
+			long now = commit.time().toEpochMilli();
+			return write(put.key(), put.value(), commit, put.ttlMillis() > Eviction.NEVER - now ? Eviction.NEVER : now + put.ttlMillis());
+		}
+		if (command instanceof PutAllCommand) {
+			Map<K, V> entries = ((PutAllCommand<K,V>) command).entries();
+			invalidate(entries.keySet());
+			for (K key : entries.keySet()) {
+				written(key, commit);
+			}
+			if (values == null && metrics == null && !eviction.isTracking()) {
+				map.putAll(entries);
+			}
+			else {
+				for (Entry<K, V> entry : entries.entrySet()) {
+					replaced(entry.getKey(), map.put(entry.getKey(), entry.getValue()), entry.getValue());
+					eviction.written(entry.getKey(), entry.getValue(), Eviction.NEVER);
+				}
+			}
+			return null;
+		}
+		if (command instanceof RemoveCommand) {
+			return remove(((RemoveCommand<K,V>) command).key(), commit);
+		}
+		if (command instanceof PutIfAbsentCommand) {
+			PutIfAbsentCommand<K,V> put = (PutIfAbsentCommand<K,V>) command;
+			V current = map.get(put.key());
+			return current != null ? current : write(put.key(), put.value(), commit);
+		}
+		if (command instanceof ReplaceCommand) {
+			ReplaceCommand<K,V> replace = (ReplaceCommand<K,V>) command;
+			return map.get(replace.key()) != null ? write(replace.key(), replace.value(), commit) : null;
+		}
+		if (command instanceof CompareAndSetCommand) {
+			CompareAndSetCommand<K,V> cas = (CompareAndSetCommand<K,V>) command;
+			if (!Objects.deepEquals(map.get(cas.key()), cas.expect())) {
+				return false;
+			}
+			if (cas.update() != null) {
+				write(cas.key(), cas.update(), commit);
+			}
+			else {
+				remove(cas.key(), commit);
+			}
+			return true;
+		}
+		if (command instanceof ClearCommand) {
+			map.clear();
+			eviction.cleared();
+			if (values != null) {
+				values.clear();
+			}
+			if (metrics != null) {
+				metrics.cleared();
+			}
+			cleared(commit);
+			invalidateAll();
+			return null;
+		}
+		throw new IllegalArgumentException("Unsupported command: " + command.getClass().getName());
+	}
+
+	private V write(K key, V value, Commit<?> commit) {
+		return write(key, value, commit, Eviction.NEVER);
+	}
+
+	private V write(K key, V value, Commit<?> commit, long expiresAt) {
+		invalidate(Collections.singleton(key));
+		written(key, commit);
+		V previous = map.put(key, value);
+		replaced(key, previous, value);
+		eviction.written(key, value, expiresAt);
+		return previous;
+	}
+
+	private V remove(K key, Commit<?> commit) {
+		V previous = map.remove(key);
+		eviction.removed(key);
+		if (previous != null) {
+			replaced(key, previous, null);
+			removed(key, commit);
+			invalidate(Collections.singleton(key));
+		}
+		return previous;
+	}
+
+	private void replaced(K key, V previous, V value) {
+		if (values != null) {
+			values.replaced(previous, value);
+		}
+		if (metrics != null) {
+			metrics.replaced(key, previous, value);
+		}
+	}
+
+	/*
+	 * Without metrics, an operation does not even read the clock. With metrics, it reads it twice, which is most of their cost.
+	 */
+	private long start() {
+		return metrics != null ? System.nanoTime() : 0;
+	}
+
+	// called before the commit is released, which may recycle it
+	private void applied(Operation operation, long start, Commit<?> commit) {
+		if (metrics != null) {
+			metrics.applied(operation, start, commit.index(), map.size());
+		}
+	}
+
+	private void queried(Operation operation, long start) {
+		if (metrics != null) {
+			metrics.queried(operation, start);
+		}
+	}
+
+	/**
+	 * Called when a command has written a key, before the commit of the command is released. Does nothing by default.
+	 */
+	protected void written(K key, Commit<?> commit) {
+	}
+
+	/**
+	 * Called when a command has removed a key, or the key has expired or been evicted while the command was applied, before the commit
+	 * of the command is released. Does nothing by default.
+	 */
+	protected void removed(K key, Commit<?> commit) {
+	}
+
+	/**
+	 * Called when a command has cleared the map, before the commit of the command is released. Does nothing by default.
+	 */
+	protected void cleared(Commit<?> commit) {
+	}
+
+	/**
+	 * Called when a command has been applied, or a session has subscribed. Closes the commit by default.
+	 */
+	protected void release(Commit<?> commit) {
+		commit.close();
+	}
+
+	/**
+	 * Called when a subscribed session has been unregistered, has expired or has been closed. Does nothing by default.
+	 */
+	protected void unsubscribed(long sessionId) {
+	}
+
+	public void subscribe(Commit<SubscribeCommand> commit) {
+		long start = start();
+		try {
+			listeners.add(commit.session().id());
+		}
+		finally {
+			applied(Operation.SUBSCRIBE, start, commit);
+			release(commit);
+		}
+	}
+
+	private void invalidate(Collection<?> keys) {
+		if (!listeners.isEmpty()) {
+			publish(INVALIDATE, new ArrayList<>(keys));
+		}
+	}
+
+	private void invalidateAll() {
+		if (!listeners.isEmpty()) {
+			publish(INVALIDATE_ALL, null);
+		}
+	}
+
+	private void publish(String event, Object message) {
+		for (long id : listeners) {
+			ServerSession session = sessions.session(id);
+			if (session != null && session.state().active()) {
+				session.publish(event, message);
+			}
+		}
+	}
+
+	@Override
+	public void register(ServerSession session) {
+	}
+
+	@Override
+	public void unregister(ServerSession session) {
+		unsubscribe(session.id());
+	}
+
+	@Override
+	public void expire(ServerSession session) {
+		unsubscribe(session.id());
+	}
+
+	@Override
+	public void close(ServerSession session) {
+		unsubscribe(session.id());
+	}
+
+	private void unsubscribe(long sessionId) {
+		if (listeners.remove(sessionId)) {
+			unsubscribed(sessionId);
+		}
+	}
+
+	public V get(Commit<GetQuery<V>> commit) {
+		long start = start();
+		try {
+			Object key = commit.operation().key();
+			V value = map.get(key);
+			return value != null && eviction.isExpired(key, commit.time().toEpochMilli()) ? null : value;
+		}
+		finally {
+			queried(Operation.GET, start);
+			commit.close();
+		}
+	}
+
+	/**
+	 * Rebuilds the value index, if there is one, after the map has been replaced.
+	 */
+	protected void indexValues() {
+		if (values != null) {
+			values.rebuild(map);
+		}
+	}
+
+	/**
+	 * @return the expiry times of the keys that have a time to live or may be evicted, in milliseconds of the epoch or
+	 *         {@code Long.MAX_VALUE} for never, least recently written first. The map is a copy.
+	 */
+	protected Map<K, Long> expiries() {
+		return eviction.expiries();
+	}
+
+	/**
+	 * Restores the expiry times and the eviction order after the map has been replaced.
+	 * @param expiries as returned by {@link #expiries()} when the map was saved
+	 */
+	protected void restoreExpiries(Map<K, Long> expiries) {
+		eviction.restore(map, expiries);
+	}
+
+	public boolean containsKey(Commit<ContainsKeyQuery> commit) {
+		long start = start();
+		try {
+			Object key = commit.operation().key();
+			return map.containsKey(key) && !eviction.isExpired(key, commit.time().toEpochMilli());
+		}
+		finally {
+			queried(Operation.CONTAINS_KEY, start);
+			commit.close();
+		}
+	}
+
+	/*
+	 * Without a value index, this is a full pass over the map, but only the answer is sent back to the client. With an index, the
+	 * value is present if more keys map to it than have expired.
+	 */
+	public boolean containsValue(Commit<ContainsValueQuery> commit) {
+		long start = start();
+		try {
+			Object value = commit.operation().value();
+			long now = commit.time().toEpochMilli();
+			List<K> expired = eviction.expiredKeys(now);
+			if (values != null) {
+				if (!values.contains(value)) {
+					return false;
+				}
+				int count = 0;
+				for (K key : expired) {
+					if (Objects.deepEquals(map.get(key), value)) {
+						count++;
+					}
+				}
+				return values.count(value) > count;
+			}
+			for (Entry<K, V> entry : map.entrySet()) {
+				if (Objects.deepEquals(entry.getValue(), value) && (expired.isEmpty() || !eviction.isExpired(entry.getKey(), now))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			queried(Operation.CONTAINS_VALUE, start);
+			commit.close();
+		}
+	}
+
+	public Map<K, V> getAll(Commit<MultiGetQuery<K,V>> commit) {
+		long start = start();
+		try {
+			Collection<K> keys = commit.operation().keys();
+			Map<K, V> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+			long now = commit.time().toEpochMilli();
+			for (K key : keys) {
+				V value = map.get(key);
+				if (value != null && !eviction.isExpired(key, now)) {
+					result.put(key, value);
+				}
+			}
+			return result;
+		}
+		finally {
+			queried(Operation.GET_ALL, start);
+			commit.close();
+		}
+	}
+	
+	/*
+	 * A HashTrieMap is ordered by scan hash, so a page starts at the cursor and costs only the entries it returns.
+	 */
+	public ScanPage<K, V> scan(Commit<ScanQuery<K,V>> commit) {
+		long start = start();
+		try {
+			ScanQuery<K, V> query = commit.operation();
+			long now = commit.time().toEpochMilli();
+			ScanPage<K, V> page = map instanceof HashTrieMap ? seek((HashTrieMap<K, V>) map, eviction, now, query.cursor(), query.pageSize())
+					: fullScan(map, eviction, now, query.cursor(), query.pageSize());
+			return project(page, query.projection());
+		}
+		finally {
+			queried(Operation.SCAN, start);
+			commit.close();
+		}
+	}
+
+	// expired entries are passed over before they are counted against the cursor, like entries that have been removed
+	private static <K, V> ScanPage<K, V> seek(HashTrieMap<K, V> map, Eviction<K> eviction, long now, long cursor, int pageSize) {
+		int startHash = ScanQuery.hashOf(cursor);
+		int skip = ScanQuery.offsetOf(cursor);
+		Iterator<Entry<K, V>> iterator = map.iterator(startHash);
+		List<Entry<K, V>> entries = new ArrayList<>(Math.min(pageSize, map.size()));
+		while (iterator.hasNext() && entries.size() < pageSize) {
+			Entry<K, V> entry = iterator.next();
+			if (eviction.isExpired(entry.getKey(), now)) {
+				continue;
+			}
+			if (skip > 0 && ScanQuery.hash(entry.getKey()) == startHash) {
+				skip--; // entries with the start hash come first
+			}
+			else {
+				entries.add(entry);
+			}
+		}
+		return page(entries, iterator.hasNext(), cursor);
+	}
+
+	/*
+	 * Other stores are not ordered by scan hash, so each page is a full pass over the map that keeps only the pageSize smallest candidates
+	 * in a bounded heap. Memory is proportional to the page size, not to the size of the map. Entries with the same hash are ordered by
+	 * their position in the map, which is the same in every pass as long as the map does not change.
+	 */
+	private static <K, V> ScanPage<K, V> fullScan(Map<K, V> map, Eviction<K> eviction, long now, long cursor, int pageSize) {
+		long startHash = Integer.toUnsignedLong(ScanQuery.hashOf(cursor));
+		int skip = ScanQuery.offsetOf(cursor);
+
+		PriorityQueue<ScanCandidate<K, V>> heap = new PriorityQueue<>(pageSize, ScanCandidate.ORDER.reversed());
+		boolean more = false;
+		int sameHash = 0;
+		long position = 0;
+		for (Entry<K, V> entry : map.entrySet()) {
+			long hash = Integer.toUnsignedLong(ScanQuery.hash(entry.getKey()));
+			if (hash < startHash || eviction.isExpired(entry.getKey(), now) || hash == startHash && sameHash++ < skip) {
+				continue;
+			}
+			ScanCandidate<K, V> candidate = new ScanCandidate<>(hash, position++, entry);
+			if (heap.size() < pageSize) {
+				heap.add(candidate);
+			}
+			else {
+				more = true;
+				if (ScanCandidate.ORDER.compare(candidate, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(candidate);
+				}
+			}
+		}
+
+		List<ScanCandidate<K, V>> page = new ArrayList<>(heap);
+		page.sort(ScanCandidate.ORDER);
+		List<Entry<K, V>> entries = new ArrayList<>(page.size());
+		for (ScanCandidate<K, V> candidate : page) {
+			entries.add(new SimpleImmutableEntry<>(candidate.entry));
+		}
+		return page(entries, more, cursor);
+	}
+
+	// the next cursor counts the entries with the hash of the last entry, including those skipped by the previous cursor
+	private static <K, V> ScanPage<K, V> page(List<Entry<K, V>> entries, boolean more, long cursor) {
+		if (!more) {
+			return new ScanPage<>(entries, ScanPage.END);
+		}
+		int lastHash = ScanQuery.hash(entries.get(entries.size() - 1).getKey());
+		int offset = lastHash == ScanQuery.hashOf(cursor) ? ScanQuery.offsetOf(cursor) : 0;
+		for (Entry<K, V> entry : entries) {
+			if (ScanQuery.hash(entry.getKey()) == lastHash) {
+				offset++;
+			}
+		}
+		return new ScanPage<>(entries, ScanQuery.cursor(lastHash, offset));
+	}
+
+	// the cursor has been computed from the keys, so they can be dropped now
+	private static <K, V> ScanPage<K, V> project(ScanPage<K, V> page, Projection projection) {
+		if (projection == Projection.ENTRIES) {
+			return page;
+		}
+		List<Entry<K, V>> entries = new ArrayList<>(page.entries().size());
+		for (Entry<K, V> entry : page.entries()) {
+			entries.add(projection == Projection.KEYS ? new SimpleImmutableEntry<>(entry.getKey(), null)
+					: new SimpleImmutableEntry<>(null, entry.getValue()));
+		}
+		return new ScanPage<>(entries, page.next(), projection);
+	}
+
+	private static final class ScanCandidate<K, V> {
+
+		static final Comparator<ScanCandidate<?, ?>> ORDER = Comparator.<ScanCandidate<?, ?>> comparingLong(c -> c.hash)
+				.thenComparingLong(c -> c.position);
+
+		final long hash;
+		final long position;
+		final Entry<K, V> entry;
+
+		ScanCandidate(long hash, long position, Entry<K, V> entry) {
+			this.hash = hash;
+			this.position = position;
+			this.entry = entry;
+		}
+	}
+
+	public int size(Commit<SizeQuery> commit) {
+		long start = start();
+		try {
+			return liveSize(commit.time().toEpochMilli());
+		}
+		finally {
+			queried(Operation.SIZE, start);
+			commit.close();
+		}
+	}
+
+	// the entries that have not expired by now, which the next command may still have to remove
+	private int liveSize(long now) {
+		return map.size() - eviction.expiredKeys(now).size();
+	}
+	
+	/*
+	 * Answered on the state machine thread, so the size and the last applied index are always current, even without metrics.
+	 */
+	public Stats stats(Commit<StatsQuery> commit) {
+		long start = start();
+		try {
+			int size = liveSize(commit.time().toEpochMilli());
+			return metrics != null ? metrics.stats(size, context.index()) : new Stats(size, context.index());
+		}
+		finally {
+			queried(Operation.STATS, start);
+			commit.close();
+		}
+	}
+
+	/*
+	 * The result is serialized after this method has returned, while later commands are applied. It must therefore be immutable, or a
+	 * copy that nothing else refers to. Keys that have expired but not yet been removed are left out of a copy.
+	 */
+	public Map<K, V> snapshot(Commit<SnapshotQuery<K,V>> commit) {
+		long start = start();
+		try {
+			List<K> expired = eviction.expiredKeys(commit.time().toEpochMilli());
+			if (map instanceof HashTrieMap && expired.isEmpty()) {
+				return ((HashTrieMap<K, V>) map).snapshot();
+			}
+			HashTrieMap<K, V> copy = new HashTrieMap<>(map);
+			for (K key : expired) {
+				copy.remove(key);
+			}
+			return copy;
+		}
+		finally {
+			queried(Operation.SNAPSHOT, start);
+			commit.close();
+		}
+	}
+}
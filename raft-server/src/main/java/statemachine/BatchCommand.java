@@ -0,0 +1,25 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+import java.util.List;
+
+/*
+ * Carries several commands that are applied atomically as a single log entry. The result holds the result of each command,
+ * in the order of the commands. Batches may contain the commands that MapStateMachine supports inside a batch, but not other batches.
+ */
+
+public class BatchCommand implements Command<List<Object>> {
+
+	private static final long serialVersionUID = -5224398763870745412L;
+
+	private final List<Command<?>> commands;
+
+	public BatchCommand(List<Command<?>> commands) {
+		this.commands = commands;
+	}
+
+	public List<Command<?>> commands() {
+		return commands;
+	}
+
+}
@@ -0,0 +1,42 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Sets a key to a new value only if its current value equals the expected value, and returns whether it has done so. An expected value
+ * of null stands for an absent key, a new value of null removes the key. Values are compared with Objects.deepEquals, so byte arrays
+ * are compared by content.
+ */
+
+public class CompareAndSetCommand<K,V> implements Command<Boolean> {
+
+	private static final long serialVersionUID = -8805311725530786473L;
+
+	private final K key;
+	private final V expect;
+	private final V update;
+
+	public CompareAndSetCommand(K key, V expect, V update) {
+		this.key = key;
+		this.expect = expect;
+		this.update = update;
+	}
+
+	public K key() {
+		return key;
+	}
+
+	public V expect() {
+		return expect;
+	}
+
+	public V update() {
+		return update;
+	}
+
+	@Override
+	public CompactionMode compaction() {
+		return update == null ? CompactionMode.TOMBSTONE : CompactionMode.DEFAULT;
+	}
+
+}
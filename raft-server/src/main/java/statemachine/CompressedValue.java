@@ -0,0 +1,112 @@
+package statemachine;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import util.Lzf;
+
+/**
+ * A string or byte array value in compressed form. Clients that are built with compression store large values as compressed values,
+ * and the state machine keeps them as they are, so a value is compressed once on the client, and stays compressed in the log, in
+ * replication, in the map and in snapshots. It is decompressed by the client that gets it.
+ * <p>
+ * Compression is deterministic, so two compressed values are equal if and only if their originals are equal and have been compressed
+ * with the same threshold. Conditional operations and the value index compare compressed values, which is correct as long as all
+ * clients of a map use the same threshold.
+ * @author Initial author: Sebastian Millies
+ */
+public final class CompressedValue implements Serializable {
+
+	private static final long serialVersionUID = -2390618524457209466L;
+
+	private final boolean string;
+	private final int length;
+	private final byte[] data;
+
+	/**
+	 * @param string whether the original is a string, which is compressed in UTF-8
+	 * @param length the number of bytes of the original
+	 * @param data the compressed bytes
+	 */
+	public CompressedValue(boolean string, int length, byte[] data) {
+		this.string = string;
+		this.length = length;
+		this.data = data;
+	}
+
+	/**
+	 * Compresses a string or byte array of at least {@code threshold} bytes, if that makes it smaller.
+	 * @return the compressed value, or {@code value} itself
+	 */
+	public static Object compress(Object value, int threshold) {
+		if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			return bytes.length >= threshold ? compress(false, bytes, value) : value;
+		}
+		if (value instanceof String && ((String) value).length() * 3 >= threshold) { // a char takes at most three bytes
+			byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+			return bytes.length >= threshold ? compress(true, bytes, value) : value;
+		}
+		return value;
+	}
+
+	private static Object compress(boolean string, byte[] bytes, Object value) {
+		byte[] data = Lzf.compress(bytes);
+		return data != null ? new CompressedValue(string, bytes.length, data) : value;
+	}
+
+	/**
+	 * @return the original of a compressed value, or {@code value} itself
+	 */
+	public static Object decompress(Object value) {
+		return value instanceof CompressedValue ? ((CompressedValue) value).decompress() : value;
+	}
+
+	/**
+	 * @return the original string or byte array
+	 */
+	public Object decompress() {
+		byte[] bytes = Lzf.decompress(data, length);
+		return string ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+	}
+
+	public boolean isString() {
+		return string;
+	}
+
+	/**
+	 * @return the number of bytes of the original
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return the compressed bytes, which must not be modified
+	 */
+	public byte[] data() {
+		return data;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompressedValue)) {
+			return false;
+		}
+		CompressedValue other = (CompressedValue) obj;
+		return string == other.string && length == other.length && Arrays.equals(data, other.data);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(data);
+	}
+
+	@Override
+	public String toString() {
+		return "CompressedValue [" + (string ? "string" : "bytes") + ", length=" + length + ", compressed=" + data.length + "]";
+	}
+}
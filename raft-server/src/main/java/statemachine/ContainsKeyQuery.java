@@ -0,0 +1,37 @@
+package statemachine;
+
+import io.atomix.copycat.Query;
+
+/*
+ * Tells whether the map contains a key, without transferring its value.
+ */
+
+public class ContainsKeyQuery implements Query<Boolean> {
+
+	private static final long serialVersionUID = 8361907251964413950L;
+
+	private final Object key;
+	private final ConsistencyLevel consistency;
+
+	public ContainsKeyQuery(Object key) {
+		this(key, null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public ContainsKeyQuery(Object key, ConsistencyLevel consistency) {
+		this.key = key;
+		this.consistency = consistency;
+	}
+
+	public Object key() {
+		return key;
+	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
+	}
+
+}
@@ -0,0 +1,38 @@
+package statemachine;
+
+import io.atomix.copycat.Query;
+
+/*
+ * Tells whether the map contains a value. Answered from the value index of the state machine if it has one, otherwise by a full pass over
+ * the map.
+ */
+
+public class ContainsValueQuery implements Query<Boolean> {
+
+	private static final long serialVersionUID = -1937458046218331617L;
+
+	private final Object value;
+	private final ConsistencyLevel consistency;
+
+	public ContainsValueQuery(Object value) {
+		this(value, null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public ContainsValueQuery(Object value, ConsistencyLevel consistency) {
+		this.value = value;
+		this.consistency = consistency;
+	}
+
+	public Object value() {
+		return value;
+	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
+	}
+
+}
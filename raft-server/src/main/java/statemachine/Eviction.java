@@ -0,0 +1,186 @@
+package statemachine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+
+/**
+ * Keeps track of the keys that a map state machine may have to remove before a command removes them: the keys that have been put with
+ * a time to live, and, if the {@link EvictionPolicy} is bounded, all keys. The keys are kept in two orders:
+ * <ul>
+ * <li>by recency, in a {@code LinkedHashMap} into which every write re-inserts its key, so the least recently written key comes first
+ * <li>by expiry time, in a tree, so the keys that have expired are found without a pass over the map, however many keys there are
+ * </ul>
+ * Ties in expiry time are broken by recency, so both orders are the same on every replica. A write or removal costs a hash lookup, and
+ * for a key with a time to live, a tree update.
+ * @param <K> map key type
+ */
+final class Eviction<K> {
+
+	/** The expiry time of a key without a time to live. */
+	static final long NEVER = Long.MAX_VALUE;
+
+	private static final Comparator<Age<?>> BY_EXPIRY = Comparator.<Age<?>> comparingLong(age -> age.expiresAt)
+			.thenComparingLong(age -> age.sequence);
+
+	private final EvictionPolicy policy;
+	private final boolean countBytes;
+	private final LinkedHashMap<K, Age<K>> ages = new LinkedHashMap<>(); // least recently written first
+	private final TreeSet<Age<K>> expiring = new TreeSet<>(BY_EXPIRY);
+	private long sequence; // the number of writes so far, which orders the writes of a commit
+	private long bytes; // estimated bytes of the tracked entries, if the policy bounds them
+
+	Eviction(EvictionPolicy policy) {
+		this.policy = policy;
+		this.countBytes = policy.maxBytes() < Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return whether writes must be reported one key at a time
+	 */
+	boolean isTracking() {
+		return policy.isBounded() || !ages.isEmpty();
+	}
+
+	/**
+	 * @param expiresAt the time in milliseconds of the epoch when the key expires, or {@link #NEVER}
+	 */
+	void written(K key, Object value, long expiresAt) {
+		Age<K> previous = ages.remove(key);
+		if (previous != null) {
+			forget(previous);
+		}
+		if (expiresAt != NEVER || policy.isBounded()) {
+			long entryBytes = countBytes ? StateMachineMetrics.ENTRY_BYTES + StateMachineMetrics.bytes(key)
+					+ StateMachineMetrics.bytes(value) : 0;
+			Age<K> age = new Age<>(key, sequence++, expiresAt, entryBytes);
+			ages.put(key, age);
+			bytes += entryBytes;
+			if (expiresAt != NEVER) {
+				expiring.add(age);
+			}
+		}
+	}
+
+	void removed(Object key) {
+		Age<K> age = ages.remove(key);
+		if (age != null) {
+			forget(age);
+		}
+	}
+
+	private void forget(Age<K> age) {
+		bytes -= age.bytes;
+		if (age.expiresAt != NEVER) {
+			expiring.remove(age);
+		}
+	}
+
+	void cleared() {
+		ages.clear();
+		expiring.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @param now the time in milliseconds of the epoch
+	 * @return the key that expires first, if it has expired by {@code now}, or {@code null}
+	 */
+	K expired(long now) {
+		return expiring.isEmpty() || expiring.first().expiresAt > now ? null : expiring.first().key;
+	}
+
+	/**
+	 * Queries see expired keys that the next command will remove. This costs a step for each of them, and nothing if there are none.
+	 * @param now the time in milliseconds of the epoch
+	 * @return the keys that have expired by {@code now}, in order of their expiry time
+	 */
+	List<K> expiredKeys(long now) {
+		if (expired(now) == null) {
+			return Collections.emptyList();
+		}
+		List<K> keys = new ArrayList<>();
+		for (Age<K> age : expiring) {
+			if (age.expiresAt > now) {
+				break;
+			}
+			keys.add(age.key);
+		}
+		return keys;
+	}
+
+	/**
+	 * @param now the time in milliseconds of the epoch
+	 */
+	boolean isExpired(Object key, long now) {
+		if (expiring.isEmpty()) {
+			return false;
+		}
+		Age<K> age = ages.get(key);
+		return age != null && age.expiresAt <= now;
+	}
+
+	/**
+	 * @param size the number of entries in the map
+	 * @return the least recently written key, if the map exceeds the bounds of the policy, or {@code null}
+	 */
+	K evictable(int size) {
+		if ((size > policy.maxEntries() || bytes > policy.maxBytes()) && !ages.isEmpty()) {
+			return ages.keySet().iterator().next();
+		}
+		return null;
+	}
+
+	/**
+	 * @return a copy of the expiry times of the tracked keys, least recently written first, for a snapshot
+	 */
+	Map<K, Long> expiries() {
+		Map<K, Long> expiries = new LinkedHashMap<>(ages.size() * 4 / 3 + 1);
+		for (Age<K> age : ages.values()) {
+			expiries.put(age.key, age.expiresAt);
+		}
+		return expiries;
+	}
+
+	/**
+	 * Starts over with a map that has been installed from a snapshot.
+	 * @param expiries the expiry times from the snapshot, least recently written first. Keys that are in the map but not here, because
+	 *        the snapshot has been taken under an unbounded policy or has an older format, count as written before all others.
+	 */
+	<V> void restore(Map<K, V> map, Map<K, Long> expiries) {
+		cleared();
+		if (policy.isBounded() && expiries.size() < map.size()) {
+			for (Entry<K, V> entry : map.entrySet()) {
+				if (!expiries.containsKey(entry.getKey())) {
+					written(entry.getKey(), entry.getValue(), NEVER);
+				}
+			}
+		}
+		for (Entry<K, Long> entry : expiries.entrySet()) {
+			V value = map.get(entry.getKey());
+			if (value != null) {
+				written(entry.getKey(), value, entry.getValue());
+			}
+		}
+	}
+
+	private static final class Age<K> {
+
+		final K key;
+		final long sequence;
+		final long expiresAt;
+		final long bytes;
+
+		Age(K key, long sequence, long expiresAt, long bytes) {
+			this.key = key;
+			this.sequence = sequence;
+			this.expiresAt = expiresAt;
+			this.bytes = bytes;
+		}
+	}
+}
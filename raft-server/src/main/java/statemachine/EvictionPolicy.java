@@ -0,0 +1,83 @@
+package statemachine;
+
+/**
+ * Bounds the size of the map of a {@link MapStateMachine} or {@link RetainingMapStateMachine}. When a command has left more entries or
+ * more estimated bytes in the map than the bound allows, the state machine evicts the least recently written entries until the map fits
+ * again. Recency is the order of the commits that have written the entries, and within a commit the order in which it has written them,
+ * so every replica evicts the same entries. Gets are queries, which are not replicated, so reading an entry does not make it recent.
+ * <p>
+ * The bytes are estimated as in {@link StateMachineMetrics}. An entry that is larger than the bound on its own is evicted by the
+ * command that has written it. All servers of a cluster must use the same policy, or their maps will differ.
+ * @author Initial author: Sebastian Millies
+ */
+public final class EvictionPolicy {
+
+	private static final EvictionPolicy UNBOUNDED = new EvictionPolicy(Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private final long maxEntries;
+	private final long maxBytes;
+
+	private EvictionPolicy(long maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return a policy that never evicts. Entries that have been put with a time to live still expire.
+	 */
+	public static EvictionPolicy unbounded() {
+		return UNBOUNDED;
+	}
+
+	public static EvictionPolicy maxEntries(long maxEntries) {
+		return UNBOUNDED.withMaxEntries(maxEntries);
+	}
+
+	public static EvictionPolicy maxBytes(long maxBytes) {
+		return UNBOUNDED.withMaxBytes(maxBytes);
+	}
+
+	/**
+	 * @return a policy with this bound on the bytes and the given bound on the entries
+	 */
+	public EvictionPolicy withMaxEntries(long maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		return new EvictionPolicy(maxEntries, maxBytes);
+	}
+
+	/**
+	 * @return a policy with this bound on the entries and the given bound on the bytes
+	 */
+	public EvictionPolicy withMaxBytes(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be positive");
+		}
+		return new EvictionPolicy(maxEntries, maxBytes);
+	}
+
+	/**
+	 * @return the maximum number of entries, or {@code Long.MAX_VALUE}
+	 */
+	public long maxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @return the maximum estimated bytes, or {@code Long.MAX_VALUE}
+	 */
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	public boolean isBounded() {
+		return maxEntries < Long.MAX_VALUE || maxBytes < Long.MAX_VALUE;
+	}
+
+	@Override
+	public String toString() {
+		return "EvictionPolicy [maxEntries=" + (maxEntries < Long.MAX_VALUE ? maxEntries : "unbounded") + ", maxBytes="
+				+ (maxBytes < Long.MAX_VALUE ? maxBytes : "unbounded") + "]";
+	}
+}
@@ -0,0 +1,40 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Puts a value that expires after a time to live, and returns the previous value. The state machine measures the time to live from the
+ * time of the commit, which the leader has assigned, so all replicas expire the entry at the same point in the log. A later put without
+ * a time to live makes the entry permanent again.
+ */
+
+public class ExpiringPutCommand<K,V> implements Command<V> {
+
+	private static final long serialVersionUID = 6523711804562271338L;
+
+	private final K key;
+	private final V value;
+	private final long ttlMillis;
+
+	public ExpiringPutCommand(K key, V value, long ttlMillis) {
+		if (ttlMillis < 1) {
+			throw new IllegalArgumentException("ttlMillis must be positive");
+		}
+		this.key = key;
+		this.value = value;
+		this.ttlMillis = ttlMillis;
+	}
+
+	public K key() {
+		return key;
+	}
+
+	public V value() {
+		return value;
+	}
+
+	public long ttlMillis() {
+		return ttlMillis;
+	}
+
+}
@@ -11,13 +11,27 @@ public class GetQuery<V> implements Query<V> {
 	private static final long serialVersionUID = 4052028310236517794L;
 	
 	private final Object key;
+	private final ConsistencyLevel consistency;
 
 	public GetQuery(Object key) {
+		this(key, null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public GetQuery(Object key, ConsistencyLevel consistency) {
 		this.key = key;
+		this.consistency = consistency;
 	}
 
 	public Object key() {
 		return key;
 	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package statemachine;
+
+import io.atomix.copycat.Query;
+
+/*
+ * Gets the value under a primitive long key, without boxing the key. Applies to the LongMapStateMachine.
+ */
+
+public class LongGetQuery<V> implements Query<V> {
+
+	private static final long serialVersionUID = -2270874015463517610L;
+
+	private final long key;
+	private final ConsistencyLevel consistency;
+
+	public LongGetQuery(long key) {
+		this(key, null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public LongGetQuery(long key, ConsistencyLevel consistency) {
+		this.key = key;
+		this.consistency = consistency;
+	}
+
+	public long key() {
+		return key;
+	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
+	}
+
+}
@@ -0,0 +1,69 @@
+package statemachine;
+
+import io.atomix.copycat.server.Commit;
+import io.atomix.copycat.server.Snapshottable;
+import io.atomix.copycat.server.StateMachine;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+import serialization.SnapshotFormat;
+import util.LongObjectMap;
+
+/**
+ * A map state machine for primitive long keys. Entries are stored in a {@link LongObjectMap}, so there is neither a boxed key nor a map
+ * node per entry. Use it with {@link LongPutCommand}, {@link LongGetQuery}, {@link ClearCommand} and {@link SizeQuery}. Null values are
+ * not stored: putting null removes the key.
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class LongMapStateMachine<V> extends StateMachine implements Snapshottable {
+
+	private LongObjectMap<V> map = new LongObjectMap<>();
+
+	public void clear(Commit<ClearCommand> commit) {
+		try {
+			map.clear();
+		}
+		finally {
+			commit.close();
+		}
+	}
+
+	public V put(Commit<LongPutCommand<V>> commit) {
+		try {
+			LongPutCommand<V> put = commit.operation();
+			return put.value() != null ? map.put(put.key(), put.value()) : map.remove(put.key());
+		}
+		finally {
+			commit.close();
+		}
+	}
+
+	public V get(Commit<LongGetQuery<V>> commit) {
+		try {
+			return map.get(commit.operation().key());
+		}
+		finally {
+			commit.close();
+		}
+	}
+
+	public int size(Commit<SizeQuery> commit) {
+		try {
+			return map.size();
+		}
+		finally {
+			commit.close();
+		}
+	}
+
+	// the map is mutable, so it is written on the state machine thread
+	@Override
+	public void snapshot(SnapshotWriter writer) {
+		StateMachineThread.run(executor, () -> SnapshotFormat.writeLongEntries(map, writer, executor.serializer()));
+	}
+
+	@Override
+	public void install(SnapshotReader reader) {
+		StateMachineThread.run(executor, () -> map = SnapshotFormat.readLongEntries(reader, executor.serializer()));
+	}
+}
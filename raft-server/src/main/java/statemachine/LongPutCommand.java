@@ -0,0 +1,29 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Puts a value under a primitive long key, without boxing the key. Applies to the LongMapStateMachine.
+ */
+
+public class LongPutCommand<V> implements Command<V> {
+
+	private static final long serialVersionUID = 3320958129462815076L;
+
+	private final long key;
+	private final V value;
+
+	public LongPutCommand(long key, V value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	public long key() {
+		return key;
+	}
+
+	public V value() {
+		return value;
+	}
+
+}
@@ -1,69 +1,92 @@
 package statemachine;
 
-import io.atomix.copycat.server.Commit;
+import io.atomix.catalyst.buffer.BufferOutput;
 import io.atomix.copycat.server.Snapshottable;
-import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import serialization.CountingOutput;
+import serialization.SnapshotFormat;
+import util.HashTrieMap;
 
-public class MapStateMachine<K,V> extends StateMachine implements Snapshottable {
+/**
+ * A map state machine that closes every commit as soon as it has been applied, and relies on snapshots to survive log compaction.
+ * @param <K> map key type
+ * @param <V> map value type
+ */
+public class MapStateMachine<K,V> extends AbstractMapStateMachine<K,V> implements Snapshottable {
 
-	// this is not a concurrent map. Copycat should serialize all operations on this state machine, so there is no potential for
-	// concurrency. Or is there? It would be surprising, given that we  Copycat works by log replication, and the log probably
-	// cannot express parallelism
-	private Map<K, V> map = new HashMap<>();
+	private final boolean compressSnapshots;
+	private final StartupTimes startup; // null if the start is not timed
 
-	/*
-	 * State machine operations are implemented as public methods on the state machine class which accept a single Commit parameter where
-	 * the generic argument for the commit is the operation accepted by the method. Copycat automatically detects the command or query that
-	 * applies to a given state machine methods based on the generic argument to the Commit parameter.
+	public MapStateMachine() {
+		this(StoreFactory.persistent());
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
 	 */
+	public MapStateMachine(StoreFactory<K, V> storeFactory) {
+		this(storeFactory, false);
+	}
 
-	public void clear(Commit<ClearCommand> commit) {
-		try {
-			map.clear();
-		}
-		finally {
-			commit.close(); // finally block required, not AutoCloseable
-		}
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 */
+	public MapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues) {
+		this(storeFactory, indexValues, null);
 	}
-	
-	public V put(Commit<PutCommand<K,V>> commit) {
-		try {
-			return map.put(commit.operation().key(), commit.operation().value());
-		}
-		finally {
-			commit.close(); // finally block required, not AutoCloseable
-		}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations and snapshots of this state machine, or {@code null} for none
+	 */
+	public MapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics) {
+		this(storeFactory, indexValues, metrics, false);
 	}
 
-	public V get(Commit<GetQuery<V>> commit) {
-		try {
-			return map.get(commit.operation().key());
-		}
-		finally {
-			commit.close();
-		}
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations and snapshots of this state machine, or {@code null} for none
+	 * @param compressSnapshots whether to compress the blocks of a snapshot. Values that have been compressed by the client, as
+	 *        {@link CompressedValue}s, gain little from it.
+	 */
+	public MapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics, boolean compressSnapshots) {
+		this(storeFactory, indexValues, metrics, compressSnapshots, null);
 	}
-	
-	public int size(Commit<SizeQuery> commit) {
-		try {
-			return map.size();
-		}
-		finally {
-			commit.close();
-		}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations and snapshots of this state machine, or {@code null} for none
+	 * @param compressSnapshots whether to compress the blocks of a snapshot
+	 * @param startup records the install of the snapshot when the server starts, or {@code null}
+	 */
+	public MapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics, boolean compressSnapshots,
+			StartupTimes startup) {
+		this(storeFactory, indexValues, metrics, compressSnapshots, startup, EvictionPolicy.unbounded());
 	}
-	
-	public Map<K, V> snapshot(Commit<SnapshotQuery<K,V>> commit) {
-		try {
-			return map;
-		}
-		finally {
-			commit.close();
-		}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations and snapshots of this state machine, or {@code null} for none
+	 * @param compressSnapshots whether to compress the blocks of a snapshot
+	 * @param startup records the install of the snapshot when the server starts, or {@code null}
+	 * @param evictionPolicy bounds the size of the map
+	 */
+	public MapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics, boolean compressSnapshots,
+			StartupTimes startup, EvictionPolicy evictionPolicy) {
+		super(storeFactory, indexValues, metrics, evictionPolicy);
+		this.compressSnapshots = compressSnapshots;
+		this.startup = startup;
 	}
 
 	/*
@@ -71,14 +94,76 @@ public class MapStateMachine<K,V> extends StateMachine implements Snapshottable
 	 * snapshot to disk. If the server is restarted, the state machines state will be recovered from the on-disk snapshot. When a new
 	 * server joins the cluster, the snapshot of the state machine will be replicated to the joining server to catch up its state. This
 	 * allows Copycat to remove commits that contributed to the snapshot from the replicated log, thus conserving disk space
+	 *
+	 * The state is captured on the state machine thread, see StateMachineThread. A HashTrieMap is captured as an immutable view, which is
+	 * written on the server thread while the state machine thread continues. Other stores are written on the state machine thread. The
+	 * expiry times and the eviction order are copied on the state machine thread, which costs a pass over the keys that have a time to
+	 * live, or over all keys under a bounded eviction policy.
+	 *
+	 * The duration in the metrics is the time from the request until the snapshot has been written, including the wait for the state
+	 * machine thread.
 	 */
 	@Override
 	public void snapshot(SnapshotWriter writer) {
-		writer.writeObject(map);
+		long start = metrics != null ? System.nanoTime() : 0;
+		CountingOutput output = metrics != null ? new CountingOutput(writer) : null;
+		StateMachineThread.call(executor, () -> capture(output != null ? output : writer)).run();
+		if (metrics != null) {
+			metrics.snapshotted(System.nanoTime() - start, output.count());
+		}
+	}
+
+	// returns the part of writing the snapshot that may run on another thread
+	private Runnable capture(BufferOutput<?> writer) {
+		List<Long> ids = new ArrayList<>(listeners);
+		Map<K, Long> expiries = expiries();
+		if (map instanceof HashTrieMap) {
+			Map<K, V> view = ((HashTrieMap<K, V>) map).snapshot();
+			return () -> write(view, expiries, ids, writer);
+		}
+		write(map, expiries, ids, writer);
+		return () -> {};
+	}
+
+	private void write(Map<K, V> entries, Map<K, Long> expiries, List<Long> ids, BufferOutput<?> writer) {
+		SnapshotFormat.writeEntries(entries, expiries, writer, executor.serializer(), compressSnapshots);
+		writer.writeInt(ids.size());
+		for (long id : ids) {
+			writer.writeLong(id);
+		}
 	}
 
+	/*
+	 * The blocks of the snapshot are decoded on the common fork/join pool, while this thread puts the entries into the new map, which
+	 * the store factory creates for the entry count of the snapshot. The pool has one thread less than there are processors, unless the
+	 * system property java.util.concurrent.ForkJoinPool.common.parallelism says otherwise. With fewer than two threads, the snapshot is
+	 * decoded on this thread.
+	 */
 	@Override
 	public void install(SnapshotReader reader) {
-		map = reader.readObject();
+		StateMachineThread.run(executor, () -> restore(reader));
+	}
+
+	private void restore(SnapshotReader reader) {
+		long start = metrics != null ? System.nanoTime() : 0;
+		long bytes = reader.remaining();
+		if (startup != null) {
+			startup.installing();
+		}
+		Map<K, Long> expiries = new LinkedHashMap<>();
+		map = SnapshotFormat.readEntries(reader, executor.serializer(), size -> storeFactory.create(size, executor.serializer()),
+				ForkJoinPool.commonPool(), expiries::put);
+		indexValues();
+		restoreExpiries(expiries);
+		listeners.clear();
+		for (int n = reader.readInt(); n > 0; n--) {
+			listeners.add(reader.readLong());
+		}
+		if (metrics != null) {
+			metrics.installed(map, System.nanoTime() - start, bytes);
+		}
+		if (startup != null) {
+			startup.installed(map.size(), bytes);
+		}
 	}
 }
@@ -0,0 +1,39 @@
+package statemachine;
+
+import io.atomix.copycat.Query;
+import java.util.Collection;
+import java.util.Map;
+
+/*
+ * Gets the values for several keys at once. The result contains only the keys that are present in the map.
+ */
+
+public class MultiGetQuery<K,V> implements Query<Map<K, V>> {
+
+	private static final long serialVersionUID = -1558463398417393021L;
+
+	private final Collection<K> keys;
+	private final ConsistencyLevel consistency;
+
+	public MultiGetQuery(Collection<K> keys) {
+		this(keys, null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public MultiGetQuery(Collection<K> keys, ConsistencyLevel consistency) {
+		this.keys = keys;
+		this.consistency = consistency;
+	}
+
+	public Collection<K> keys() {
+		return keys;
+	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
+	}
+
+}
@@ -0,0 +1,407 @@
+package statemachine;
+
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import serialization.SnapshotFormat;
+import serialization.Values;
+
+/**
+ * A map that keeps its entries serialized in off-heap slabs (direct {@code ByteBuffer}s), so that large maps put no load on the garbage
+ * collector. Only a hash index stays on the heap: an int hash and a long slab address per slot, with open addressing and linear probing,
+ * and no object per entry.
+ * <p>
+ * A record holds the key length, the value length, and the key and value as written by {@link Values}. Records are allocated in
+ * power-of-two size classes. An overwrite reuses the record if the new size falls into the same class; freed records go on a free list
+ * per size class. {@link #clear()} keeps the slabs and starts filling them from the beginning again.
+ * <p>
+ * Keys are compared by their serialized form, so two keys are the same key if and only if they serialize to the same bytes. Every
+ * {@link #get(Object)} deserializes the value. Iteration deserializes the entries and does not support removal.
+ * <p>
+ * This class is not thread-safe.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class OffHeapStore<K, V> extends AbstractMap<K, V> {
+
+	public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+	private static final int HEADER = 8; // key length, value length
+	private static final int MIN_RECORD_SHIFT = 4; // smallest size class is 16 bytes
+	private static final long EMPTY = -1L;
+
+	private final Serializer serializer;
+	private final int slabSize;
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	private int slab; // index of the slab that is being filled
+	private int slabTop; // first free byte in that slab
+	private final long[][] freeLists;
+	private final int[] freeCounts;
+
+	private int[] hashes;
+	private long[] addresses;
+	private int mask;
+	private int size;
+	private int resizeAt;
+
+	private final HeapBuffer scratch = HeapBuffer.allocate(256);
+	private byte[] copy = new byte[256];
+
+	public OffHeapStore(int expectedSize, Serializer serializer) {
+		this(expectedSize, serializer, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * @param slabSize the size of each off-heap slab, must be a power of two; no entry can be larger than a slab
+	 */
+	public OffHeapStore(int expectedSize, Serializer serializer, int slabSize) {
+		if (slabSize < 1 << MIN_RECORD_SHIFT || Integer.bitCount(slabSize) != 1) {
+			throw new IllegalArgumentException("slabSize must be a power of two of at least " + (1 << MIN_RECORD_SHIFT));
+		}
+		this.serializer = serializer;
+		this.slabSize = slabSize;
+		int sizeClasses = Integer.numberOfTrailingZeros(slabSize) - MIN_RECORD_SHIFT + 1;
+		this.freeLists = new long[sizeClasses][];
+		this.freeCounts = new int[sizeClasses];
+		allocateIndex(capacityFor(expectedSize));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		int keyLength = encodeKey(key, 0);
+		return find(0, keyLength, hash(0, keyLength)) >= 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		int keyLength = encodeKey(key, 0);
+		int i = find(0, keyLength, hash(0, keyLength));
+		return i >= 0 ? readValue(addresses[i]) : null;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		scratch.clear().writeInt(0).writeInt(0);
+		int keyLength = encodeKey(key, HEADER);
+		Values.write(value, scratch, serializer);
+		int length = (int) scratch.position();
+		byte[] record = scratch.array();
+		ByteBuffer.wrap(record).putInt(0, keyLength).putInt(4, length - HEADER - keyLength);
+		int hash = hash(HEADER, keyLength);
+
+		int i = find(HEADER, keyLength, hash);
+		if (i >= 0) {
+			long address = addresses[i];
+			V old = readValue(address);
+			int oldLength = recordLength(address);
+			if (sizeClass(oldLength) != sizeClass(length)) {
+				free(address, oldLength);
+				address = allocate(length);
+				addresses[i] = address;
+			}
+			write(address, record, length);
+			return old;
+		}
+		long address = allocate(length);
+		write(address, record, length);
+		i = hash & mask;
+		while (addresses[i] != EMPTY) {
+			i = (i + 1) & mask;
+		}
+		hashes[i] = hash;
+		addresses[i] = address;
+		if (++size > resizeAt) {
+			resizeIndex(addresses.length * 2);
+		}
+		return null;
+	}
+
+	@Override
+	public V remove(Object key) {
+		int keyLength = encodeKey(key, 0);
+		int i = find(0, keyLength, hash(0, keyLength));
+		if (i < 0) {
+			return null;
+		}
+		long address = addresses[i];
+		V old = readValue(address);
+		free(address, recordLength(address));
+		shiftBack(i);
+		size--;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(addresses, EMPTY);
+		Arrays.fill(freeCounts, 0);
+		slab = 0;
+		slabTop = 0;
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Writes the records as they are stored, without deserializing them: for each entry the key and then the value, as written by
+	 * {@link Values}.
+	 */
+	public void writeRecords(SnapshotFormat.Blocks blocks) {
+		ByteBuffer[] views = new ByteBuffer[slabs.size()];
+		for (int j = 0; j < views.length; j++) {
+			views[j] = slabs.get(j).duplicate();
+		}
+		for (long address : addresses) {
+			if (address != EMPTY) {
+				ByteBuffer view = views[slabOf(address)];
+				int offset = offsetOf(address);
+				int length = view.getInt(offset) + view.getInt(offset + 4);
+				if (copy.length < length) {
+					copy = new byte[Math.max(length, copy.length * 2)];
+				}
+				((Buffer) view).position(offset + HEADER); // through Buffer: Java 8 lacks ByteBuffer.position(int)
+				view.get(copy, 0, length);
+				blocks.output().write(copy, 0, length);
+				blocks.recordWritten();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes allocated off the heap
+	 */
+	public long offHeapBytes() {
+		return (long) slabs.size() * slabSize;
+	}
+
+	// -------------------------------------------------------------------
+
+	private int encodeKey(Object key, int offset) {
+		if (offset == 0) {
+			scratch.clear();
+		}
+		Values.write(key, scratch, serializer);
+		return (int) scratch.position() - offset;
+	}
+
+	private int find(int keyOffset, int keyLength, int hash) {
+		byte[] key = scratch.array();
+		for (int i = hash & mask; addresses[i] != EMPTY; i = (i + 1) & mask) {
+			if (hashes[i] == hash && keyEquals(addresses[i], key, keyOffset, keyLength)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean keyEquals(long address, byte[] key, int keyOffset, int keyLength) {
+		ByteBuffer buffer = slabs.get(slabOf(address));
+		int offset = offsetOf(address);
+		if (buffer.getInt(offset) != keyLength) {
+			return false;
+		}
+		for (int j = 0; j < keyLength; j++) {
+			if (buffer.get(offset + HEADER + j) != key[keyOffset + j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int h = 1;
+		for (int j = offset; j < offset + length; j++) {
+			h = 31 * h + bytes[j];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private int hash(int keyOffset, int keyLength) {
+		return hash(scratch.array(), keyOffset, keyLength);
+	}
+
+	private int recordLength(long address) {
+		ByteBuffer buffer = slabs.get(slabOf(address));
+		int offset = offsetOf(address);
+		return HEADER + buffer.getInt(offset) + buffer.getInt(offset + 4);
+	}
+
+	private V readValue(long address) {
+		ByteBuffer buffer = slabs.get(slabOf(address));
+		int offset = offsetOf(address);
+		int keyLength = buffer.getInt(offset);
+		byte[] value = new byte[buffer.getInt(offset + 4)];
+		ByteBuffer source = buffer.duplicate();
+		((Buffer) source).position(offset + HEADER + keyLength);
+		source.get(value);
+		return Values.read(HeapBuffer.wrap(value), serializer);
+	}
+
+	// copies a record into the shared copy array
+	private byte[] read(long address, int length) {
+		if (copy.length < length) {
+			copy = new byte[Math.max(length, copy.length * 2)];
+		}
+		ByteBuffer source = slabs.get(slabOf(address)).duplicate();
+		((Buffer) source).position(offsetOf(address));
+		source.get(copy, 0, length);
+		return copy;
+	}
+
+	private void write(long address, byte[] record, int length) {
+		ByteBuffer target = slabs.get(slabOf(address)).duplicate();
+		((Buffer) target).position(offsetOf(address));
+		target.put(record, 0, length);
+	}
+
+	private int sizeClass(int length) {
+		if (length > slabSize) {
+			throw new IllegalArgumentException("Entry of " + length + " bytes does not fit into a slab of " + slabSize + " bytes");
+		}
+		int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1 << MIN_RECORD_SHIFT) - 1);
+		return shift - MIN_RECORD_SHIFT;
+	}
+
+	private long allocate(int length) {
+		int sizeClass = sizeClass(length);
+		if (freeCounts[sizeClass] > 0) {
+			return freeLists[sizeClass][--freeCounts[sizeClass]];
+		}
+		int recordSize = 1 << (sizeClass + MIN_RECORD_SHIFT);
+		if (slabs.isEmpty() || slabTop + recordSize > slabSize) {
+			if (!slabs.isEmpty()) {
+				slab++;
+			}
+			if (slab == slabs.size()) {
+				slabs.add(ByteBuffer.allocateDirect(slabSize));
+			}
+			slabTop = 0;
+		}
+		long address = (long) slab << 32 | slabTop;
+		slabTop += recordSize;
+		return address;
+	}
+
+	private void free(long address, int length) {
+		int sizeClass = sizeClass(length);
+		long[] list = freeLists[sizeClass];
+		if (list == null || freeCounts[sizeClass] == list.length) {
+			freeLists[sizeClass] = list = list == null ? new long[16] : Arrays.copyOf(list, list.length * 2);
+		}
+		list[freeCounts[sizeClass]++] = address;
+	}
+
+	private static int slabOf(long address) {
+		return (int) (address >>> 32);
+	}
+
+	private static int offsetOf(long address) {
+		return (int) address;
+	}
+
+	// closes the gap at index by moving back entries whose probe sequence passes through it
+	private void shiftBack(int gap) {
+		for (int i = (gap + 1) & mask; addresses[i] != EMPTY; i = (i + 1) & mask) {
+			int home = hashes[i] & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				hashes[gap] = hashes[i];
+				addresses[gap] = addresses[i];
+				gap = i;
+			}
+		}
+		addresses[gap] = EMPTY;
+	}
+
+	private void resizeIndex(int capacity) {
+		int[] oldHashes = hashes;
+		long[] oldAddresses = addresses;
+		allocateIndex(capacity);
+		for (int j = 0; j < oldAddresses.length; j++) {
+			if (oldAddresses[j] != EMPTY) {
+				int i = oldHashes[j] & mask;
+				while (addresses[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				hashes[i] = oldHashes[j];
+				addresses[i] = oldAddresses[j];
+			}
+		}
+	}
+
+	private void allocateIndex(int capacity) {
+		hashes = new int[capacity];
+		addresses = new long[capacity];
+		Arrays.fill(addresses, EMPTY);
+		mask = capacity - 1;
+		resizeAt = capacity / 4 * 3; // load factor 0.75
+	}
+
+	private static int capacityFor(int expectedSize) {
+		long needed = (long) expectedSize * 4 / 3 + 1;
+		if (needed > 1 << 30) {
+			throw new IllegalArgumentException("expectedSize too large: " + expectedSize);
+		}
+		return Math.max(16, Integer.highestOneBit((int) needed - 1) << 1);
+	}
+
+	private class EntryIterator implements Iterator<Entry<K, V>> {
+
+		private int next = advance(0);
+
+		private int advance(int from) {
+			int i = from;
+			while (i < addresses.length && addresses[i] == EMPTY) {
+				i++;
+			}
+			return i;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < addresses.length;
+		}
+
+		@Override
+		public Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			long address = addresses[next];
+			next = advance(next + 1);
+			int length = recordLength(address);
+			HeapBuffer record = HeapBuffer.wrap(Arrays.copyOfRange(read(address, length), HEADER, length));
+			K key = Values.read(record, serializer);
+			V value = Values.read(record, serializer);
+			return new SimpleImmutableEntry<>(key, value);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package statemachine;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * The count and latencies of one kind of operation, in nanoseconds. Percentiles are the upper bounds of power-of-two buckets, so they
+ * may overstate a latency by up to a factor of two, but never by more than the maximum.
+ */
+public final class OperationStats implements Serializable {
+
+	private static final long serialVersionUID = 4830562183079543212L;
+
+	private final String operation;
+	private final long count;
+	private final long meanNanos;
+	private final long p50Nanos;
+	private final long p99Nanos;
+	private final long maxNanos;
+
+	@ConstructorProperties({ "operation", "count", "meanNanos", "p50Nanos", "p99Nanos", "maxNanos" }) // for JMX clients
+	public OperationStats(String operation, long count, long meanNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+		this.operation = operation;
+		this.count = count;
+		this.meanNanos = meanNanos;
+		this.p50Nanos = p50Nanos;
+		this.p99Nanos = p99Nanos;
+		this.maxNanos = maxNanos;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMeanNanos() {
+		return meanNanos;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: count=%d, mean=%d ns, p50=%d ns, p99=%d ns, max=%d ns", operation, count, meanNanos, p50Nanos, p99Nanos,
+				maxNanos);
+	}
+}
@@ -0,0 +1,24 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+import java.util.Map;
+
+/*
+ * Puts all entries of a map with a single log entry.
+ */
+
+public class PutAllCommand<K,V> implements Command<Void> {
+
+	private static final long serialVersionUID = 2984576108347719362L;
+
+	private final Map<K, V> entries;
+
+	public PutAllCommand(Map<K, V> entries) {
+		this.entries = entries;
+	}
+
+	public Map<K, V> entries() {
+		return entries;
+	}
+
+}
@@ -0,0 +1,29 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Puts a value only if the key is absent. Returns the current value, or null if the value has been put.
+ */
+
+public class PutIfAbsentCommand<K,V> implements Command<V> {
+
+	private static final long serialVersionUID = -2413570891462278013L;
+
+	private final K key;
+	private final V value;
+
+	public PutIfAbsentCommand(K key, V value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	public K key() {
+		return key;
+	}
+
+	public V value() {
+		return value;
+	}
+
+}
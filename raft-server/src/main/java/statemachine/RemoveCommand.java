@@ -0,0 +1,29 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Removes a key and returns its previous value. Like a ClearCommand, a removal must stay in the log for as long as the entries it has
+ * superseded.
+ */
+
+public class RemoveCommand<K,V> implements Command<V> {
+
+	private static final long serialVersionUID = 3160215728497120346L;
+
+	private final K key;
+
+	public RemoveCommand(K key) {
+		this.key = key;
+	}
+
+	public K key() {
+		return key;
+	}
+
+	@Override
+	public CompactionMode compaction() {
+		return CompactionMode.TOMBSTONE;
+	}
+
+}
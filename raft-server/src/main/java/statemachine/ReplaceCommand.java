@@ -0,0 +1,29 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Puts a value only if the key is present. Returns the previous value, or null if nothing has been replaced.
+ */
+
+public class ReplaceCommand<K,V> implements Command<V> {
+
+	private static final long serialVersionUID = 6637021587944916278L;
+
+	private final K key;
+	private final V value;
+
+	public ReplaceCommand(K key, V value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	public K key() {
+		return key;
+	}
+
+	public V value() {
+		return value;
+	}
+
+}
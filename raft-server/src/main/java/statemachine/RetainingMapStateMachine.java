@@ -0,0 +1,140 @@
+package statemachine;
+
+import io.atomix.copycat.server.Commit;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map state machine that does not take snapshots. Instead, it keeps open the commits that make up the current state of the map, and
+ * Copycat's log compaction removes the commits that have been closed. A commit is closed when all keys that it has written have been
+ * written again, removed or cleared. Removals and clears are tombstones, which Copycat removes only together with the commits that they
+ * have superseded. The subscription of a session is kept until the session ends, so invalidation events survive a restart.
+ * <p>
+ * Without snapshots, there are no pauses for writing the whole map, but the log keeps one entry for each key, and a restarting or
+ * joining server replays it. Superseded commands are only removed by major compaction, see
+ * {@code Storage.Builder.withMajorCompactionInterval}.
+ * <p>
+ * An entry that has expired or been evicted releases its commit like a removal, but without a tombstone: if log compaction has not
+ * removed the commit yet, replaying it expires or evicts the entry again.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class RetainingMapStateMachine<K, V> extends AbstractMapStateMachine<K, V> {
+
+	// the commit that has most recently written each key
+	private final Map<K, Retention> retained = new HashMap<>();
+	private final Map<Long, Commit<?>> subscriptions = new HashMap<>();
+	private Retention current; // the commit being applied, if it has written a key
+
+	public RetainingMapStateMachine() {
+		this(StoreFactory.persistent());
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 */
+	public RetainingMapStateMachine(StoreFactory<K, V> storeFactory) {
+		this(storeFactory, false);
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 */
+	public RetainingMapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues) {
+		super(storeFactory, indexValues);
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations of this state machine, or {@code null} for none
+	 */
+	public RetainingMapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics) {
+		super(storeFactory, indexValues, metrics);
+	}
+
+	/**
+	 * @param storeFactory creates the map that holds the entries
+	 * @param indexValues whether to maintain an index that answers {@link ContainsValueQuery} without a pass over the map
+	 * @param metrics records the operations of this state machine, or {@code null} for none
+	 * @param evictionPolicy bounds the size of the map
+	 */
+	public RetainingMapStateMachine(StoreFactory<K, V> storeFactory, boolean indexValues, StateMachineMetrics metrics,
+			EvictionPolicy evictionPolicy) {
+		super(storeFactory, indexValues, metrics, evictionPolicy);
+	}
+
+	@Override
+	protected void written(K key, Commit<?> commit) {
+		if (current == null) {
+			current = new Retention(commit);
+		}
+		current.references++;
+		Retention previous = retained.put(key, current);
+		if (previous != null) {
+			previous.release();
+		}
+	}
+
+	@Override
+	protected void removed(K key, Commit<?> commit) {
+		Retention previous = retained.remove(key);
+		if (previous != null) {
+			previous.release();
+		}
+	}
+
+	@Override
+	protected void cleared(Commit<?> commit) {
+		for (Retention retention : retained.values()) {
+			retention.release();
+		}
+		retained.clear();
+	}
+
+	@Override
+	protected void release(Commit<?> commit) {
+		if (current != null) {
+			current.release(); // the reference held while the commit was applied
+			current = null;
+		}
+		else if (commit.operation() instanceof SubscribeCommand) {
+			Commit<?> previous = subscriptions.put(commit.session().id(), commit);
+			if (previous != null) {
+				previous.close();
+			}
+		}
+		else {
+			commit.close();
+		}
+	}
+
+	@Override
+	protected void unsubscribed(long sessionId) {
+		Commit<?> subscription = subscriptions.remove(sessionId);
+		if (subscription != null) {
+			subscription.close();
+		}
+	}
+
+	/*
+	 * Counts the keys for which a commit is the most recent write, plus one while the commit is being applied.
+	 */
+	private static final class Retention {
+
+		final Commit<?> commit;
+		int references = 1;
+
+		Retention(Commit<?> commit) {
+			this.commit = commit;
+		}
+
+		void release() {
+			if (--references == 0) {
+				commit.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package statemachine;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map.Entry;
+import statemachine.ScanQuery.Projection;
+
+/*
+ * The result of a ScanQuery: a page of entries and the cursor from which to fetch the next page. With a projection of KEYS or VALUES,
+ * the other half of each entry is null and is not transferred.
+ */
+
+public class ScanPage<K,V> implements Serializable {
+
+	private static final long serialVersionUID = 6202398710568117542L;
+
+	/** The cursor of the last page. There is nothing more to fetch. */
+	public static final long END = -1L;
+
+	private final List<Entry<K, V>> entries;
+	private final long next;
+	private final Projection projection;
+
+	public ScanPage(List<Entry<K, V>> entries, long next) {
+		this(entries, next, Projection.ENTRIES);
+	}
+
+	public ScanPage(List<Entry<K, V>> entries, long next, Projection projection) {
+		this.entries = entries;
+		this.next = next;
+		this.projection = projection;
+	}
+
+	public List<Entry<K, V>> entries() {
+		return entries;
+	}
+
+	/**
+	 * @return the cursor of the next page, or {@link #END}
+	 */
+	public long next() {
+		return next;
+	}
+
+	public Projection projection() {
+		return projection;
+	}
+
+	public boolean hasNext() {
+		return next != END;
+	}
+}
@@ -0,0 +1,100 @@
+package statemachine;
+
+import io.atomix.copycat.Query;
+import util.HashTrieMap;
+
+/*
+ * Gets one page of map entries. Entries are returned in the order of their scan hash (see hash(Object)), so a scan can be resumed from
+ * the cursor of the previous page without the server keeping any state between pages. A cursor packs the unsigned hash of the last
+ * entry returned into its upper 32 bits, and the number of entries with that hash that have already been returned into its lower 32 bits.
+ *
+ * Like the iterators of ConcurrentHashMap, a scan is weakly consistent: every entry that is present for the whole scan is returned
+ * exactly once, entries that are added or removed during the scan may or may not be returned. This assumes that keys have a hashCode
+ * that is the same in every JVM, as String and Long have.
+ *
+ * The projection selects what a page carries: whole entries, only keys, or only values.
+ */
+
+public class ScanQuery<K,V> implements Query<ScanPage<K, V>> {
+
+	private static final long serialVersionUID = -4712398805216730265L;
+
+	/** The cursor that starts a scan at the beginning of the map. */
+	public static final long START = 0L;
+
+	/** The part of each entry that a page carries. */
+	public enum Projection {
+		ENTRIES, KEYS, VALUES
+	}
+
+	private final long cursor;
+	private final int pageSize;
+	private final Projection projection;
+	private final ConsistencyLevel consistency;
+
+	public ScanQuery(long cursor, int pageSize) {
+		this(cursor, pageSize, null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public ScanQuery(long cursor, int pageSize, ConsistencyLevel consistency) {
+		this(cursor, pageSize, Projection.ENTRIES, consistency);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public ScanQuery(long cursor, int pageSize, Projection projection, ConsistencyLevel consistency) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
+		if (projection == null) {
+			throw new IllegalArgumentException("projection must not be null");
+		}
+		this.cursor = cursor;
+		this.pageSize = pageSize;
+		this.projection = projection;
+		this.consistency = consistency;
+	}
+
+	public long cursor() {
+		return cursor;
+	}
+
+	public int pageSize() {
+		return pageSize;
+	}
+
+	public Projection projection() {
+		return projection;
+	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
+	}
+
+	/**
+	 * @return the hash that determines the scan order of a key, to be compared as an unsigned int
+	 */
+	public static int hash(Object key) {
+		return HashTrieMap.hash(key);
+	}
+
+	/**
+	 * @return a cursor that resumes a scan after {@code offset} entries with the given hash
+	 */
+	public static long cursor(int hash, int offset) {
+		return ((long) hash << 32) | (offset & 0xFFFFFFFFL);
+	}
+
+	static int hashOf(long cursor) {
+		return (int) (cursor >>> 32);
+	}
+
+	static int offsetOf(long cursor) {
+		return (int) cursor;
+	}
+}
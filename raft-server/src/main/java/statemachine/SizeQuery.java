@@ -6,7 +6,22 @@ public class SizeQuery implements Query<Integer> {
 
 	private static final long serialVersionUID = -3471386293907107116L;
 
+	private final ConsistencyLevel consistency;
+
 	public SizeQuery() {
+		this(null);
+	}
+
+	/**
+	 * @param consistency the consistency level of this query, or {@code null} for the Copycat default (linearizable)
+	 */
+	public SizeQuery(ConsistencyLevel consistency) {
+		this.consistency = consistency;
+	}
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return consistency;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package statemachine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The milestones of starting a server, in milliseconds from the creation of this object: when the storage has been opened, when the
+ * server has joined its cluster, when the state machine has started and finished installing its snapshot, and when the server has
+ * caught up with the cluster. {@code StartServer} records them for every partition and prints them once the server has caught up. Pass
+ * the instance to the constructor of a {@link MapStateMachine} so that it records the snapshot install.
+ * <p>
+ * Copycat installs the snapshot when the state machine reaches the snapshot index, and then replays the rest of the log, the log tail.
+ * The time of the replay is the time from the end of the install until the server has caught up, or from joining the cluster if there
+ * was no snapshot. Only the first install is recorded, later ones happen while the server is running.
+ * <p>
+ * Milestones that have not been reached are -1. All methods are thread-safe.
+ * @author Initial author: Sebastian Millies
+ */
+public final class StartupTimes {
+
+	private final long start = System.nanoTime();
+	private volatile long storageOpened = -1;
+	private volatile long joined = -1;
+	private volatile long installStarted = -1;
+	private volatile long installed = -1;
+	private volatile int installedEntries;
+	private volatile long installedBytes;
+	private volatile long caughtUp = -1;
+
+	public void storageOpened() {
+		storageOpened = now();
+	}
+
+	public void joined() {
+		joined = now();
+	}
+
+	/**
+	 * Records that the server has applied everything that the cluster had committed when it joined.
+	 */
+	public void caughtUp() {
+		caughtUp = now();
+	}
+
+	void installing() {
+		if (installStarted < 0) {
+			installStarted = now();
+		}
+	}
+
+	void installed(int entries, long bytes) {
+		if (installed < 0) {
+			installedEntries = entries;
+			installedBytes = bytes;
+			installed = now();
+		}
+	}
+
+	private long now() {
+		return System.nanoTime() - start;
+	}
+
+	public long storageOpenedMillis() {
+		return millis(storageOpened);
+	}
+
+	public long joinedMillis() {
+		return millis(joined);
+	}
+
+	public long installStartedMillis() {
+		return millis(installStarted);
+	}
+
+	public long installedMillis() {
+		return millis(installed);
+	}
+
+	public int installedEntries() {
+		return installedEntries;
+	}
+
+	public long installedBytes() {
+		return installedBytes;
+	}
+
+	public long caughtUpMillis() {
+		return millis(caughtUp);
+	}
+
+	/**
+	 * @return the time from the end of the install, or from joining if there was no install, until the server had caught up
+	 */
+	public long replayMillis() {
+		long from = installed >= 0 ? installed : joined;
+		return caughtUp < 0 || from < 0 ? -1 : millis(Math.max(0, caughtUp - from));
+	}
+
+	private static long millis(long nanos) {
+		return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	@Override
+	public String toString() {
+		String install = installed < 0 ? "no snapshot installed"
+				: String.format("snapshot of %d entries (%d KB) installed from %d to %d ms", installedEntries, installedBytes / 1024,
+						installStartedMillis(), installedMillis());
+		return String.format("storage opened at %d ms, joined at %d ms, %s, log tail replayed in %d ms, caught up at %d ms",
+				storageOpenedMillis(), joinedMillis(), install, replayMillis(), caughtUpMillis());
+	}
+}
@@ -0,0 +1,282 @@
+package statemachine;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the operations of a map state machine. Pass an instance to the constructor of a {@link MapStateMachine} or
+ * {@link RetainingMapStateMachine}, and register it with the platform MBean server to read it over JMX. Clients read the same numbers
+ * with a {@link StatsQuery}.
+ * <p>
+ * Recording allocates nothing. Every operation has a histogram with one bucket per power of two of nanoseconds, so latencies are
+ * reported to within a factor of two. The commit count is a striped {@link LongAdder}, which JMX threads can read while commands are
+ * applied.
+ * <p>
+ * The estimated bytes are the sum of a fixed overhead per entry and the sizes of keys and values. Strings, byte arrays and
+ * {@link CompressedValue}s are sized from their length, all other objects, such as boxed longs, count as {@value #OBJECT_BYTES} bytes.
+ * The estimate is meant for watching trends, not for sizing the heap: it does not know the store, and for an {@link OffHeapStore} the
+ * entries are not on the heap.
+ * @author Initial author: Sebastian Millies
+ */
+public class StateMachineMetrics implements StateMachineMetricsMXBean {
+
+	/** The operations of a map state machine. */
+	public enum Operation {
+		PUT, PUT_ALL, REMOVE, PUT_IF_ABSENT, REPLACE, COMPARE_AND_SET, CLEAR, BATCH, SUBSCRIBE, // commands
+		GET, GET_ALL, CONTAINS_KEY, CONTAINS_VALUE, SCAN, SIZE, SNAPSHOT, STATS // queries
+	}
+
+	static final long ENTRY_BYTES = 32; // a HashMap node or a trie leaf with its slot
+	static final long OBJECT_BYTES = 16;
+
+	private final Map<Operation, Histogram> operations = new EnumMap<>(Operation.class);
+	private final Histogram snapshots = new Histogram();
+	private final Histogram installs = new Histogram();
+	private final LongAdder commits = new LongAdder();
+
+	/*
+	 * Written only by the state machine thread. The plain fields are published by the ordered write of the applied index that follows
+	 * them, so a reader that reads the index first sees values at least as recent.
+	 */
+	private int size;
+	private long estimatedBytes;
+	private final AtomicLong lastAppliedIndex = new AtomicLong();
+
+	// the commit rate is counted per second of System.nanoTime(), and published when the second is over
+	private long second;
+	private long commitsInSecond;
+	private volatile long lastSecond;
+	private volatile long lastSecondCommits;
+
+	private volatile long lastSnapshotBytes;
+	private volatile long lastInstallBytes;
+
+	public StateMachineMetrics() {
+		for (Operation operation : Operation.values()) {
+			operations.put(operation, new Histogram());
+		}
+	}
+
+	/**
+	 * Records a command that has been applied.
+	 * @param start the value of {@link System#nanoTime()} when the command was started
+	 * @param index the index of its commit
+	 * @param size the size of the map afterwards
+	 */
+	void applied(Operation operation, long start, long index, int size) {
+		long end = System.nanoTime();
+		operations.get(operation).record(end - start);
+		commits.increment();
+		long now = TimeUnit.NANOSECONDS.toSeconds(end);
+		if (now != second) {
+			lastSecondCommits = now == second + 1 ? commitsInSecond : 0;
+			lastSecond = now - 1;
+			second = now;
+			commitsInSecond = 0;
+		}
+		commitsInSecond++;
+		this.size = size;
+		lastAppliedIndex.lazySet(index);
+	}
+
+	/**
+	 * Records a query that has been answered.
+	 * @param start the value of {@link System#nanoTime()} when the query was started
+	 */
+	void queried(Operation operation, long start) {
+		operations.get(operation).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Records that the value of a key has changed from {@code previous} to {@code value}, either of which may be null.
+	 */
+	void replaced(Object key, Object previous, Object value) {
+		if (previous == null) {
+			estimatedBytes += value == null ? 0 : ENTRY_BYTES + bytes(key) + bytes(value);
+		}
+		else if (value == null) {
+			estimatedBytes -= ENTRY_BYTES + bytes(key) + bytes(previous);
+		}
+		else {
+			estimatedBytes += bytes(value) - bytes(previous);
+		}
+	}
+
+	void cleared() {
+		estimatedBytes = 0;
+	}
+
+	/**
+	 * Estimates the bytes of a map that has been installed from a snapshot, with one pass over the map.
+	 */
+	void installed(Map<?, ?> map, long nanos, long bytes) {
+		long estimate = 0;
+		for (Entry<?, ?> entry : map.entrySet()) {
+			estimate += ENTRY_BYTES + bytes(entry.getKey()) + bytes(entry.getValue());
+		}
+		estimatedBytes = estimate;
+		size = map.size();
+		lastAppliedIndex.lazySet(lastAppliedIndex.get()); // publishes size and estimate
+		installs.record(nanos);
+		lastInstallBytes = bytes;
+	}
+
+	void snapshotted(long nanos, long bytes) {
+		snapshots.record(nanos);
+		lastSnapshotBytes = bytes;
+	}
+
+	static long bytes(Object object) {
+		if (object instanceof byte[]) {
+			return align(16 + ((byte[]) object).length);
+		}
+		if (object instanceof String) {
+			return 24 + align(16 + ((String) object).length());
+		}
+		if (object instanceof CompressedValue) {
+			return 24 + align(16 + ((CompressedValue) object).data().length);
+		}
+		return object == null ? 0 : OBJECT_BYTES;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7;
+	}
+
+	/**
+	 * @param size the current size of the map
+	 * @param index the last applied index
+	 * @return the current values of all metrics
+	 */
+	Stats stats(int size, long index) {
+		return new Stats(size, index, getEstimatedBytes(), getCommits(), getCommitsPerSecond(), getSnapshotWrites(), lastSnapshotBytes,
+				getSnapshotInstalls(), lastInstallBytes, getOperations());
+	}
+
+	@Override
+	public long getLastAppliedIndex() {
+		return lastAppliedIndex.get();
+	}
+
+	@Override
+	public int getSize() {
+		lastAppliedIndex.get();
+		return size;
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+		lastAppliedIndex.get();
+		return estimatedBytes;
+	}
+
+	@Override
+	public long getCommits() {
+		return commits.sum();
+	}
+
+	@Override
+	public long getCommitsPerSecond() {
+		long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+		long count = lastSecondCommits;
+		return lastSecond >= now - 1 ? count : 0; // nothing has been applied for more than a second
+	}
+
+	@Override
+	public OperationStats getSnapshotWrites() {
+		return snapshots.stats("SNAPSHOT_WRITE");
+	}
+
+	@Override
+	public long getLastSnapshotBytes() {
+		return lastSnapshotBytes;
+	}
+
+	@Override
+	public OperationStats getSnapshotInstalls() {
+		return installs.stats("SNAPSHOT_INSTALL");
+	}
+
+	@Override
+	public long getLastInstallBytes() {
+		return lastInstallBytes;
+	}
+
+	/**
+	 * @return the operations that have been recorded at least once
+	 */
+	@Override
+	public List<OperationStats> getOperations() {
+		List<OperationStats> stats = new ArrayList<>();
+		for (Entry<Operation, Histogram> entry : operations.entrySet()) {
+			if (entry.getValue().count() > 0) {
+				stats.add(entry.getValue().stats(entry.getKey().name()));
+			}
+		}
+		return stats;
+	}
+
+	/*
+	 * Each histogram has a single writer: operations are applied on the state machine thread, and Copycat takes one snapshot at a time.
+	 * All slots are therefore updated with lazySet, an ordered store that needs no atomic read-modify-write. A reader may see a total
+	 * that is one operation behind the bucket counts.
+	 */
+	private static final class Histogram {
+
+		private static final int BUCKETS = Long.SIZE + 1;
+		private static final int COUNT = BUCKETS;
+		private static final int TOTAL = BUCKETS + 1;
+		private static final int MAX = BUCKETS + 2;
+
+		private final AtomicLongArray slots = new AtomicLongArray(BUCKETS + 3);
+
+		// bucket i holds the values with i significant bits, that is, from 2^(i-1) to 2^i - 1
+		void record(long nanos) {
+			int bucket = Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, nanos));
+			increment(bucket, 1);
+			increment(TOTAL, nanos);
+			if (nanos > slots.get(MAX)) {
+				slots.lazySet(MAX, nanos);
+			}
+			increment(COUNT, 1);
+		}
+
+		private void increment(int slot, long delta) {
+			slots.lazySet(slot, slots.get(slot) + delta);
+		}
+
+		long count() {
+			return slots.get(COUNT);
+		}
+
+		// the upper bound of the bucket, but never more than the maximum
+		private long valueAtPercentile(long count, double percentile, long max) {
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				seen += slots.get(bucket);
+				if (seen >= rank) {
+					return Math.min(bucket == Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1, max);
+				}
+			}
+			return max;
+		}
+
+		OperationStats stats(String name) {
+			long count = count();
+			if (count == 0) {
+				return new OperationStats(name, 0, 0, 0, 0, 0);
+			}
+			long max = slots.get(MAX);
+			return new OperationStats(name, count, slots.get(TOTAL) / count, valueAtPercentile(count, 50, max),
+					valueAtPercentile(count, 99, max), max);
+		}
+	}
+}
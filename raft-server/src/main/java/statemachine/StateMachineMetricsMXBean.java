@@ -0,0 +1,32 @@
+package statemachine;
+
+import java.util.List;
+
+/**
+ * The attributes of {@link StateMachineMetrics} as they appear in a JMX console. Latencies are in nanoseconds.
+ */
+public interface StateMachineMetricsMXBean {
+
+	long getLastAppliedIndex();
+
+	int getSize();
+
+	long getEstimatedBytes();
+
+	long getCommits();
+
+	/**
+	 * @return the number of commands applied in the last full second
+	 */
+	long getCommitsPerSecond();
+
+	OperationStats getSnapshotWrites();
+
+	long getLastSnapshotBytes();
+
+	OperationStats getSnapshotInstalls();
+
+	long getLastInstallBytes();
+
+	List<OperationStats> getOperations();
+}
@@ -0,0 +1,51 @@
+package statemachine;
+
+import io.atomix.catalyst.concurrent.ThreadContext;
+import io.atomix.copycat.server.StateMachineExecutor;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Runs the parts of taking and installing a snapshot that touch the state of a state machine on its state machine thread.
+ * <p>
+ * Copycat calls {@code Snapshottable.snapshot} on the server thread, right after it has handed the command at the snapshot index to
+ * the state machine thread, which may not have applied it yet and goes on applying commands while the snapshot is written. A snapshot
+ * that reads the state on the server thread can therefore miss the last commands before its index, and can see mutable structures
+ * while they change. A task that is run through this class runs after all commands that have been handed to the state machine thread,
+ * and sees their effects. Every snapshottable state machine captures its state, and replaces it on install, through this class.
+ * @author Initial author: Sebastian Millies
+ */
+abstract class StateMachineThread {
+
+	/**
+	 * Runs the task on the state machine thread of the executor and waits for its result. If this is the state machine thread, as it
+	 * is when Copycat installs a snapshot, the task runs right away.
+	 * @throws java.util.concurrent.CompletionException if the task throws
+	 */
+	static <T> T call(StateMachineExecutor executor, Supplier<T> task) {
+		ThreadContext current = ThreadContext.currentContext();
+		if (current != null && current.executor() == executor.executor()) {
+			return task.get();
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		executor.executor().execute(() -> {
+			try {
+				result.complete(task.get());
+			}
+			catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result.join();
+	}
+
+	/**
+	 * Runs the task like {@link #call(StateMachineExecutor, Supplier)}.
+	 */
+	static void run(StateMachineExecutor executor, Runnable task) {
+		call(executor, () -> {
+			task.run();
+			return null;
+		});
+	}
+}
@@ -0,0 +1,109 @@
+package statemachine;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The answer to a {@link StatsQuery}: the size and last applied index of the map on one server, and, if the server has been started
+ * with metrics, the {@link StateMachineMetrics} of its state machine. Without metrics, all other values are zero.
+ * @author Initial author: Sebastian Millies
+ */
+public final class Stats implements Serializable {
+
+	private static final long serialVersionUID = -6631020712466925806L;
+
+	private final int size;
+	private final long lastAppliedIndex;
+	private final long estimatedBytes;
+	private final long commits;
+	private final long commitsPerSecond;
+	private final OperationStats snapshotWrites;
+	private final long lastSnapshotBytes;
+	private final OperationStats snapshotInstalls;
+	private final long lastInstallBytes;
+	private final List<OperationStats> operations;
+
+	/**
+	 * Creates the stats of a server without metrics.
+	 */
+	public Stats(int size, long lastAppliedIndex) {
+		this(size, lastAppliedIndex, 0, 0, 0, new OperationStats("SNAPSHOT_WRITE", 0, 0, 0, 0, 0), 0,
+				new OperationStats("SNAPSHOT_INSTALL", 0, 0, 0, 0, 0), 0, Collections.emptyList());
+	}
+
+	public Stats(int size, long lastAppliedIndex, long estimatedBytes, long commits, long commitsPerSecond, OperationStats snapshotWrites,
+			long lastSnapshotBytes, OperationStats snapshotInstalls, long lastInstallBytes, List<OperationStats> operations) {
+		this.size = size;
+		this.lastAppliedIndex = lastAppliedIndex;
+		this.estimatedBytes = estimatedBytes;
+		this.commits = commits;
+		this.commitsPerSecond = commitsPerSecond;
+		this.snapshotWrites = snapshotWrites;
+		this.lastSnapshotBytes = lastSnapshotBytes;
+		this.snapshotInstalls = snapshotInstalls;
+		this.lastInstallBytes = lastInstallBytes;
+		this.operations = operations;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long lastAppliedIndex() {
+		return lastAppliedIndex;
+	}
+
+	public long estimatedBytes() {
+		return estimatedBytes;
+	}
+
+	/**
+	 * @return the number of commands applied since the server was started
+	 */
+	public long commits() {
+		return commits;
+	}
+
+	/**
+	 * @return the number of commands applied in the last full second
+	 */
+	public long commitsPerSecond() {
+		return commitsPerSecond;
+	}
+
+	public OperationStats snapshotWrites() {
+		return snapshotWrites;
+	}
+
+	public long lastSnapshotBytes() {
+		return lastSnapshotBytes;
+	}
+
+	public OperationStats snapshotInstalls() {
+		return snapshotInstalls;
+	}
+
+	public long lastInstallBytes() {
+		return lastInstallBytes;
+	}
+
+	/**
+	 * @return the operations that have been applied at least once, in the order of {@link StateMachineMetrics.Operation}
+	 */
+	public List<OperationStats> operations() {
+		return operations;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(String.format("size=%d, last applied index=%d, estimated bytes=%d, commits=%d, commits/s=%d",
+				size, lastAppliedIndex, estimatedBytes, commits, commitsPerSecond));
+		sb.append(String.format("%n%s, last %d bytes%n%s, last %d bytes", snapshotWrites, lastSnapshotBytes, snapshotInstalls,
+				lastInstallBytes));
+		for (OperationStats operation : operations) {
+			sb.append(String.format("%n%s", operation));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,17 @@
+package statemachine;
+
+import io.atomix.copycat.Query;
+
+/**
+ * Asks the server that answers it for its {@link Stats}. Every server has its own, so the answer depends on the server the query is
+ * sent to. With the default sequential consistency, the query may be answered by a follower.
+ */
+public class StatsQuery implements Query<Stats> {
+
+	private static final long serialVersionUID = -2185190329418726143L;
+
+	@Override
+	public ConsistencyLevel consistency() {
+		return ConsistencyLevel.SEQUENTIAL;
+	}
+}
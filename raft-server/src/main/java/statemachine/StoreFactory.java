@@ -0,0 +1,44 @@
+package statemachine;
+
+import io.atomix.catalyst.serializer.Serializer;
+import java.util.HashMap;
+import java.util.Map;
+import util.HashTrieMap;
+
+/**
+ * Creates the map in which a {@link MapStateMachine} keeps its entries. The state machine calls the factory when it is initialized and
+ * again whenever it installs a snapshot.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+@FunctionalInterface
+public interface StoreFactory<K, V> {
+
+	/**
+	 * @param expectedSize the number of entries that will be put into the new map right away
+	 * @param serializer the serializer of the server, for stores that keep entries in serialized form
+	 */
+	Map<K, V> create(int expectedSize, Serializer serializer);
+
+	/**
+	 * @return a factory for the default store, a {@link HashTrieMap}, which gives snapshots a consistent view without copying
+	 */
+	static <K, V> StoreFactory<K, V> persistent() {
+		return (expectedSize, serializer) -> new HashTrieMap<>();
+	}
+
+	/**
+	 * @return a factory for a {@code HashMap} on the heap. Snapshots are written on the state machine thread, which waits for them.
+	 */
+	static <K, V> StoreFactory<K, V> heap() {
+		return (expectedSize, serializer) -> new HashMap<>(expectedSize * 4 / 3 + 1);
+	}
+
+	/**
+	 * @return a factory for an {@link OffHeapStore} with the given slab size
+	 */
+	static <K, V> StoreFactory<K, V> offHeap(int slabSize) {
+		return (expectedSize, serializer) -> new OffHeapStore<>(expectedSize, serializer, slabSize);
+	}
+}
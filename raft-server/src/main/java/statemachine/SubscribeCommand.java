@@ -0,0 +1,17 @@
+package statemachine;
+
+import io.atomix.copycat.Command;
+
+/*
+ * Subscribes the submitting session to invalidation events. After this command, the state machine publishes an event to the session
+ * whenever entries change. The subscription ends with the session.
+ */
+
+public class SubscribeCommand implements Command<Void> {
+
+	private static final long serialVersionUID = 1862203756471305734L;
+
+	public SubscribeCommand() {
+	}
+
+}
@@ -0,0 +1,53 @@
+package statemachine;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts how many keys map to each value, so that a state machine can answer {@link ContainsValueQuery} without a pass over the map.
+ * Byte arrays are counted by content. Null values are not counted.
+ * <p>
+ * The index holds its own reference to every distinct value. For a heap store that costs a map node per distinct value; for an off-heap
+ * store, whose values are deserialized on every read, it keeps a copy of every distinct value on the heap.
+ */
+final class ValueIndex {
+
+	private final Map<Object, Integer> counts = new HashMap<>();
+
+	void replaced(Object previous, Object value) {
+		if (previous != null) {
+			counts.computeIfPresent(key(previous), (_k, count) -> count == 1 ? null : count - 1);
+		}
+		if (value != null) {
+			counts.merge(key(value), 1, Integer::sum);
+		}
+	}
+
+	boolean contains(Object value) {
+		return value != null && counts.containsKey(key(value));
+	}
+
+	/**
+	 * @return the number of keys that map to the value
+	 */
+	int count(Object value) {
+		return value == null ? 0 : counts.getOrDefault(key(value), 0);
+	}
+
+	void rebuild(Map<?, ?> map) {
+		counts.clear();
+		for (Object value : map.values()) {
+			replaced(null, value);
+		}
+	}
+
+	void clear() {
+		counts.clear();
+	}
+
+	// ByteBuffer has content-based equals and hashCode
+	private static Object key(Object value) {
+		return value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+	}
+}
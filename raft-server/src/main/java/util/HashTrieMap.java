@@ -0,0 +1,478 @@
+package util;
+
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A hash array mapped trie (HAMT) whose versions share structure, so that {@link #snapshot()} returns an immutable point-in-time view of
+ * the map in constant time. Updates after a snapshot copy only the nodes on the path to the changed entry. Nodes that were created since
+ * the last snapshot are not shared with any view and are changed in place, so a map that is never snapshotted costs little more than
+ * a mutable trie.
+ * <p>
+ * The trie consumes the hash from the most significant bits downwards, so iteration visits the entries in ascending order of
+ * {@link #hash(Object)}, compared as unsigned ints. Entries with the same hash are visited in insertion order. {@link #iterator(int)}
+ * starts an iteration at a given hash without visiting the entries before it.
+ * <p>
+ * Apart from {@code snapshot()}, which may be called from any thread, the map must only be used by a single thread, like a
+ * {@code HashMap}. Views are immutable and may be used by any number of threads. Null keys and values are permitted.
+ * @param <K> map key type
+ * @param <V> map value type
+ * @author Initial author: Sebastian Millies
+ */
+public class HashTrieMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int LAST_LEVEL = 6; // levels 0..5 consume 5 bits each, level 6 the remaining 2
+	private static final int MAX_DEPTH = LAST_LEVEL + 2; // bitmap nodes on all levels, plus a collision node
+	private static final Object NODE = new Object(); // key slot marker: the value slot holds a subnode
+	private static final Object NOT_FOUND = new Object();
+
+	private final boolean view;
+	private Node root;
+	private int size;
+	private Object edit = new Object(); // nodes owned by this token are not shared with a view
+
+	public HashTrieMap() {
+		this(new BitmapNode(null, 0, new Object[0]), 0, false);
+	}
+
+	public HashTrieMap(Map<? extends K, ? extends V> map) {
+		this();
+		putAll(map);
+	}
+
+	private HashTrieMap(Node root, int size, boolean view) {
+		this.root = root;
+		this.size = size;
+		this.view = view;
+	}
+
+	/**
+	 * @return the hash by which entries are ordered
+	 */
+	public static int hash(Object key) {
+		int h = Objects.hashCode(key);
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return an immutable view of the current state of this map
+	 */
+	public synchronized HashTrieMap<K, V> snapshot() {
+		if (view) {
+			return this;
+		}
+		edit = new Object(); // from now on, the current nodes are shared and must be copied before they change
+		return new HashTrieMap<>(root, size, true);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return root.get(0, hash(key), key) != NOT_FOUND;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		Object value = root.get(0, hash(key), key);
+		return value != NOT_FOUND ? (V) value : null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized V put(K key, V value) {
+		checkWritable();
+		Change change = new Change();
+		root = root.put(0, hash(key), key, value, change, edit);
+		if (change.added) {
+			size++;
+		}
+		return (V) change.oldValue;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized V remove(Object key) {
+		checkWritable();
+		Change change = new Change();
+		Node node = root.remove(0, hash(key), key, change, edit);
+		if (change.removed) {
+			root = node != null ? node : new BitmapNode(null, 0, new Object[0]);
+			size--;
+		}
+		return (V) change.oldValue;
+	}
+
+	@Override
+	public synchronized void clear() {
+		checkWritable();
+		root = new BitmapNode(null, 0, new Object[0]);
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return HashTrieMap.this.iterator(0);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return an iterator over the entries whose hash, compared as an unsigned int, is greater than or equal to {@code startHash}
+	 */
+	public Iterator<Entry<K, V>> iterator(int startHash) {
+		return new EntryIterator<>(root, startHash);
+	}
+
+	private void checkWritable() {
+		if (view) {
+			throw new UnsupportedOperationException("snapshot is immutable");
+		}
+	}
+
+	// the slot of a hash on a level, in ascending hash order
+	private static int index(int hash, int level) {
+		int shift = 27 - 5 * level;
+		return (shift >= 0 ? hash >>> shift : hash << -shift) & 31;
+	}
+
+	private static Node create(int level, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2, Object edit) {
+		if (hash1 == hash2) {
+			return new CollisionNode(edit, hash1, new Object[] { key1, value1, key2, value2 });
+		}
+		int index1 = index(hash1, level);
+		int index2 = index(hash2, level);
+		if (index1 == index2) {
+			return new BitmapNode(edit, 1 << index1, new Object[] { NODE, create(level + 1, hash1, key1, value1, hash2, key2, value2, edit) });
+		}
+		Object[] array = index1 < index2 ? new Object[] { key1, value1, key2, value2 } : new Object[] { key2, value2, key1, value1 };
+		return new BitmapNode(edit, (1 << index1) | (1 << index2), array);
+	}
+
+	private static final class Change {
+		Object oldValue;
+		boolean added;
+		boolean removed;
+	}
+
+	// -------------------------------------------------------------------
+
+	/*
+	 * The array of a node holds key/value pairs. In a bitmap node, a pair may instead be the NODE marker and a subnode.
+	 */
+	private abstract static class Node {
+
+		final Object edit;
+		Object[] array;
+
+		Node(Object edit, Object[] array) {
+			this.edit = edit;
+			this.array = array;
+		}
+
+		abstract Object get(int level, int hash, Object key);
+
+		abstract Node put(int level, int hash, Object key, Object value, Change change, Object edit);
+
+		/**
+		 * @return the changed node, or null if the node has become empty
+		 */
+		abstract Node remove(int level, int hash, Object key, Change change, Object edit);
+
+		abstract Node withArray(Object[] array, Object edit);
+
+		boolean isSingleEntry() {
+			return array.length == 2 && array[0] != NODE;
+		}
+
+		Node set(int i, Object x, Object edit) {
+			if (this.edit == edit) {
+				array[i] = x;
+				return this;
+			}
+			Object[] copy = array.clone();
+			copy[i] = x;
+			return withArray(copy, edit);
+		}
+
+		Node set(int i, Object x, int j, Object y, Object edit) {
+			if (this.edit == edit) {
+				array[i] = x;
+				array[j] = y;
+				return this;
+			}
+			Object[] copy = array.clone();
+			copy[i] = x;
+			copy[j] = y;
+			return withArray(copy, edit);
+		}
+
+		static Object[] insertPair(Object[] array, int i, Object key, Object value) {
+			Object[] copy = new Object[array.length + 2];
+			System.arraycopy(array, 0, copy, 0, i);
+			copy[i] = key;
+			copy[i + 1] = value;
+			System.arraycopy(array, i, copy, i + 2, array.length - i);
+			return copy;
+		}
+
+		static Object[] removePair(Object[] array, int i) {
+			Object[] copy = new Object[array.length - 2];
+			System.arraycopy(array, 0, copy, 0, i);
+			System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+			return copy;
+		}
+	}
+
+	private static final class BitmapNode extends Node {
+
+		int bitmap;
+
+		BitmapNode(Object edit, int bitmap, Object[] array) {
+			super(edit, array);
+			this.bitmap = bitmap;
+		}
+
+		@Override
+		Object get(int level, int hash, Object key) {
+			int bit = 1 << index(hash, level);
+			if ((bitmap & bit) == 0) {
+				return NOT_FOUND;
+			}
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			Object k = array[i];
+			if (k == NODE) {
+				return ((Node) array[i + 1]).get(level + 1, hash, key);
+			}
+			return Objects.equals(key, k) ? array[i + 1] : NOT_FOUND;
+		}
+
+		@Override
+		Node put(int level, int hash, Object key, Object value, Change change, Object edit) {
+			int bit = 1 << index(hash, level);
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			if ((bitmap & bit) == 0) {
+				change.added = true;
+				return withPairs(bitmap | bit, insertPair(array, i, key, value), edit);
+			}
+			Object k = array[i];
+			Object v = array[i + 1];
+			if (k == NODE) {
+				Node child = (Node) v;
+				Node newChild = child.put(level + 1, hash, key, value, change, edit);
+				return newChild == child ? this : set(i + 1, newChild, edit);
+			}
+			if (Objects.equals(key, k)) {
+				change.oldValue = v;
+				return v == value ? this : set(i + 1, value, edit);
+			}
+			change.added = true;
+			return set(i, NODE, i + 1, create(level + 1, hash(k), k, v, hash, key, value, edit), edit);
+		}
+
+		@Override
+		Node remove(int level, int hash, Object key, Change change, Object edit) {
+			int bit = 1 << index(hash, level);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			Object k = array[i];
+			if (k == NODE) {
+				Node child = (Node) array[i + 1];
+				Node newChild = child.remove(level + 1, hash, key, change, edit);
+				if (newChild == child) {
+					return this;
+				}
+				if (newChild == null) {
+					return bitmap == bit ? null : withPairs(bitmap & ~bit, removePair(array, i), edit);
+				}
+				if (newChild.isSingleEntry()) { // pull the last entry of the subnode up into this node
+					return set(i, newChild.array[0], i + 1, newChild.array[1], edit);
+				}
+				return set(i + 1, newChild, edit);
+			}
+			if (!Objects.equals(key, k)) {
+				return this;
+			}
+			change.oldValue = array[i + 1];
+			change.removed = true;
+			return bitmap == bit ? null : withPairs(bitmap & ~bit, removePair(array, i), edit);
+		}
+
+		@Override
+		Node withArray(Object[] array, Object edit) {
+			return new BitmapNode(edit, bitmap, array);
+		}
+
+		private Node withPairs(int bitmap, Object[] array, Object edit) {
+			if (this.edit == edit) {
+				this.bitmap = bitmap;
+				this.array = array;
+				return this;
+			}
+			return new BitmapNode(edit, bitmap, array);
+		}
+	}
+
+	private static final class CollisionNode extends Node {
+
+		final int hash;
+
+		CollisionNode(Object edit, int hash, Object[] array) {
+			super(edit, array);
+			this.hash = hash;
+		}
+
+		@Override
+		Object get(int level, int hash, Object key) {
+			int i = hash == this.hash ? find(key) : -1;
+			return i >= 0 ? array[i + 1] : NOT_FOUND;
+		}
+
+		@Override
+		Node put(int level, int hash, Object key, Object value, Change change, Object edit) {
+			if (hash != this.hash) { // push this node down one level, next to the new entry
+				return new BitmapNode(edit, 1 << index(this.hash, level), new Object[] { NODE, this }).put(level, hash, key, value, change, edit);
+			}
+			int i = find(key);
+			if (i >= 0) {
+				change.oldValue = array[i + 1];
+				return array[i + 1] == value ? this : set(i + 1, value, edit);
+			}
+			change.added = true;
+			Object[] copy = insertPair(array, array.length, key, value);
+			if (this.edit == edit) {
+				array = copy;
+				return this;
+			}
+			return new CollisionNode(edit, hash, copy);
+		}
+
+		@Override
+		Node remove(int level, int hash, Object key, Change change, Object edit) {
+			int i = hash == this.hash ? find(key) : -1;
+			if (i < 0) {
+				return this;
+			}
+			change.oldValue = array[i + 1];
+			change.removed = true;
+			if (array.length == 2) {
+				return null;
+			}
+			Object[] copy = removePair(array, i);
+			if (this.edit == edit) {
+				array = copy;
+				return this;
+			}
+			return new CollisionNode(edit, hash, copy);
+		}
+
+		@Override
+		Node withArray(Object[] array, Object edit) {
+			return new CollisionNode(edit, hash, array);
+		}
+
+		private int find(Object key) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (Objects.equals(key, array[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	// -------------------------------------------------------------------
+
+	private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+
+		private final Object[][] arrays = new Object[MAX_DEPTH][];
+		private final int[] positions = new int[MAX_DEPTH];
+		private int depth = -1;
+		private Entry<K, V> next;
+
+		EntryIterator(Node root, int startHash) {
+			seek(root, 0, startHash);
+			advance();
+		}
+
+		// pushes the path to the first entry whose hash is not below start
+		private void seek(Node node, int level, int start) {
+			arrays[++depth] = node.array;
+			if (node instanceof CollisionNode) {
+				positions[depth] = Integer.compareUnsigned(((CollisionNode) node).hash, start) < 0 ? node.array.length : 0;
+				return;
+			}
+			int bitmap = ((BitmapNode) node).bitmap;
+			int bit = 1 << index(start, level);
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			positions[depth] = i;
+			if ((bitmap & bit) != 0) {
+				Object k = node.array[i];
+				if (k == NODE) {
+					positions[depth] = i + 2;
+					seek((Node) node.array[i + 1], level + 1, start);
+				}
+				else if (Integer.compareUnsigned(hash(k), start) < 0) {
+					positions[depth] = i + 2;
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			while (depth >= 0) {
+				Object[] array = arrays[depth];
+				int i = positions[depth];
+				if (i >= array.length) {
+					arrays[depth--] = null;
+					continue;
+				}
+				positions[depth] = i + 2;
+				if (array[i] == NODE) {
+					arrays[++depth] = ((Node) array[i + 1]).array;
+					positions[depth] = 0;
+				}
+				else {
+					next = new SimpleImmutableEntry<>((K) array[i], (V) array[i + 1]);
+					return;
+				}
+			}
+			next = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Entry<K, V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Entry<K, V> entry = next;
+			advance();
+			return entry;
+		}
+	}
+}
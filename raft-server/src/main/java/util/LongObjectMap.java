@@ -0,0 +1,173 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive {@code long} keys to object values, with open addressing and linear probing. Keys and values are held in two
+ * parallel arrays, so an entry costs two array slots instead of a {@code HashMap.Node} and a boxed {@code Long}. Null values are not
+ * supported, a slot with a null value is empty. Removal shifts the following entries of the probe sequence back, so no tombstones are
+ * needed.
+ * <p>
+ * This class is not thread-safe.
+ * @param <V> value type
+ * @author Initial author: Sebastian Millies
+ */
+public class LongObjectMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int resizeAt;
+
+	public LongObjectMap() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * @param expectedSize the number of entries that the map can hold without resizing
+	 */
+	public LongObjectMap(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative");
+		}
+		allocate(capacityFor(expectedSize));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		for (int i = slot(key);; i = (i + 1) & mask) {
+			Object value = values[i];
+			if (value == null || keys[i] == key) {
+				return (V) value;
+			}
+		}
+	}
+
+	/**
+	 * @return the previous value, or {@code null}
+	 * @throws NullPointerException if the value is null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		int i = slot(key);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > resizeAt) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the removed value, or {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				shiftBack(i);
+				size--;
+				return old;
+			}
+		}
+		return null;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * Calls the consumer for each entry, in slot order. The consumer must not modify the map.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(EntryConsumer<? super V> consumer) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				consumer.accept(keys[i], (V) values[i]);
+			}
+		}
+	}
+
+	// -------------------------------------------------------------------
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing, spreads consecutive keys
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	// closes the gap at index by moving back entries whose probe sequence passes through it
+	private void shiftBack(int gap) {
+		for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+			int home = slot(keys[i]);
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		values[gap] = null;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int j = 0; j < oldValues.length; j++) {
+			if (oldValues[j] != null) {
+				int i = slot(oldKeys[j]);
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeAt = capacity / 4 * 3; // load factor 0.75
+	}
+
+	private static int capacityFor(int expectedSize) {
+		long needed = (long) expectedSize * 4 / 3 + 1;
+		if (needed > 1 << 30) {
+			throw new IllegalArgumentException("expectedSize too large: " + expectedSize);
+		}
+		return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+	}
+
+	/**
+	 * Receives the entries of a {@link LongObjectMap}.
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer<V> {
+		void accept(long key, V value);
+	}
+}
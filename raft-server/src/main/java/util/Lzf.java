@@ -0,0 +1,203 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A pure-Java LZF codec, a byte-oriented LZ77 variant in the class of LZ4 and Snappy: fast rather than tight, it typically shrinks
+ * text such as JSON to a third or a quarter, and decompresses faster than it compresses. The encoding is the raw format of liblzf,
+ * without the block headers of its command-line tool.
+ * <p>
+ * The compressed data is a sequence of chunks, each starting with a control byte. A control byte below 32 is followed by that many plus
+ * one literal bytes. Otherwise, its top three bits hold the length of a back reference minus two (7 meaning that a further length byte
+ * follows), and its low five bits together with the next byte hold the distance minus one, up to 8 KB back.
+ * <p>
+ * Compression is deterministic: the same input always compresses to the same bytes, so compressed values can be compared with each
+ * other instead of their originals. The hash table of matches is kept per thread, so all methods are thread-safe.
+ * @author Initial author: Sebastian Millies
+ */
+public abstract class Lzf {
+
+	private static final int MAX_LITERAL = 32;
+	private static final int MAX_OFFSET = 1 << 13;
+	private static final int MAX_REFERENCE = (1 << 8) + (1 << 3); // 7 + 255 + 2
+	private static final int MAX_HASH_BITS = 14;
+	private static final int MIN_HASH_BITS = 8;
+
+	private static final ThreadLocal<int[]> TABLES = ThreadLocal.withInitial(() -> new int[1 << MAX_HASH_BITS]);
+
+	/**
+	 * @return the compressed bytes, or {@code null} if compression would not make the input smaller
+	 */
+	public static byte[] compress(byte[] input) {
+		if (input.length < 2) {
+			return null;
+		}
+		byte[] output = new byte[input.length - 1];
+		int length = compress(input, 0, input.length, output, 0, output.length);
+		return length < 0 ? null : Arrays.copyOf(output, length);
+	}
+
+	/**
+	 * Compresses {@code length} bytes of {@code input} into at most {@code maxLength} bytes of {@code output}.
+	 * @return the number of compressed bytes, or -1 if they do not fit into {@code maxLength}
+	 */
+	public static int compress(byte[] input, int offset, int length, byte[] output, int outputOffset, int maxLength) {
+		if (length == 0) {
+			return 0;
+		}
+		/*
+		 * The table maps a hash of three bytes to the last position plus one where they occurred. A small input only uses part of the
+		 * table, which must be cleared for every input to keep the output deterministic.
+		 */
+		int hashBits = Math.max(MIN_HASH_BITS, Math.min(MAX_HASH_BITS, 32 - Integer.numberOfLeadingZeros(length)));
+		int[] table = TABLES.get();
+		Arrays.fill(table, 0, 1 << hashBits, 0);
+
+		int in = offset;
+		int inEnd = offset + length;
+		int out = outputOffset;
+		int outEnd = outputOffset + maxLength;
+		int literals = 0;
+		if (out >= outEnd) {
+			return -1;
+		}
+		out++; // control byte of the first literal run
+
+		while (in < inEnd - 2) {
+			int slot = hash(input, in, hashBits);
+			int reference = table[slot] - 1;
+			table[slot] = in - offset + 1;
+			reference += offset;
+			int distance = in - reference - 1;
+			if (reference >= offset && distance < MAX_OFFSET && input[reference] == input[in] && input[reference + 1] == input[in + 1]
+					&& input[reference + 2] == input[in + 2]) {
+				int maxMatch = Math.min(inEnd - in, MAX_REFERENCE);
+				int match = 3;
+				while (match < maxMatch && input[reference + match] == input[in + match]) {
+					match++;
+				}
+				if (out + 3 + 1 > outEnd) { // back reference and the next control byte
+					return -1;
+				}
+				if (literals > 0) {
+					output[out - literals - 1] = (byte) (literals - 1);
+					literals = 0;
+				}
+				else {
+					out--; // drop the control byte of the empty literal run
+				}
+				int encoded = match - 2;
+				if (encoded < 7) {
+					output[out++] = (byte) ((distance >>> 8) + (encoded << 5));
+				}
+				else {
+					output[out++] = (byte) ((distance >>> 8) + (7 << 5));
+					output[out++] = (byte) (encoded - 7);
+				}
+				output[out++] = (byte) distance;
+				out++; // control byte of the next literal run
+				in += match;
+				if (in < inEnd - 2) { // so that the next match can start right behind this one
+					table[hash(input, in - 1, hashBits)] = in - 1 - offset + 1;
+				}
+			}
+			else {
+				if (out >= outEnd) {
+					return -1;
+				}
+				output[out++] = input[in++];
+				if (++literals == MAX_LITERAL) {
+					output[out - literals - 1] = (byte) (MAX_LITERAL - 1);
+					literals = 0;
+					out++;
+				}
+			}
+		}
+		while (in < inEnd) {
+			if (out >= outEnd) {
+				return -1;
+			}
+			output[out++] = input[in++];
+			if (++literals == MAX_LITERAL) {
+				output[out - literals - 1] = (byte) (MAX_LITERAL - 1);
+				literals = 0;
+				out++;
+			}
+		}
+		if (literals > 0) {
+			output[out - literals - 1] = (byte) (literals - 1);
+		}
+		else {
+			out--;
+		}
+		return out > outEnd ? -1 : out - outputOffset;
+	}
+
+	private static int hash(byte[] input, int in, int hashBits) {
+		int bytes = (input[in] & 0xff) << 16 | (input[in + 1] & 0xff) << 8 | (input[in + 2] & 0xff);
+		return (bytes * 0x9E3779B1) >>> (32 - hashBits);
+	}
+
+	/**
+	 * @param length the length of the original data
+	 * @return the original data
+	 * @throws IllegalStateException if the data is corrupt or does not decompress to {@code length} bytes
+	 */
+	public static byte[] decompress(byte[] data, int length) {
+		byte[] output = new byte[length];
+		decompress(data, 0, data.length, output, 0, length);
+		return output;
+	}
+
+	/**
+	 * Decompresses {@code length} bytes of {@code input} into exactly {@code outputLength} bytes of {@code output}.
+	 * @throws IllegalStateException if the data is corrupt or does not decompress to {@code outputLength} bytes
+	 */
+	public static void decompress(byte[] input, int offset, int length, byte[] output, int outputOffset, int outputLength) {
+		int in = offset;
+		int inEnd = offset + length;
+		int out = outputOffset;
+		int outEnd = outputOffset + outputLength;
+		while (in < inEnd) {
+			int control = input[in++] & 0xff;
+			if (control < MAX_LITERAL) {
+				int literals = control + 1;
+				if (in + literals > inEnd || out + literals > outEnd) {
+					throw new IllegalStateException("Corrupt LZF data");
+				}
+				System.arraycopy(input, in, output, out, literals);
+				in += literals;
+				out += literals;
+			}
+			else {
+				int match = control >>> 5;
+				if (match == 7) {
+					if (in >= inEnd) {
+						throw new IllegalStateException("Corrupt LZF data");
+					}
+					match += input[in++] & 0xff;
+				}
+				if (in >= inEnd) {
+					throw new IllegalStateException("Corrupt LZF data");
+				}
+				int reference = out - ((control & 0x1f) << 8) - (input[in++] & 0xff) - 1;
+				match += 2;
+				if (reference < outputOffset || out + match > outEnd) {
+					throw new IllegalStateException("Corrupt LZF data");
+				}
+				if (reference + match <= out) {
+					System.arraycopy(output, reference, output, out, match);
+					out += match;
+				}
+				else { // the match overlaps the bytes it produces, as in a run of one repeated byte
+					for (int i = 0; i < match; i++) {
+						output[out++] = output[reference++];
+					}
+				}
+			}
+		}
+		if (out != outEnd) {
+			throw new IllegalStateException("LZF data decompresses to " + (out - outputOffset) + " bytes instead of " + outputLength);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package util;
+
+import io.atomix.catalyst.transport.Address;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The layout of a partitioned cluster, shared by servers and clients. Every server process hosts one Copycat group per partition.
+ * Partition {@code p} of a server at {@code host:port} listens on {@code host:port + p * PORT_STRIDE}, so partition 0 is the server
+ * address itself. Keys are mapped to partitions by a hash that is the same in every JVM, as long as the keys have a stable
+ * {@code hashCode}, as String and Long have.
+ * @author Initial author: Sebastian Millies
+ */
+public abstract class Partitions {
+
+	/** The distance between the ports of two partitions of the same server. */
+	public static final int PORT_STRIDE = 100;
+
+	/**
+	 * @return the partition of a key, between 0 (inclusive) and {@code partitions} (exclusive)
+	 */
+	public static int partition(Object key, int partitions) {
+		// spread the hash code, so that keys with regular hash codes, like consecutive longs, do not all land in a few partitions
+		int h = key.hashCode() * 0x9E3779B9;
+		return Integer.remainderUnsigned(h ^ (h >>> 16), partitions);
+	}
+
+	/**
+	 * @return the address on which a server hosts a partition
+	 */
+	public static Address address(Address server, int partition) {
+		return new Address(server.host(), server.port() + partition * PORT_STRIDE);
+	}
+
+	/**
+	 * @return the members of the Copycat group of a partition, given the addresses of the servers
+	 */
+	public static List<Address> addresses(Collection<Address> servers, int partition) {
+		List<Address> addresses = new ArrayList<>(servers.size());
+		for (Address server : servers) {
+			addresses.add(address(server, partition));
+		}
+		return addresses;
+	}
+}
@@ -0,0 +1,104 @@
+package serialization;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Before;
+import org.junit.Test;
+import statemachine.CompressedValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotFormatTest {
+
+	private Serializer serializer;
+
+	@Before
+	public void setup() {
+		serializer = new Serializer();
+		serializer.resolve(new MapSerialization());
+	}
+
+	// about 20 blocks of JSON-like text, which compresses well
+	private static Map<String, Object> documents() {
+		Map<String, Object> map = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			map.put("key" + i, "{\"id\":" + i + ",\"name\":\"item" + i % 10 + "\",\"state\":\"ACTIVE\",\"tags\":[\"a\",\"b\"]}");
+		}
+		return map;
+	}
+
+	private Buffer write(Map<?, ?> map, Map<?, Long> expiries, boolean compress) {
+		Buffer buffer = HeapBuffer.allocate(1024, Integer.MAX_VALUE);
+		SnapshotFormat.writeEntries(map, expiries, buffer, serializer, compress);
+		return buffer.flip();
+	}
+
+	@Test
+	public void compressedSnapshotReadsBack() {
+		Map<String, Object> map = documents();
+		Buffer plain = write(map, new HashMap<>(), false);
+		Buffer compressed = write(map, new HashMap<>(), true);
+		assertTrue(compressed.remaining() < plain.remaining() / 2);
+		assertTrue(plain.remaining() > 10 * SnapshotFormat.BLOCK_SIZE);
+
+		assertEquals(map, SnapshotFormat.readEntries(compressed, serializer));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(map, SnapshotFormat.readEntries(compressed.rewind(), serializer, size -> new HashMap<>(), pool));
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void blockBoundaries() {
+		Random random = new Random(42);
+		Map<String, Object> map = new HashMap<>();
+		byte[] incompressible = new byte[SnapshotFormat.BLOCK_SIZE / 2];
+		random.nextBytes(incompressible);
+		byte[] larger = new byte[3 * SnapshotFormat.BLOCK_SIZE]; // a record larger than a block
+		random.nextBytes(larger);
+		map.put("incompressible", incompressible);
+		map.put("larger", larger);
+		map.put("exact", new String(new char[SnapshotFormat.BLOCK_SIZE - 40]).replace('\0', 'x'));
+		map.put("compressed", CompressedValue.compress(new String(new char[5000]).replace('\0', 'y'), 1024));
+		for (int i = 0; i < 5000; i++) {
+			map.put("key" + i, (long) i);
+		}
+		Map<String, Long> expiries = new LinkedHashMap<>();
+		for (int i = 4999; i >= 0; i -= 3) {
+			expiries.put("key" + i, 1000L + i);
+		}
+
+		for (boolean compress : new boolean[] { false, true }) {
+			Map<String, Long> read = new LinkedHashMap<>();
+			Map<String, Object> entries = SnapshotFormat.readEntries(write(map, expiries, compress), serializer, size -> new HashMap<>(),
+					null, read::put);
+			assertEquals(map.size(), entries.size());
+			assertArrayEquals(incompressible, (byte[]) entries.get("incompressible"));
+			assertArrayEquals(larger, (byte[]) entries.get("larger"));
+			assertEquals(map.get("exact"), entries.get("exact"));
+			assertEquals(map.get("compressed"), entries.get("compressed"));
+			assertEquals(Long.valueOf(4321), entries.get("key4321"));
+			assertEquals(new ArrayList<>(expiries.keySet()), new ArrayList<>(read.keySet())); // in the order written
+			assertEquals(expiries, read);
+		}
+	}
+
+	@Test
+	public void emptySnapshot() {
+		for (boolean compress : new boolean[] { false, true }) {
+			assertTrue(SnapshotFormat.readEntries(write(new HashMap<>(), new HashMap<>(), compress), serializer).isEmpty());
+		}
+	}
+}
@@ -8,9 +8,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.concurrent.CompletableFuture;
-import statemachine.GetQuery;
+import serialization.MapSerialization;
 import statemachine.MapStateMachine;
-import statemachine.PutCommand;
+import statemachine.StateMachineMetrics;
+import statemachine.StoreFactory;
 import util.FileUtils;
 
 import static java.util.Collections.singleton;
@@ -31,7 +32,7 @@ import static java.util.Collections.singleton;
  * One final task is necessary to complete the configuration of the server. Weve created two state machine operations - PutCommand and
  * GetQuery - which are Serializable. By default, Copycats serialization framework will serialize these operations using Javas
  * serialization. However, users can explicitly register serializable classes and implement custom binary serializers for more efficient
- * serialization.
+ * serialization. We register our own binary serializers through {@code MapSerialization}.
  * <p>
  * Once the server has been built, we can bootstrap a new cluster by calling the bootstrap() method. When a server is bootstrapped, it forms
  * a new cluster single node cluster to which additional servers can be joined via the join() method. When joining an existing cluster, the
@@ -43,14 +44,15 @@ public class SimpleCluster {
 
 	public static CopycatServer createServer(String host, int port) {
 		Address address = new Address(host, port);
-		CopycatServer server = CopycatServer.builder(address).withStateMachine(MapStateMachine::new)
+		StateMachineMetrics metrics = new StateMachineMetrics();
+		CopycatServer server = CopycatServer.builder(address)
+				.withStateMachine(() -> new MapStateMachine<>(StoreFactory.persistent(), false, metrics))
 //				.withTransport(NettyTransport.builder().withThreads(4).build()) // Netty is default
 				.withStorage(
 						Storage.builder().withDirectory(new File(storageDir(host, port))).withStorageLevel(StorageLevel.DISK).build())
 				.build();
 		
-		server.serializer().register(PutCommand.class);
-		server.serializer().register(GetQuery.class);
+		server.serializer().resolve(new MapSerialization());
 		return server;
 	}
 
@@ -0,0 +1,149 @@
+package statemachine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EvictionTest {
+
+	// removes the expired keys the way a state machine does before a command
+	private static List<String> expire(Eviction<String> eviction, long now) {
+		List<String> keys = new ArrayList<>();
+		for (String key = eviction.expired(now); key != null; key = eviction.expired(now)) {
+			keys.add(key);
+			eviction.removed(key);
+		}
+		return keys;
+	}
+
+	// removes the evictable keys the way a state machine does after a command
+	private static List<String> evict(Eviction<String> eviction, Map<String, ?> map) {
+		List<String> keys = new ArrayList<>();
+		for (String key = eviction.evictable(map.size()); key != null; key = eviction.evictable(map.size())) {
+			keys.add(key);
+			map.remove(key);
+			eviction.removed(key);
+		}
+		return keys;
+	}
+
+	@Test
+	public void ttlOrder() {
+		Eviction<String> eviction = new Eviction<>(EvictionPolicy.unbounded());
+		assertFalse(eviction.isTracking());
+		eviction.written("permanent", "value", Eviction.NEVER);
+		assertFalse(eviction.isTracking()); // keys without a time to live are not tracked under an unbounded policy
+		eviction.written("late", "value", 300);
+		eviction.written("early", "value", 100);
+		eviction.written("tie2", "value", 200);
+		eviction.written("tie1", "value", 200);
+		assertTrue(eviction.isTracking());
+
+		assertNull(eviction.expired(99));
+		assertTrue(eviction.expiredKeys(99).isEmpty());
+		assertEquals(asList("early", "tie2", "tie1"), eviction.expiredKeys(200)); // ties in order of writing
+		assertTrue(eviction.isExpired("early", 100));
+		assertFalse(eviction.isExpired("late", 299));
+		assertFalse(eviction.isExpired("permanent", Long.MAX_VALUE - 1));
+
+		assertEquals(asList("early", "tie2", "tie1"), expire(eviction, 250));
+		assertFalse(eviction.isExpired("early", 250)); // removed
+		assertEquals(asList("late"), expire(eviction, 300));
+		assertTrue(expire(eviction, Long.MAX_VALUE - 1).isEmpty());
+		assertFalse(eviction.isTracking());
+	}
+
+	@Test
+	public void rewriteRefreshesExpiry() {
+		Eviction<String> eviction = new Eviction<>(EvictionPolicy.unbounded());
+		eviction.written("a", "value", 100);
+		eviction.written("b", "value", 100);
+		eviction.written("c", "value", 100);
+		eviction.written("a", "value", 500); // later
+		eviction.written("b", "value", Eviction.NEVER); // no longer expires
+
+		assertEquals(asList("c"), eviction.expiredKeys(400));
+		assertFalse(eviction.isExpired("a", 400));
+		assertTrue(eviction.isExpired("a", 500));
+		assertFalse(eviction.isExpired("b", 1000));
+		assertEquals(asList("c", "a"), expire(eviction, 1000));
+
+		eviction.written("d", "value", 100);
+		eviction.removed("d");
+		assertNull(eviction.expired(1000));
+		eviction.written("e", "value", 100);
+		eviction.cleared();
+		assertNull(eviction.expired(1000));
+		assertTrue(eviction.expiries().isEmpty());
+	}
+
+	@Test
+	public void maxEntries() {
+		Eviction<String> eviction = new Eviction<>(EvictionPolicy.maxEntries(3));
+		assertTrue(eviction.isTracking());
+		Map<String, String> map = new HashMap<>();
+		for (String key : asList("a", "b", "c")) {
+			map.put(key, "value");
+			eviction.written(key, "value", Eviction.NEVER);
+		}
+		assertTrue(evict(eviction, map).isEmpty());
+
+		eviction.written("a", "value", Eviction.NEVER); // now the most recently written
+		map.put("d", "value");
+		eviction.written("d", "value", Eviction.NEVER);
+		assertEquals(asList("b"), evict(eviction, map));
+		map.put("e", "value");
+		eviction.written("e", "value", 5000);
+		map.put("f", "value");
+		eviction.written("f", "value", Eviction.NEVER);
+		assertEquals(asList("c", "a"), evict(eviction, map)); // least recently written first, whether it expires or not
+		assertEquals(3, map.size());
+		assertEquals(asList("d", "e", "f"), new ArrayList<>(eviction.expiries().keySet()));
+		assertEquals(Long.valueOf(5000), eviction.expiries().get("e"));
+	}
+
+	@Test
+	public void maxBytes() {
+		Eviction<String> eviction = new Eviction<>(EvictionPolicy.maxBytes(1000));
+		Map<String, byte[]> map = new HashMap<>();
+		for (int i = 0; i < 20; i++) {
+			String key = "key" + i;
+			map.put(key, new byte[100]);
+			eviction.written(key, map.get(key), Eviction.NEVER);
+			evict(eviction, map);
+		}
+		assertTrue(map.size() > 1 && map.size() < 10);
+		assertTrue(map.containsKey("key19"));
+		assertFalse(map.containsKey("key0"));
+	}
+
+	@Test
+	public void restore() {
+		Map<String, String> map = new HashMap<>();
+		for (String key : asList("a", "b", "c", "d")) {
+			map.put(key, "value");
+		}
+		Map<String, Long> expiries = new LinkedHashMap<>();
+		expiries.put("c", 100L);
+		expiries.put("a", Eviction.NEVER);
+		expiries.put("gone", 50L); // not in the map
+
+		Eviction<String> eviction = new Eviction<>(EvictionPolicy.maxEntries(2));
+		eviction.restore(map, expiries);
+		assertEquals(Long.valueOf(100), eviction.expiries().get("c"));
+		assertNull(eviction.expiries().get("gone"));
+		assertEquals(asList("c"), eviction.expiredKeys(100));
+		// keys missing from the snapshot count as written before the others
+		assertEquals(asList("b", "d"), evict(eviction, map));
+		assertEquals(asList("c", "a"), new ArrayList<>(eviction.expiries().keySet()));
+	}
+}
@@ -0,0 +1,160 @@
+package statemachine;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import serialization.MapSerialization;
+import serialization.SnapshotFormat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapStoreTest {
+
+	private static final int SLAB_SIZE = 1024;
+	private static final String SMALL = value(40); // a record of 61 bytes, in the size class of 64
+	private static final String LARGE = value(100); // a record of 121 bytes, in the size class of 128
+
+	private Serializer serializer;
+	private OffHeapStore<String, Object> store;
+
+	private static String value(int length) {
+		StringBuilder value = new StringBuilder();
+		while (value.length() < length) {
+			value.append((char) ('a' + value.length() % 26));
+		}
+		return value.toString();
+	}
+
+	private static String key(int i) {
+		return String.format("k%02d", i);
+	}
+
+	@Before
+	public void setup() {
+		serializer = new Serializer();
+		serializer.resolve(new MapSerialization());
+		store = new OffHeapStore<>(16, serializer, SLAB_SIZE);
+	}
+
+	@Test
+	public void operations() {
+		Map<String, Object> reference = new HashMap<>();
+		Random random = new Random(42);
+		for (int n = 0; n < 5000; n++) { // few keys, so that removals shift back entries of the same probe sequence
+			String key = "key" + random.nextInt(200);
+			switch (random.nextInt(3)) {
+			case 0:
+				Object value = random.nextBoolean() ? (Object) random.nextLong() : value(random.nextInt(150));
+				assertEquals(reference.put(key, value), store.put(key, value));
+				break;
+			case 1:
+				assertEquals(reference.remove(key), store.remove(key));
+				break;
+			default:
+				assertEquals(reference.get(key), store.get(key));
+				assertEquals(reference.containsKey(key), store.containsKey(key));
+			}
+			assertEquals(reference.size(), store.size());
+		}
+		assertEquals(reference, store);
+		assertEquals(reference, new HashMap<>(store));
+
+		byte[] bytes = { 1, 2, 3 };
+		store.put("bytes", bytes);
+		assertArrayEquals(bytes, (byte[]) store.get("bytes"));
+		assertNull(store.get("missing"));
+		assertFalse(store.containsKey("missing"));
+	}
+
+	@Test
+	public void slabAllocation() {
+		assertEquals(0, store.offHeapBytes());
+		for (int i = 0; i < SLAB_SIZE / 64; i++) {
+			store.put(key(i), SMALL);
+		}
+		assertEquals(SLAB_SIZE, store.offHeapBytes());
+		store.put(key(16), SMALL);
+		assertEquals(2 * SLAB_SIZE, store.offHeapBytes());
+		for (int i = 0; i <= 16; i++) {
+			assertEquals(SMALL, store.get(key(i)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEntryLargerThanSlab() {
+		store.put("key", value(SLAB_SIZE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSlabSizeThatIsNotPowerOfTwo() {
+		new OffHeapStore<>(16, serializer, 1000);
+	}
+
+	@Test
+	public void freeListReuse() {
+		for (int i = 0; i < 16; i++) {
+			store.put(key(i), SMALL);
+		}
+		for (int i = 0; i < 8; i++) {
+			store.remove(key(i));
+		}
+		for (int i = 16; i < 24; i++) { // reuse the freed records
+			store.put(key(i), SMALL);
+		}
+		assertEquals(SLAB_SIZE, store.offHeapBytes());
+
+		store.put(key(8), LARGE); // moves to a record of the larger size class, in a new slab
+		assertEquals(2 * SLAB_SIZE, store.offHeapBytes());
+		store.put(key(8), SMALL); // moves back, freeing the large record
+		store.put(key(9), LARGE); // reuses the freed large record
+		store.put(key(10), value(42)); // overwrites in place within the same size class
+		assertEquals(2 * SLAB_SIZE, store.offHeapBytes());
+		assertEquals(SMALL, store.get(key(8)));
+		assertEquals(LARGE, store.get(key(9)));
+		assertEquals(value(42), store.get(key(10)));
+		assertEquals(16, store.size());
+
+		store.clear(); // keeps the slabs
+		assertTrue(store.isEmpty());
+		for (int i = 0; i < 32; i++) {
+			store.put(key(i), SMALL);
+		}
+		assertEquals(2 * SLAB_SIZE, store.offHeapBytes());
+		assertEquals(32, store.size());
+		assertEquals(SMALL, store.get(key(31)));
+	}
+
+	@Test
+	public void snapshotRoundTrip() {
+		Map<String, Object> reference = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			Object value = i % 3 == 0 ? (Object) (long) i : i % 3 == 1 ? "value" + i : LARGE + i;
+			reference.put("key" + i, value);
+			store.put("key" + i, value);
+		}
+		for (int i = 0; i < 1000; i += 7) {
+			reference.remove("key" + i);
+			store.remove("key" + i);
+		}
+
+		Buffer buffer = HeapBuffer.allocate(1024, Integer.MAX_VALUE);
+		SnapshotFormat.writeEntries(store, buffer, serializer);
+		Map<String, Object> read = SnapshotFormat.readEntries(buffer.flip(), serializer,
+				size -> new OffHeapStore<>(size, serializer, SLAB_SIZE));
+		assertTrue(read instanceof OffHeapStore);
+		assertEquals(reference, read);
+
+		buffer = HeapBuffer.allocate(1024, Integer.MAX_VALUE);
+		SnapshotFormat.writeEntries(read, buffer, serializer, true);
+		assertEquals(reference, SnapshotFormat.readEntries(buffer.flip(), serializer));
+	}
+}
@@ -0,0 +1,177 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashTrieMapTest {
+
+	// a key with a chosen hash code, so that keys can share a hash or a hash prefix
+	private static final class Key {
+		final String name;
+		final int hash;
+
+		Key(String name, int hash) {
+			this.name = name;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).name.equals(name);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static <K, V> List<K> keys(Iterator<Entry<K, V>> iterator) {
+		List<K> keys = new ArrayList<>();
+		iterator.forEachRemaining(entry -> keys.add(entry.getKey()));
+		return keys;
+	}
+
+	@Test
+	public void operations() {
+		HashTrieMap<Integer, String> map = new HashTrieMap<>();
+		Map<Integer, String> reference = new HashMap<>();
+		Random random = new Random(42);
+		for (int n = 0; n < 20000; n++) {
+			Integer key = random.nextInt(2000) - 1000;
+			if (random.nextInt(3) > 0) {
+				String value = "value" + n;
+				assertEquals(reference.put(key, value), map.put(key, value));
+			}
+			else {
+				assertEquals(reference.remove(key), map.remove(key));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+		assertEquals(reference, map);
+		assertEquals(reference, new HashMap<>(map));
+		for (int key = -1000; key < 1000; key++) {
+			assertEquals(reference.containsKey(key), map.containsKey(key));
+		}
+
+		map.put(null, "null key");
+		map.put(1, null);
+		assertEquals("null key", map.get(null));
+		assertTrue(map.containsKey(1));
+		assertNull(map.get(1));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.iterator(0).hasNext());
+	}
+
+	@Test
+	public void collisions() {
+		HashTrieMap<Key, Integer> map = new HashTrieMap<>();
+		Key a = new Key("a", 7);
+		Key b = new Key("b", 7);
+		Key c = new Key("c", 7);
+		Key near = new Key("near", 6); // differs from the others in the last bit only, so it shares their path down to the last level
+		map.put(a, 1);
+		map.put(b, 2);
+		map.put(near, 0);
+		map.put(c, 3);
+		assertEquals(4, map.size());
+		assertEquals(Integer.valueOf(2), map.get(b));
+		assertNull(map.get(new Key("d", 7)));
+		assertEquals(asList(near, a, b, c), keys(map.iterator(0))); // same hash in insertion order
+
+		assertEquals(Integer.valueOf(2), map.put(b, 20));
+		assertEquals(Integer.valueOf(1), map.remove(a));
+		assertNull(map.remove(a));
+		assertEquals(asList(near, b, c), keys(map.iterator(0)));
+		assertEquals(Integer.valueOf(3), map.remove(c)); // leaves a collision node of one entry
+		assertEquals(Integer.valueOf(20), map.get(b));
+		assertEquals(Integer.valueOf(20), map.remove(b));
+		assertEquals(asList(near), keys(map.iterator(0)));
+		assertEquals(Integer.valueOf(0), map.remove(near));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void snapshot() {
+		HashTrieMap<Integer, String> map = new HashTrieMap<>();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i, "v" + i);
+		}
+		Map<Integer, String> before = new HashMap<>(map);
+		HashTrieMap<Integer, String> view = map.snapshot();
+		assertSame(view, view.snapshot());
+
+		for (int i = 0; i < 1000; i += 2) {
+			map.remove(i);
+		}
+		for (int i = 1; i < 1000; i += 2) {
+			map.put(i, "new" + i);
+		}
+		map.put(5000, "added");
+		HashTrieMap<Integer, String> later = map.snapshot();
+		map.clear();
+
+		assertEquals(before, view);
+		assertEquals(1000, view.size());
+		assertEquals(keys(new HashTrieMap<>(before).iterator(0)), keys(view.iterator(0)));
+		assertEquals(501, later.size());
+		assertEquals("new1", later.get(1));
+		assertEquals("added", later.get(5000));
+		assertFalse(later.containsKey(0));
+		assertTrue(map.isEmpty());
+		try {
+			view.put(1, "x");
+			fail("view is writable");
+		}
+		catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void seek() {
+		HashTrieMap<String, Integer> map = new HashTrieMap<>();
+		for (int i = 0; i < 5000; i++) {
+			map.put("key" + i, i);
+		}
+		List<String> all = keys(map.iterator(0));
+		assertEquals(5000, all.size());
+		for (int i = 1; i < all.size(); i++) {
+			assertTrue(Integer.compareUnsigned(HashTrieMap.hash(all.get(i - 1)), HashTrieMap.hash(all.get(i))) <= 0);
+		}
+
+		Random random = new Random(42);
+		for (int n = 0; n < 100; n++) {
+			int start = n == 0 ? -1 : random.nextInt();
+			List<String> expected = new ArrayList<>();
+			for (String key : all) {
+				if (Integer.compareUnsigned(HashTrieMap.hash(key), start) >= 0) {
+					expected.add(key);
+				}
+			}
+			assertEquals(expected, keys(map.iterator(start)));
+		}
+		String middle = all.get(2500);
+		assertEquals(all.subList(2500, 5000), keys(map.snapshot().iterator(HashTrieMap.hash(middle))));
+	}
+}
@@ -0,0 +1,141 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LzfTest {
+
+	private static final int MAX_LITERAL = 32;
+	private static final int MAX_OFFSET = 8192;
+	private static final int MAX_REFERENCE = 264;
+
+	private static byte[] random(Random random, int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		int length = 0;
+		for (byte[] part : parts) {
+			length += part.length;
+		}
+		byte[] result = new byte[length];
+		int offset = 0;
+		for (byte[] part : parts) {
+			System.arraycopy(part, 0, result, offset, part.length);
+			offset += part.length;
+		}
+		return result;
+	}
+
+	// compresses into room for incompressible input, which gains a control byte per literal run of 32 bytes
+	private static byte[] roundTrip(byte[] input) {
+		byte[] output = new byte[input.length + input.length / MAX_LITERAL + 1];
+		int length = Lzf.compress(input, 0, input.length, output, 0, output.length);
+		assertTrue(length >= 0);
+		byte[] compressed = Arrays.copyOf(output, length);
+		assertArrayEquals(input, Lzf.decompress(compressed, input.length));
+		return compressed;
+	}
+
+	@Test
+	public void emptyAndTinyInput() {
+		assertNull(Lzf.compress(new byte[0]));
+		assertNull(Lzf.compress(new byte[] { 7 }));
+		assertEquals(0, Lzf.compress(new byte[0], 0, 0, new byte[0], 0, 0));
+		assertEquals(0, Lzf.decompress(new byte[0], 0).length);
+		for (int length = 1; length < 4; length++) {
+			byte[] input = new byte[length];
+			Arrays.fill(input, (byte) 'a');
+			assertEquals(length + 1, roundTrip(input).length); // too short for a back reference
+		}
+	}
+
+	@Test
+	public void incompressibleInput() {
+		Random random = new Random(42);
+		for (int length : new int[] { 2, 31, 32, 33, 64, 1000, 65536 }) {
+			byte[] input = random(random, length);
+			assertNull(Lzf.compress(input));
+			assertTrue(roundTrip(input).length <= length + (length + MAX_LITERAL - 1) / MAX_LITERAL); // a control byte per literal run
+			byte[] output = new byte[length];
+			assertEquals(-1, Lzf.compress(input, 0, length, output, 0, length - 1));
+		}
+	}
+
+	@Test
+	public void maxLengthBackReferences() {
+		for (int run : new int[] { 3, 8, 9, 10, MAX_REFERENCE - 1, MAX_REFERENCE, MAX_REFERENCE + 1, MAX_REFERENCE + 2, 10000 }) {
+			byte[] input = new byte[run + 1];
+			Arrays.fill(input, 1, input.length, (byte) 'x'); // one literal, then a match that overlaps the bytes it produces
+			roundTrip(input);
+		}
+		byte[] zeros = new byte[100000];
+		byte[] compressed = Lzf.compress(zeros);
+		assertNotNull(compressed);
+		assertTrue(compressed.length < zeros.length / 80); // about 3 bytes per reference of 264 bytes
+		assertArrayEquals(zeros, Lzf.decompress(compressed, zeros.length));
+	}
+
+	@Test
+	public void windowAndLiteralBoundaries() {
+		Random random = new Random(42);
+		byte[] pattern = random(random, 300);
+		for (int gap : new int[] { MAX_OFFSET - 301, MAX_OFFSET - 300, MAX_OFFSET - 299, MAX_OFFSET, 2 * MAX_OFFSET }) {
+			byte[] input = concat(pattern, random(random, gap), pattern); // the repetition is just within or beyond the window
+			roundTrip(input);
+		}
+		for (int literals = MAX_LITERAL - 1; literals <= 2 * MAX_LITERAL + 1; literals++) {
+			roundTrip(concat(random(random, literals), pattern, pattern, random(random, literals)));
+		}
+	}
+
+	@Test
+	public void offsetsAndDeterminism() {
+		byte[] text = "{\"id\":1,\"name\":\"alpha\",\"state\":\"ACTIVE\"},{\"id\":2,\"name\":\"alpha\",\"state\":\"ACTIVE\"}"
+				.getBytes(StandardCharsets.UTF_8);
+		byte[] input = concat(new byte[5], text, new byte[3]);
+		byte[] output = new byte[100 + text.length];
+		int length = Lzf.compress(input, 5, text.length, output, 7, text.length);
+		assertTrue(length > 0 && length < text.length);
+		byte[] decompressed = new byte[text.length + 4];
+		Lzf.decompress(output, 7, length, decompressed, 2, text.length);
+		assertArrayEquals(text, Arrays.copyOfRange(decompressed, 2, 2 + text.length));
+
+		byte[] first = Lzf.compress(text);
+		Lzf.compress(new byte[50000]); // leaves the hash table full of other positions
+		assertArrayEquals(first, Lzf.compress(text));
+	}
+
+	@Test
+	public void corruptData() {
+		byte[] input = new byte[1000];
+		Arrays.fill(input, (byte) 'z');
+		byte[] compressed = Lzf.compress(input);
+		expectCorrupt(() -> Lzf.decompress(compressed, input.length - 1));
+		expectCorrupt(() -> Lzf.decompress(compressed, input.length + 1));
+		expectCorrupt(() -> Lzf.decompress(Arrays.copyOf(compressed, compressed.length - 1), input.length));
+		expectCorrupt(() -> Lzf.decompress(new byte[] { (byte) 0xE0 }, 10)); // a back reference without its distance byte
+		expectCorrupt(() -> Lzf.decompress(new byte[] { 0x20, 0 }, 3)); // a back reference before the start
+	}
+
+	private static void expectCorrupt(Runnable decompress) {
+		try {
+			decompress.run();
+			fail("expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}